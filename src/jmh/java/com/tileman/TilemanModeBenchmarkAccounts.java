@@ -0,0 +1,166 @@
+package com.tileman;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic tile accounts for the benchmarks, and an in-memory stand-in for the RuneLite config to hold them.
+ */
+final class TilemanModeBenchmarkAccounts {
+
+    enum Shape {
+        /**
+         * Tiles scattered ~64 to a region across many regions, like an account that has walked long paths.
+         */
+        SPARSE,
+        /**
+         * Solid blocks filling three quarters of each region, like an account that has cleared whole areas.
+         */
+        DENSE
+    }
+
+    // lowest region id used, roughly the south west of the mainland
+    private static final int FIRST_REGION_ID = 10000;
+    private static final int SPARSE_TILES_PER_REGION = 64;
+    private static final int DENSE_TILES_PER_REGION = 3 * 64 * 64 / 4;
+
+    private TilemanModeBenchmarkAccounts() {
+    }
+
+    /**
+     * Builds a deterministic account with the given number of claimed tiles, keyed by (regionId << 2 | plane).
+     */
+    static Map<Integer, TilemanModeRegionBitmap> generate(int tiles, Shape shape) {
+        Random random = new Random(tiles * 31L + shape.ordinal());
+        Map<Integer, TilemanModeRegionBitmap> regions = new HashMap<>();
+        int remaining = tiles;
+        int regionIndex = 0;
+        while (remaining > 0) {
+            int regionId = FIRST_REGION_ID + regionIndex;
+            // most claims are on the surface, with every eighth region on an upper plane
+            int plane = regionIndex % 8 == 7 ? 1 : 0;
+            TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+
+            if (shape == Shape.SPARSE) {
+                int target = Math.min(remaining, SPARSE_TILES_PER_REGION);
+                while (bitmap.cardinality() < target) {
+                    bitmap.set(random.nextInt(64), random.nextInt(64));
+                }
+            } else {
+                int target = Math.min(remaining, DENSE_TILES_PER_REGION);
+                for (int i = 0; i < target; i++) {
+                    bitmap.set(i % 64, i / 64);
+                }
+            }
+
+            remaining -= bitmap.cardinality();
+            regions.put(regionId << 2 | plane, bitmap);
+            regionIndex++;
+        }
+        return regions;
+    }
+
+    /**
+     * Loads an account into storage the way the config storage would hold it.
+     */
+    static InMemoryConfigStorage toStorage(Map<Integer, TilemanModeRegionBitmap> regions) {
+        InMemoryConfigStorage storage = new InMemoryConfigStorage();
+        for (Map.Entry<Integer, TilemanModeRegionBitmap> entry : regions.entrySet()) {
+            storage.write(TilemanModePlugin.REGION_PREFIX_V3, entry.getKey() >> 2, entry.getKey() & 3, entry.getValue());
+        }
+
+        // build and save the manifest once, as a long running account would have
+        TilemanModeTileStore store = new TilemanModeTileStore(storage);
+        store.totalCardinality(TilemanModePlugin.REGION_PREFIX_V3);
+        store.flush();
+        return storage;
+    }
+
+    /**
+     * Stand-in for the RuneLite config: string values in a map, encoded and keyed exactly like
+     * {@link TilemanModeConfigTileStorage}, so benchmarks pay the same encoding and key parsing costs.
+     */
+    static class InMemoryConfigStorage implements TilemanModeTileStorage {
+
+        private final Map<String, String> config = new HashMap<>();
+        private final Map<String, byte[]> manifests = new HashMap<>();
+
+        @Override
+        public TilemanModeRegionBitmap read(String prefix, int regionId, int plane) {
+            String encoded = config.get(TilemanModeConfigTileStorage.toConfigKey(prefix, regionId, plane));
+            if (encoded == null) {
+                return TilemanModeRegionBitmap.EMPTY;
+            }
+            return TilemanModeTileCodec.decodeV3(encoded);
+        }
+
+        @Override
+        public void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+            String key = TilemanModeConfigTileStorage.toConfigKey(prefix, regionId, plane);
+            if (bitmap.isEmpty()) {
+                config.remove(key);
+            } else {
+                config.put(key, TilemanModeTileCodec.encodeV3(bitmap));
+            }
+        }
+
+        @Override
+        public Set<Integer> getRegionIds(String prefix) {
+            Set<Integer> regionIds = new HashSet<>();
+            for (String key : config.keySet()) {
+                if (key.startsWith(prefix)) {
+                    String regionKey = key.substring(prefix.length());
+                    regionIds.add(Integer.parseInt(regionKey.substring(0, regionKey.lastIndexOf('_'))));
+                }
+            }
+            return regionIds;
+        }
+
+        @Override
+        public Set<String> getPrefixes(String startingWith) {
+            return new HashSet<>();
+        }
+
+        @Override
+        public byte[] readManifest(String prefix) {
+            return manifests.get(prefix);
+        }
+
+        @Override
+        public void writeManifest(String prefix, byte[] manifest) {
+            manifests.put(prefix, manifest);
+        }
+
+        @Override
+        public int deletePrefix(String prefix) {
+            int removed = 0;
+            for (String key : getKeys(prefix)) {
+                config.remove(key);
+                removed++;
+            }
+            manifests.remove(prefix);
+            return removed;
+        }
+
+        @Override
+        public void sync() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private Set<String> getKeys(String prefix) {
+            Set<String> keys = new HashSet<>();
+            for (String key : config.keySet()) {
+                if (key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        }
+    }
+}
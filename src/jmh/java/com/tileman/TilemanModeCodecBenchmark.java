@@ -0,0 +1,100 @@
+package com.tileman;
+
+import net.runelite.api.coords.WorldPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding every region of an account, as done when reading or writing tile data in the config.
+ * Each operation covers the whole account, so scores are accounts per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TilemanModeCodecBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int tiles;
+
+    @Param({"SPARSE", "DENSE"})
+    TilemanModeBenchmarkAccounts.Shape shape;
+
+    private int[] regionKeys;
+    private TilemanModeRegionBitmap[] bitmaps;
+    private String[] v2Encoded;
+    private String[] v3Encoded;
+
+    @Setup
+    public void setUp() {
+        Map<Integer, TilemanModeRegionBitmap> regions = TilemanModeBenchmarkAccounts.generate(tiles, shape);
+        regionKeys = new int[regions.size()];
+        bitmaps = new TilemanModeRegionBitmap[regions.size()];
+        v2Encoded = new String[regions.size()];
+        v3Encoded = new String[regions.size()];
+
+        int i = 0;
+        for (Map.Entry<Integer, TilemanModeRegionBitmap> entry : regions.entrySet()) {
+            regionKeys[i] = entry.getKey();
+            bitmaps[i] = entry.getValue();
+            v2Encoded[i] = encodeV2(entry.getValue());
+            v3Encoded[i] = TilemanModeTileCodec.encodeV3(entry.getValue());
+            i++;
+        }
+    }
+
+    @Benchmark
+    public void decodeV2(Blackhole blackhole) {
+        for (String encoded : v2Encoded) {
+            blackhole.consume(TilemanModeTileCodec.decodeV2(encoded));
+        }
+    }
+
+    @Benchmark
+    public void encodeV2(Blackhole blackhole) {
+        for (TilemanModeRegionBitmap bitmap : bitmaps) {
+            blackhole.consume(encodeV2(bitmap));
+        }
+    }
+
+    @Benchmark
+    public void decodeV3(Blackhole blackhole) {
+        for (String encoded : v3Encoded) {
+            blackhole.consume(TilemanModeTileCodec.decodeV3(encoded));
+        }
+    }
+
+    @Benchmark
+    public void encodeV3(Blackhole blackhole) {
+        for (TilemanModeRegionBitmap bitmap : bitmaps) {
+            blackhole.consume(TilemanModeTileCodec.encodeV3(bitmap));
+        }
+    }
+
+    /**
+     * Turning claimed bits into world points, as the overlays and export do for every tile they touch.
+     */
+    @Benchmark
+    public void toWorldPoints(Blackhole blackhole) {
+        for (int i = 0; i < bitmaps.length; i++) {
+            int regionId = regionKeys[i] >> 2;
+            int plane = regionKeys[i] & 3;
+            bitmaps[i].forEach((regionX, regionY) -> blackhole.consume(WorldPoint.fromRegion(regionId, regionX, regionY, plane)));
+        }
+    }
+
+    private static String encodeV2(TilemanModeRegionBitmap bitmap) {
+        // ConfigManager stores byte[] values as Base64url text
+        return Base64.getUrlEncoder().encodeToString(bitmap.toByteArray());
+    }
+}
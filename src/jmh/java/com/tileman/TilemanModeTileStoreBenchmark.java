@@ -0,0 +1,110 @@
+package com.tileman;
+
+import net.runelite.api.coords.WorldPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tile store's hot paths over an account held in the in-memory config stand-in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TilemanModeTileStoreBenchmark {
+
+    // the client loads a 104x104 tile scene, which spans up to a 3x3 block of regions
+    private static final int SCENE_REGIONS = 9;
+
+    @Param({"1000", "100000", "1000000"})
+    int tiles;
+
+    @Param({"SPARSE", "DENSE"})
+    TilemanModeBenchmarkAccounts.Shape shape;
+
+    private TilemanModeBenchmarkAccounts.InMemoryConfigStorage storage;
+    private TilemanModeTileStore warmStore;
+    private int[] sceneRegionIds;
+    private int claimRegionId;
+
+    @Setup
+    public void setUp() {
+        Map<Integer, TilemanModeRegionBitmap> regions = TilemanModeBenchmarkAccounts.generate(tiles, shape);
+        storage = TilemanModeBenchmarkAccounts.toStorage(regions);
+
+        warmStore = new TilemanModeTileStore(storage);
+        int[] regionIds = warmStore.getRegionIds(TilemanModePlugin.REGION_PREFIX_V3);
+        sceneRegionIds = new int[Math.min(SCENE_REGIONS, regionIds.length)];
+        System.arraycopy(regionIds, 0, sceneRegionIds, 0, sceneRegionIds.length);
+        for (int regionId : sceneRegionIds) {
+            for (int plane = 0; plane < 4; plane++) {
+                warmStore.getRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, plane);
+            }
+        }
+        claimRegionId = regionIds[0];
+    }
+
+    /**
+     * Counting every claimed tile on a freshly started store, as done on startup and profile changes.
+     */
+    @Benchmark
+    public int countTilesCold() {
+        return new TilemanModeTileStore(storage).totalCardinality(TilemanModePlugin.REGION_PREFIX_V3);
+    }
+
+    /**
+     * Listing claimed regions from the manifest.
+     */
+    @Benchmark
+    public int[] regionIdsFromManifest() {
+        return new TilemanModeTileStore(storage).getRegionIds(TilemanModePlugin.REGION_PREFIX_V3);
+    }
+
+    /**
+     * Listing claimed regions by parsing every key, as the plugin did before the manifest.
+     */
+    @Benchmark
+    public Set<Integer> regionIdsFromKeys() {
+        return storage.getRegionIds(TilemanModePlugin.REGION_PREFIX_V3);
+    }
+
+    /**
+     * Building the tiles to render for a loaded scene, the core of the plugin's updateTilesToRender.
+     */
+    @Benchmark
+    public Set<WorldPoint> tilesToRender() {
+        Set<WorldPoint> tilesToRender = new HashSet<>();
+        for (int regionId : sceneRegionIds) {
+            TilemanModeRegionBitmap bitmap = warmStore.getRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, 0);
+            bitmap.forEach((regionX, regionY) -> tilesToRender.add(WorldPoint.fromRegion(regionId, regionX, regionY, 0)));
+        }
+        return tilesToRender;
+    }
+
+    /**
+     * Walking across a region claiming a row of tiles and saving them, then releasing them again so every
+     * invocation starts from the same state.
+     */
+    @Benchmark
+    public void claimAndFlush(Blackhole blackhole) {
+        for (int x = 0; x < TilemanModeRegionBitmap.REGION_SIZE; x++) {
+            blackhole.consume(warmStore.set(TilemanModePlugin.REGION_PREFIX_V3, claimRegionId, x, 63, 3));
+        }
+        blackhole.consume(warmStore.flush());
+        for (int x = 0; x < TilemanModeRegionBitmap.REGION_SIZE; x++) {
+            blackhole.consume(warmStore.clear(TilemanModePlugin.REGION_PREFIX_V3, claimRegionId, x, 63, 3));
+        }
+        blackhole.consume(warmStore.flush());
+    }
+}
@@ -1,5 +1,4 @@
 package com.tileman;
-import com.google.gson.JsonSyntaxException;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.chat.ChatMessageBuilder;
 import net.runelite.client.config.ConfigManager;
@@ -17,6 +16,8 @@ import java.io.IOException;
 import java.util.*;
 import java.awt.datatransfer.DataFlavor;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import com.google.common.base.Strings;
 import com.google.gson.Gson;
@@ -35,26 +36,31 @@ public class GroupTilemanDataManager extends PluginPanel {
     final private TilemanModePlugin plugin;
     final private ConfigManager configManager;
     final private Gson gson;
-    final private Set<String> importedDataSetKeys = new HashSet<>();
+    final private ScheduledExecutorService executor;
     final private Color NEUTRAL_COLOR = new Color(0, 0, 0);
     final private Color FAILURE_RED = new Color(100, 0, 0);
     final private Color SUCCESS_GREEN = new Color(0, 100, 0);
-
-    public GroupTilemanDataManager(TilemanModePlugin plugin, ConfigManager configManager, Gson gson) {
+    final private TilemanModeProgressPanel progressPanel = new TilemanModeProgressPanel();
+    // tile set name -> its entry in the list, kept in name order
+    final private TreeMap<String, JPanel> tileSetEntries = new TreeMap<>();
+    private JPanel tileSetList;
+    private JPanel purgePanel;
+    // only touched on the Swing thread
+    private boolean operationRunning;
+
+    public GroupTilemanDataManager(TilemanModePlugin plugin, ConfigManager configManager, Gson gson, ScheduledExecutorService executor) {
         this.plugin = plugin;
         this.configManager = configManager;
         this.gson = gson;
-        updatePanelContents();
-    }
-
-    public Set<String> getImportedDataSetKeys(){
-        return importedDataSetKeys;
+        this.executor = executor;
+        buildPanelContents();
     }
 
-    private void updatePanelContents() {
-        // clean any previous panel contents ready for a fresh update
-        removeAll();
-
+    /**
+     * Builds the panel once. Afterwards only the parts that change are updated, such as a tile set's entry being
+     * added or removed, so a change never rebuilds the whole panel.
+     */
+    private void buildPanelContents() {
         // stylize the panel
         setLayout(new BorderLayout());
         setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -72,9 +78,15 @@ public class GroupTilemanDataManager extends PluginPanel {
         addTitleToLayout("Group Tileman Data");
         addDividerToLayout(10);
         addButtonsToLayout();
+        panel.add(progressPanel, constraints);
+        constraints.gridy++;
         addDividerToLayout(10);
         addTitleToLayout("Imported Tile Sets:");
         addDividerToLayout(10);
+        tileSetList = new JPanel(new GridLayout(0, 1, 0, 5));
+        tileSetList.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        panel.add(tileSetList, constraints);
+        constraints.gridy++;
         populateListOfImportedTiles();
 
         // add the root panel, so it displays on the plugin panel
@@ -83,84 +95,143 @@ public class GroupTilemanDataManager extends PluginPanel {
 
     private void populateListOfImportedTiles(){
 
-        // process the config file to determine imported tile sets
-        String prefix = TilemanModePlugin.CONFIG_GROUP + "." + TilemanModePlugin.REGION_PREFIX_IMPORTED;
-        List<String> configString = configManager.getConfigurationKeys(prefix);
-        Set<String> cleanKeys = new HashSet<>();
-        for (String key : configString){
-
-            // scrub the prefix from the front of the string
-            key = key.substring(prefix.length());
-
-            // advance forward in the string until _ is encountered, using the characters traveled over as the label
-            int underscoreIndex = key.indexOf('_');
-            String cleanLabel = key.substring(0, underscoreIndex);
-            cleanKeys.add(cleanLabel);
-        }
+        // ask the tile store which imported tile sets it holds
+        Set<String> cleanKeys = plugin.getTileStore().getImportedTileSetNames();
 
         // display imported tile sets
         for (String key : cleanKeys){
-            {
-                importedDataSetKeys.add(key);
-                addDataEntry(key);
-            }
-            addDividerToLayout(5);
+            addDataEntry(key);
         }
 
     }
 
+    /**
+     * Adds the tile set to the list, in name order, unless it is already there. Call it on the Swing thread.
+     */
     private void addDataEntry(String key) {
+        if (tileSetEntries.containsKey(key)) {
+            return;
+        }
+
+        JPanel entry = new JPanel(new BorderLayout());
+        entry.setBackground(ColorScheme.DARK_GRAY_COLOR);
+
         // create the name related fields
         FlatTextField keyField = new FlatTextField();
         keyField.setText(key);
         keyField.setEditable(false);
         keyField.setHoverBackgroundColor(Color.ORANGE);
-        panel.add(keyField, constraints);
-        constraints.gridy++;
+        entry.add(keyField, BorderLayout.NORTH);
 
         // add a delete button with input handling
         JButton deleteButton = new JButton("Delete");
-        deleteButton.addActionListener(l -> deleteTileSet(key, false));
-        panel.add(deleteButton, constraints);
-        constraints.gridy++;
+        deleteButton.addActionListener(l -> deleteTileSet(key));
+        entry.add(deleteButton, BorderLayout.SOUTH);
+
+        tileSetEntries.put(key, entry);
+        tileSetList.add(entry, tileSetEntries.headMap(key).size());
+        tileSetList.revalidate();
+        tileSetList.repaint();
     }
 
-    private void deleteTileSet(String tileSetName, boolean silent) {
+    /**
+     * Removes the tile set from the list. Call it on the Swing thread.
+     */
+    private void removeDataEntry(String key) {
+        JPanel entry = tileSetEntries.remove(key);
+        if (entry != null) {
+            tileSetList.remove(entry);
+            tileSetList.revalidate();
+            tileSetList.repaint();
+        }
+    }
 
-        // deleteTileSet is triggered silently when updating a tileset that has already been imported.
-        // It first deletes it, then imports fresh from the import string.
-        if (!silent) {
-            String chatMessage = new ChatMessageBuilder()
-                    .append(NEUTRAL_COLOR, "Deleting tile set " + tileSetName + "...")
+    /**
+     * Shows whether the tile set is held now that it has changed. Call it on any thread.
+     */
+    private void updateDataEntry(String tileSetName) {
+        boolean held = plugin.getGroupIndex().getMembers().contains(tileSetName);
+        SwingUtilities.invokeLater(() -> {
+            if (held) {
+                addDataEntry(tileSetName);
+            } else {
+                removeDataEntry(tileSetName);
+            }
+        });
+    }
+
+    /**
+     * Runs a panel operation on the executor so the client never waits on it, showing its progress until it is done.
+     * Only one runs at a time. Call it on the Swing thread.
+     */
+    private void runInBackground(String description, Runnable operation) {
+        if (plugin.isTilesUnavailable()) {
+            String unavailable = new ChatMessageBuilder()
+                    .append(NEUTRAL_COLOR, "Tile sets can't be changed while Tileman Mode is paused.")
                     .build();
-            plugin.sendChatMessage(chatMessage);
+            plugin.sendChatMessage(unavailable);
+            return;
         }
 
-        // walk all imported keys matching that tile set name, then delete them.
-        String configGroup = TilemanModePlugin.CONFIG_GROUP + ".";
-        List<String> allKeys = configManager.getConfigurationKeys(configGroup + TilemanModePlugin.REGION_PREFIX_IMPORTED + tileSetName);
-        for (String key : allKeys) {
-            log.debug("Scrubbing config key: " + key);
-            key = key.substring(configGroup.length());
-            configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+        if (operationRunning) {
+            String busy = new ChatMessageBuilder()
+                    .append(NEUTRAL_COLOR, "Another tile set operation is still running, wait for it to finish or cancel it.")
+                    .build();
+            plugin.sendChatMessage(busy);
+            return;
         }
 
-        // write to disk after deleting all the keys
-        configManager.sendConfig();
+        operationRunning = true;
+        progressPanel.start(description);
+        executor.execute(() -> {
+            try {
+                operation.run();
+            } catch (CancellationException e) {
+                String cancelled = new ChatMessageBuilder()
+                        .append(NEUTRAL_COLOR, description + " was cancelled.")
+                        .build();
+                plugin.sendChatMessage(cancelled);
+            } finally {
+                progressPanel.finish();
+                SwingUtilities.invokeLater(() -> operationRunning = false);
+            }
+        });
+    }
 
-        // rebuild the visual menu
-        updatePanelContents();
+    private void deleteTileSet(String tileSetName) {
+        runInBackground("Deleting tile set " + tileSetName, () -> {
+            String startMessage = new ChatMessageBuilder()
+                    .append(NEUTRAL_COLOR, "Deleting tile set " + tileSetName + "...")
+                    .build();
+            plugin.sendChatMessage(startMessage);
 
-        // update the tiles that the player can visually see on screen around them since tiles have been deleted
-        plugin.updateTilesToRender();
+            removeTileSet(tileSetName);
+            configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.SYNC_IMPORTED_VERSION_PREFIX + tileSetName);
 
-        // provide feedback to the player
-        if (!silent) {
+            // write to disk after deleting all the keys
+            plugin.getTileStore().sync();
+
+            // drop the tile set from the list
+            SwingUtilities.invokeLater(() -> removeDataEntry(tileSetName));
+
+            // update the tiles that the player can visually see on screen around them since tiles have been deleted
+            plugin.updateTilesToRender();
+
+            // provide feedback to the player
             String chatMessage = new ChatMessageBuilder()
                     .append(SUCCESS_GREEN, "Tile set " + tileSetName + " was removed.")
                     .build();
             plugin.sendChatMessage(chatMessage);
-        }
+        });
+    }
+
+    /**
+     * Deletes the tile set from the tile store and the group claims, without saving or updating the panel.
+     */
+    private void removeTileSet(String tileSetName) {
+        // walk all imported keys matching that tile set name, then delete them along with the cached copy.
+        plugin.getTileStore().deletePrefix(TilemanModePlugin.getImportedTileSetPrefix(tileSetName));
+        plugin.getGroupIndex().removeMember(tileSetName);
     }
 
     private void addTitleToLayout(String label) {
@@ -195,23 +266,52 @@ public class GroupTilemanDataManager extends PluginPanel {
         exportButton.setToolTipText("Export your claimed tiles as plaintext Tileman Data to the clipboard for sharing.");
         constraints.gridy++;
 
+        // tiny divider
+        addDividerToLayout(5);
+
+        // create the compact export button
+        JButton compactExportButton = new JButton("Export compact to clipboard (Copy)");
+        panel.add(compactExportButton, constraints);
+        compactExportButton.addActionListener(l -> compactExportButtonClicked());
+        compactExportButton.setToolTipText("Export your claimed tiles as a much shorter string for sharing. "
+                + "Only this plugin can import it, not the legacy group tileman plugin.");
+        constraints.gridy++;
+
+        // tiny divider
+        addDividerToLayout(5);
+
+        // create the changes export button
+        JButton deltaExportButton = new JButton("Export changes since last export (Copy)");
+        panel.add(deltaExportButton, constraints);
+        deltaExportButton.addActionListener(l -> deltaExportButtonClicked());
+        deltaExportButton.setToolTipText("Export only the regions changed since your last compact export. "
+                + "Your group can import it on top of that export.");
+        constraints.gridy++;
+
         // provide optional cleanup functionality for legacy group tileman data
         List<String> legacyKeys = configManager.getConfigurationKeys(TilemanModePlugin.LEGACY_GROUP_TILEMAN_CONFIG_GROUP);
         if (legacyKeys != null && !legacyKeys.isEmpty()){
 
-            // tiny divider
-            addDividerToLayout(5);
+            // the button and its divider are removed together once the data is purged
+            purgePanel = new JPanel(new BorderLayout());
+            purgePanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
+            purgePanel.add(Box.createRigidArea(new Dimension(0, 5)), BorderLayout.NORTH);
 
             JButton purgeButton = new JButton("Purge legacy Group tileman data");
-            panel.add(purgeButton, constraints);
+            purgePanel.add(purgeButton, BorderLayout.CENTER);
             purgeButton.addActionListener(l -> purgeButtonClicked());
             purgeButton.setToolTipText("Deletes data from the old 'Group tileman addon' plugin (deprecated). "
                     + "May improve performance if you had previously imported many group tiles.");
+            panel.add(purgePanel, constraints);
             constraints.gridy++;
         }
     }
 
     private void purgeButtonClicked() {
+        runInBackground("Purging legacy group tileman data", this::purgeLegacyData);
+    }
+
+    private void purgeLegacyData() {
 
         // provide immediate feedback when the button is clicked
         String start = new ChatMessageBuilder()
@@ -222,16 +322,28 @@ public class GroupTilemanDataManager extends PluginPanel {
         // walk all legacy keys and delete them
         String groupName = TilemanModePlugin.LEGACY_GROUP_TILEMAN_CONFIG_GROUP;
         List<String> legacyKeys = configManager.getConfigurationKeys(groupName + ".");
-        for (String key : legacyKeys) {
-            String cleanKey = key.substring(groupName.length() + 1);
-            configManager.unsetConfiguration(groupName, cleanKey);
+        try {
+            for (int i = 0; i < legacyKeys.size(); i++) {
+                // a key is unset or it isn't, so stopping between keys leaves nothing half done
+                progressPanel.checkCancelled();
+                String cleanKey = legacyKeys.get(i).substring(groupName.length() + 1);
+                configManager.unsetConfiguration(groupName, cleanKey);
+                progressPanel.setProgress((i + 1) * 100 / legacyKeys.size());
+            }
+        } finally {
+            // save to disk since we've removed a significant volume of config data, also what was purged before a cancel
+            configManager.sendConfig();
         }
 
-        // save to disk since we've removed a significant volume of config data
-        configManager.sendConfig();
-
-        // rebuild the visual menu since this purge button should now disappear
-        updatePanelContents();
+        // this purge button should now disappear
+        SwingUtilities.invokeLater(() -> {
+            if (purgePanel != null) {
+                panel.remove(purgePanel);
+                purgePanel = null;
+                panel.revalidate();
+                panel.repaint();
+            }
+        });
 
         // provide results feedback
         String end = new ChatMessageBuilder()
@@ -277,19 +389,99 @@ public class GroupTilemanDataManager extends PluginPanel {
     }
 
     private void processGroupTilemanImport(String clipboardText){
+        // a large tile set takes a while to read and save, so keep it off the Swing thread
+        runInBackground("Importing tile set", () -> importTileSet(clipboardText, null));
+    }
 
-        // Config related string keys used in this function should not be updated.
+    /**
+     * @return the label a player's tile set is stored under, their name with only letters and digits kept
+     */
+    static String toTileSetName(String playerName) {
+        return playerName.replaceAll("[^a-zA-Z0-9]", "");
+    }
+
+    /**
+     * Applies claims another member made, streamed from the live sync relay, to their tile set. Call it on the
+     * executor. The tile store saves them with the next flush.
+     */
+    void applyLiveClaims(String playerName, int[] claims) {
+        String tileSetName = toTileSetName(playerName);
+        if (tileSetName.isEmpty()) {
+            return;
+        }
+
+        TilemanModeTileStore tileStore = plugin.getTileStore();
+        TilemanModeGroupIndex groupIndex = plugin.getGroupIndex();
+        String prefix = TilemanModePlugin.getImportedTileSetPrefix(tileSetName);
+        boolean newTileSet = !groupIndex.getMembers().contains(tileSetName);
+        Set<Integer> changedPlanes = new HashSet<>();
+        for (int claim : claims) {
+            int regionId = TilemanModeSyncProtocol.claimRegionId(claim);
+            int regionX = TilemanModeSyncProtocol.claimRegionX(claim);
+            int regionY = TilemanModeSyncProtocol.claimRegionY(claim);
+            int plane = TilemanModeSyncProtocol.claimPlane(claim);
+            boolean changed = TilemanModeSyncProtocol.isClaimed(claim)
+                    ? tileStore.set(prefix, regionId, regionX, regionY, plane)
+                    : tileStore.clear(prefix, regionId, regionX, regionY, plane);
+            if (changed) {
+                changedPlanes.add(regionId << 2 | plane);
+            }
+        }
+        if (changedPlanes.isEmpty()) {
+            return;
+        }
+
+        // only the planes the batch touched are merged into the group claims
+        for (int key : changedPlanes) {
+            groupIndex.putMemberRegion(tileSetName, key >> 2, key & 3, tileStore.getRegion(prefix, key >> 2, key & 3));
+        }
+        if (newTileSet) {
+            updateDataEntry(tileSetName);
+        }
+        plugin.updateTilesToRender();
+    }
+
+    /**
+     * Imports another member's tile set from the shared folder. Call it on the executor.
+     *
+     * @param ownTileSetName the player's own tile set name, a file holding it is stale or renamed and is skipped
+     */
+    void importSharedTileSet(String fileText, String ownTileSetName) {
+        importTileSet(fileText, ownTileSetName);
+    }
+
+    /**
+     * @param ownTileSetName the player's own tile set name when importing from the shared folder, null for the
+     *                       clipboard
+     */
+    private void importTileSet(String clipboardText, String ownTileSetName) {
+        boolean fromSharedFolder = ownTileSetName != null;
+
+        // Config related string keys used in reading the export should not be updated.
         // They have been statically implemented to ensure backwards compatibility with data exported
         // from the legacy group tileman plugin https://github.com/Flexz9/Tileman-GroupMode
 
-        // convert export string to groupTilemanData
-        GroupTilemanData parsedData;
+        // decode a compact export, or stream a JSON one into per plane bitmaps
+        TilemanModeTileSetReader.TileSet tileSet;
+        String trimmedText = clipboardText.trim();
         try {
-            parsedData = gson.fromJson(clipboardText, GroupTilemanData.class);
-        } catch (JsonSyntaxException e) {
+            if (TilemanModeTileSetCodec.isCompact(trimmedText)) {
+                tileSet = TilemanModeTileSetCodec.decode(trimmedText);
+            } else {
+                tileSet = TilemanModeTileSetReader.read(clipboardText, percent -> {
+                    // the shared folder imports on its own, not as a panel operation
+                    if (!fromSharedFolder) {
+                        progressPanel.checkCancelled();
+                        progressPanel.setProgress(percent);
+                    }
+                });
+            }
+        } catch (IOException e) {
             log.debug("The text on the clipboard was unable to be parsed. Abandoning import.", e);
             String chatMessage = new ChatMessageBuilder()
-                    .append(FAILURE_RED, "Import failed. Clipboard text was not a well formed group tileman tile set.")
+                    .append(FAILURE_RED, fromSharedFolder
+                            ? "Import failed. A file in the shared folder was not a well formed group tileman tile set."
+                            : "Import failed. Clipboard text was not a well formed group tileman tile set.")
                     .build();
             plugin.sendChatMessage(chatMessage);
             return;
@@ -299,13 +491,12 @@ public class GroupTilemanDataManager extends PluginPanel {
         String tileSetName;
         try {
             // guard against empty field contents
-            if (parsedData.playerName == null){
+            if (tileSet.getPlayerName() == null){
                 throw new IllegalArgumentException();
             }
 
             // clean the label by scrubbing all non-alphanumeric characters as these can interfere with parsing
-            String cleaningRegex = "[^a-zA-Z0-9]";
-            tileSetName = parsedData.playerName.replaceAll(cleaningRegex, "");
+            tileSetName = toTileSetName(tileSet.getPlayerName());
 
             // guard against the sanitized string being clean, but empty
             if (tileSetName.trim().isEmpty()){
@@ -321,47 +512,116 @@ public class GroupTilemanDataManager extends PluginPanel {
             return;
         }
 
-        // clean any existing data stored under the same key name
-        deleteTileSet(tileSetName, true);
+        // the player's own tile set belongs in the tile store as their claims, never as a group member's
+        if (tileSetName.equals(ownTileSetName)) {
+            log.debug("Skipping a file in the shared folder holding the player's own tile set {}", tileSetName);
+            return;
+        }
 
-        // write the imported data to the config store
-        int tilesImported = 0;
-        for (String regionStr : parsedData.regionTiles.keySet()) {
-            List<TilemanModeTile> regionTiles = parsedData.regionTiles.get(regionStr);
-            int regionId = Integer.parseInt(regionStr.substring(TilemanModePlugin.REGION_PREFIX_V1.length()));
-            for(int plane = 0; plane < 4; plane++){
+        // a delta only applies on top of the version it follows on from
+        TilemanModeTileStore tileStore = plugin.getTileStore();
+        String importedVersionKey = TilemanModePlugin.SYNC_IMPORTED_VERSION_PREFIX + tileSetName;
+        int[] held = readSyncVersion(importedVersionKey);
+        boolean sameHistory = held != null && held[0] == tileSet.getHistoryId();
+        if (tileSet.isDelta()) {
+            if (!sameHistory || held[1] < tileSet.getBaseVersion()) {
+                String chatMessage = new ChatMessageBuilder()
+                        .append(FAILURE_RED, "Import failed. These changes follow on from an export of " + tileSetName
+                                + " that you haven't imported. Ask for a full compact export instead.")
+                        .build();
+                plugin.sendChatMessage(chatMessage);
+                return;
+            }
+        }
+        if (sameHistory && tileSet.getVersion() > 0 && held[1] >= tileSet.getVersion()) {
+            // the shared folder is written to whenever anything changes, so nothing needs saying there
+            if (!fromSharedFolder) {
+                String chatMessage = new ChatMessageBuilder()
+                        .append(SUCCESS_GREEN, "Tile set " + tileSetName + " is already up to date.")
+                        .build();
+                plugin.sendChatMessage(chatMessage);
+            }
+            return;
+        }
+
+        // the last chance to cancel, after this the tile set is being changed
+        if (!fromSharedFolder) {
+            progressPanel.checkCancelled();
+        }
 
-                // split the region data to planes
-                List<TilemanModeTile> filteredTiles = new ArrayList<>();
-                for (TilemanModeTile tile : regionTiles) {
-                    if (tile.getZ() == plane){
-                        filteredTiles.add(tile);
+        // write only the region planes that differ from what is held, through the tile store, which also writes
+        // them to the config. The export was read in full first, so a malformed one never gets this far and leaves
+        // the existing tile set alone.
+        String prefix = TilemanModePlugin.getImportedTileSetPrefix(tileSetName);
+        TilemanModeGroupIndex groupIndex = plugin.getGroupIndex();
+        Map<Integer, TilemanModeRegionBitmap[]> regions = tileSet.getRegions();
+        int planesChanged = 0;
+        if (!tileSet.isDelta()) {
+            // a whole tile set leaves out regions that are no longer claimed, so clear them
+            for (int regionId : tileStore.getRegionIds(prefix)) {
+                if (regions.containsKey(regionId)) {
+                    continue;
+                }
+                for (int plane = 0; plane < 4; plane++) {
+                    if (tileStore.cardinality(prefix, regionId, plane) > 0) {
+                        tileStore.putRegion(prefix, regionId, plane, TilemanModeRegionBitmap.EMPTY);
+                        groupIndex.putMemberRegion(tileSetName, regionId, plane, TilemanModeRegionBitmap.EMPTY);
+                        planesChanged++;
                     }
                 }
-
-                String key = TilemanModePlugin.REGION_PREFIX_IMPORTED + tileSetName + "_" + regionId + "_" + plane;
-                plugin.writeV2FormatData(filteredTiles, key);
-                tilesImported += filteredTiles.size();
+            }
+        }
+        for (Map.Entry<Integer, TilemanModeRegionBitmap[]> region : regions.entrySet()) {
+            TilemanModeRegionBitmap[] planes = region.getValue();
+            for (int plane = 0; plane < planes.length; plane++) {
+                // planes a delta leaves out didn't change
+                if (planes[plane] == null) {
+                    continue;
+                }
+                boolean stored = tileStore.cardinality(prefix, region.getKey(), plane) > 0;
+                if (stored ? planes[plane].hasSameTiles(tileStore.getRegion(prefix, region.getKey(), plane)) : planes[plane].isEmpty()) {
+                    continue;
+                }
+                tileStore.putRegion(prefix, region.getKey(), plane, planes[plane]);
+                groupIndex.putMemberRegion(tileSetName, region.getKey(), plane, planes[plane]);
+                planesChanged++;
             }
         }
 
         // save to disk since we've imported new data
-        configManager.sendConfig();
+        tileStore.flush();
+        tileStore.sync();
+
+        // remember which version is held, so the exporter's next delta can be checked against it
+        if (tileSet.getVersion() > 0) {
+            configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, importedVersionKey,
+                    tileSet.getHistoryId() + ":" + tileSet.getVersion());
+        } else {
+            configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, importedVersionKey);
+        }
 
-        // rebuild the visual menu
-        updatePanelContents();
+        // list the tile set, or drop it if the import left it with no claims
+        updateDataEntry(tileSetName);
 
         // update the tiles that the player can visually see on screen around them based on the new import data
         plugin.updateTilesToRender();
 
         // provide some feedback to the player
         String chatMessage = new ChatMessageBuilder()
-                .append(SUCCESS_GREEN, "Successfully imported " + tilesImported + " tiles into tile set " + tileSetName + "!")
+                .append(SUCCESS_GREEN, tileSet.isDelta()
+                        ? "Successfully updated " + planesChanged + " region planes of tile set " + tileSetName + "!"
+                        : "Successfully imported " + tileSet.getTileCount() + " tiles into tile set " + tileSetName + "!")
                 .build();
         plugin.sendChatMessage(chatMessage);
     }
 
     private void exportButtonClicked() {
+        // the player can log out while the export runs, so their name is taken now
+        String playerName = plugin.getPlayerName();
+        runInBackground("Exporting tile set", () -> exportTileSet(playerName));
+    }
+
+    private void exportTileSet(String playerName) {
 
         // Config related string keys used in this function should not be updated.
         // They have been statically implemented to generate an equivalent export string as
@@ -374,15 +634,17 @@ public class GroupTilemanDataManager extends PluginPanel {
 
         // prepare the export structure for the data export
         GroupTilemanData exportData = new GroupTilemanData();
-        exportData.playerName = plugin.getPlayerName();
+        exportData.playerName = playerName;
         exportData.regionTiles = new TreeMap<>();
 
-        // collect config keys that need processing into the export data structure
-        Set<Integer> regionsToExport = plugin.getAllRegionIds(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.REGION_PREFIX_V2);
+        // collect the regions that need processing into the export data structure
+        int[] regionsToExport = plugin.getTileStore().getRegionIds(TilemanModePlugin.REGION_PREFIX_V3);
 
         // iterate all regions and collect the tiles into an export string
         int tilesExported = 0;
-        for (int regionId : regionsToExport) {
+        for (int i = 0; i < regionsToExport.length; i++) {
+            progressPanel.checkCancelled();
+            int regionId = regionsToExport[i];
             List<TilemanModeTile> tiles = new ArrayList<>();
             for (int plane = 0; plane < 4; plane++) {
                 tiles.addAll(plugin.readTiles(regionId, plane));
@@ -390,12 +652,12 @@ public class GroupTilemanDataManager extends PluginPanel {
             // V1 is used for legacy format compatibility with historic exports from group tileman addon plugin.
             exportData.regionTiles.put(TilemanModePlugin.REGION_PREFIX_V1 + regionId, tiles);
             tilesExported += tiles.size();
+            progressPanel.setProgress((i + 1) * 100 / regionsToExport.length);
         }
 
         final String exportDump = gson.toJson(exportData);
-        Toolkit.getDefaultToolkit()
-                .getSystemClipboard()
-                .setContents(new StringSelection(exportDump), null);
+        progressPanel.checkCancelled();
+        copyToClipboard(exportDump);
 
         // log the complete output to the console for developers.
         log.debug("Exported tile set: {}", exportDump);
@@ -408,6 +670,122 @@ public class GroupTilemanDataManager extends PluginPanel {
 
     }
 
+    private void compactExportButtonClicked() {
+        String playerName = plugin.getPlayerName();
+        runInBackground("Exporting compact tile set", () -> exportCompactTileSet(playerName));
+    }
+
+    private void exportCompactTileSet(String playerName) {
+
+        String start = new ChatMessageBuilder()
+                .append(NEUTRAL_COLOR, "Beginning compact tile set export to system clipboard...")
+                .build();
+        plugin.sendChatMessage(start);
+
+        // the version is taken first, so the export never claims a change it doesn't hold
+        TilemanModeSyncVersions versions = plugin.getSyncVersions();
+        int version = versions.getVersion();
+        Map<Integer, TilemanModeRegionBitmap[]> regions = plugin.readPlayerRegions();
+        int tilesExported = 0;
+        for (TilemanModeRegionBitmap[] planes : regions.values()) {
+            for (TilemanModeRegionBitmap plane : planes) {
+                tilesExported += plane.cardinality();
+            }
+        }
+
+        final String exportDump = TilemanModeTileSetCodec.encode(playerName, versions.getHistoryId(), 0, version, regions);
+        // a cancelled export is never copied, so it mustn't count as the one a later delta follows on from
+        progressPanel.checkCancelled();
+        recordExportedVersion(versions.getHistoryId(), version);
+        copyToClipboard(exportDump);
+
+        // log the complete output to the console for developers.
+        log.debug("Exported compact tile set: {}", exportDump);
+
+        // provide player feedback
+        String end = new ChatMessageBuilder()
+                .append(SUCCESS_GREEN, "Successfully exported compact tile set containing " + tilesExported + " tiles to system clipboard!")
+                .build();
+        plugin.sendChatMessage(end);
+    }
+
+    private void deltaExportButtonClicked() {
+        String playerName = plugin.getPlayerName();
+        runInBackground("Exporting tile set changes", () -> exportTileSetChanges(playerName));
+    }
+
+    private void exportTileSetChanges(String playerName) {
+
+        // the changes follow on from the last compact export, a whole tile set if there wasn't one in this history
+        TilemanModeSyncVersions versions = plugin.getSyncVersions();
+        int version = versions.getVersion();
+        int[] exported = readSyncVersion(TilemanModePlugin.SYNC_EXPORTED_VERSION_KEY);
+        if (exported == null || exported[0] != versions.getHistoryId() || exported[1] > version) {
+            exportCompactTileSet(playerName);
+            return;
+        }
+        if (exported[1] == version) {
+            String unchanged = new ChatMessageBuilder()
+                    .append(NEUTRAL_COLOR, "No tiles changed since your last export, nothing was copied.")
+                    .build();
+            plugin.sendChatMessage(unchanged);
+            return;
+        }
+
+        // only the changed region planes are read, an emptied plane goes in empty so importers clear it
+        TilemanModeTileStore tileStore = plugin.getTileStore();
+        Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+        int[] changed = versions.getChangedSince(exported[1]);
+        for (int key : changed) {
+            regions.computeIfAbsent(key >> 2, regionId -> new TilemanModeRegionBitmap[4])[key & 3] =
+                    tileStore.getRegion(TilemanModePlugin.REGION_PREFIX_V3, key >> 2, key & 3);
+        }
+
+        final String exportDump = TilemanModeTileSetCodec.encode(playerName, versions.getHistoryId(), exported[1], version, regions);
+        progressPanel.checkCancelled();
+        recordExportedVersion(versions.getHistoryId(), version);
+        copyToClipboard(exportDump);
+
+        // log the complete output to the console for developers.
+        log.debug("Exported tile set changes: {}", exportDump);
+
+        // provide player feedback
+        String end = new ChatMessageBuilder()
+                .append(SUCCESS_GREEN, "Successfully exported changes to " + changed.length + " region planes to system clipboard!")
+                .build();
+        plugin.sendChatMessage(end);
+    }
+
+    private static void copyToClipboard(String text) {
+        SwingUtilities.invokeLater(() -> Toolkit.getDefaultToolkit()
+                .getSystemClipboard()
+                .setContents(new StringSelection(text), null));
+    }
+
+    private void recordExportedVersion(int historyId, int version) {
+        configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.SYNC_EXPORTED_VERSION_KEY,
+                historyId + ":" + version);
+        // the versions an export was made from must outlive it, so a later delta can follow on from them
+        plugin.saveSyncVersions();
+    }
+
+    /**
+     * @return the {history id, version} stored under the key as "historyId:version", or null if there is none
+     */
+    private int[] readSyncVersion(String key) {
+        String value = configManager.getConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+        if (Strings.isNullOrEmpty(value)) {
+            return null;
+        }
+        String[] parts = value.split(":");
+        try {
+            return parts.length == 2 ? new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])} : null;
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed sync version {} = {}", key, value);
+            return null;
+        }
+    }
+
     void generateLegacyGroupTilemanPluginWarning() {
 
         // generates a warning for up to three independent gameplay sessions about legacy plugin behavior.
@@ -29,32 +29,43 @@ import net.runelite.client.ui.overlay.Overlay;
 import net.runelite.client.ui.overlay.OverlayMenuEntry;
 import net.runelite.client.ui.overlay.OverlayPanel;
 import net.runelite.client.ui.overlay.OverlayPosition;
+import net.runelite.client.ui.overlay.components.LayoutableRenderableEntity;
 import net.runelite.client.ui.overlay.components.LineComponent;
 
 import javax.inject.Inject;
 import java.awt.*;
+import java.util.List;
 
 import static net.runelite.api.MenuAction.RUNELITE_OVERLAY_CONFIG;
 import static net.runelite.client.ui.overlay.OverlayManager.OPTION_CONFIGURE;
 
 class TileInfoOverlay extends OverlayPanel {
-    private final TilemanModeConfig config;
     private final TilemanModePlugin plugin;
 
     private final static String UNSPENT_TILES_STRING = "Available Tiles:";
     private final static String XP_UNTIL_NEXT_TILE = "XP Until Next Tile:";
     private final static String UNLOCKED_TILES = "Tiles Unlocked:";
+    private final static String OVERLAY_QUALITY = "Overlay Quality:";
     private final static String[] STRINGS = new String[] {
         UNSPENT_TILES_STRING,
         XP_UNTIL_NEXT_TILE,
         UNLOCKED_TILES,
+        OVERLAY_QUALITY,
     };
 
+    // lines and size for the snapshot they were built from, rebuilt when a new snapshot or font arrives
+    private TilemanModeRenderSnapshot lineSnapshot;
+    private Font lineFont;
+    private LineComponent unspentTilesLine;
+    private LineComponent xpUntilNextTileLine;
+    private LineComponent unlockedTilesLine;
+    private LineComponent overlayQualityLine;
+    private Dimension preferredSize;
+
     @Inject
-    private TileInfoOverlay(TilemanModeConfig config, TilemanModePlugin plugin) {
+    private TileInfoOverlay(TilemanModePlugin plugin) {
         super(plugin);
         this.plugin = plugin;
-        this.config = config;
         setPosition(OverlayPosition.TOP_LEFT);
         setPriority(Overlay.PRIORITY_MED);
         getMenuEntries().add(new OverlayMenuEntry(RUNELITE_OVERLAY_CONFIG, OPTION_CONFIGURE, "Tileman Mode overlay"));
@@ -62,46 +73,73 @@ class TileInfoOverlay extends OverlayPanel {
 
     @Override
     public Dimension render(Graphics2D graphics) {
-        String unspentTiles = addCommasToNumber(plugin.getRemainingTiles());
-        String unlockedTiles = addCommasToNumber(plugin.getTotalTiles());
-        String xpUntilNextTile = addCommasToNumber(plugin.getXpUntilNextTile());
+        // no tile counts are known while the profile's tiles can't be loaded
+        if (plugin.isTilesUnavailable()) {
+            return null;
+        }
+
+        addLines(panelComponent.getChildren(), graphics);
+        panelComponent.setPreferredSize(preferredSize);
+
+        return super.render(graphics);
+    }
+
+    /**
+     * Adds the lines for the current snapshot to the panel's children, which the panel clears once drawn.
+     * The lines are only rebuilt for a new snapshot or font.
+     */
+    void addLines(List<LayoutableRenderableEntity> children, Graphics2D graphics) {
+        TilemanModeRenderSnapshot snapshot = plugin.getRenderSnapshot();
+        if (snapshot != lineSnapshot || graphics.getFont() != lineFont) {
+            buildLines(snapshot, graphics);
+        }
+
+        children.add(unspentTilesLine);
+        if (snapshot.isShowXpUntilNextTile()) {
+            children.add(xpUntilNextTileLine);
+        }
+        children.add(unlockedTilesLine);
+        // only shown while the overlays are drawing less to stay inside the frame budget
+        if (snapshot.getOverlayQuality() != TilemanModeFrameGovernor.Level.FULL) {
+            children.add(overlayQualityLine);
+        }
+    }
+
+    private void buildLines(TilemanModeRenderSnapshot snapshot, Graphics2D graphics) {
+        String unspentTiles = snapshot.getRemainingTilesText();
+        String unlockedTiles = snapshot.getUnlockedTilesText();
 
-        panelComponent.getChildren().add(LineComponent.builder()
+        unspentTilesLine = LineComponent.builder()
                 .left(UNSPENT_TILES_STRING)
-                .leftColor(getTextColor())
+                .leftColor(snapshot.getInfoTextColor())
                 .right(unspentTiles)
-                .rightColor(getTextColor())
-                .build());
-
-        if(!(config.enableCustomGameMode() && config.excludeExp())) {
-            panelComponent.getChildren().add(LineComponent.builder()
-                    .left(XP_UNTIL_NEXT_TILE)
-                    .right(xpUntilNextTile)
-                    .build());
-        }
+                .rightColor(snapshot.getInfoTextColor())
+                .build();
+
+        xpUntilNextTileLine = LineComponent.builder()
+                .left(XP_UNTIL_NEXT_TILE)
+                .right(snapshot.getXpUntilNextTileText())
+                .build();
 
-        panelComponent.getChildren().add(LineComponent.builder()
+        unlockedTilesLine = LineComponent.builder()
                 .left(UNLOCKED_TILES)
                 .right(unlockedTiles)
-                .build());
+                .build();
 
-        panelComponent.setPreferredSize(new Dimension(
-                getLongestStringWidth(STRINGS, graphics)
-                        + getLongestStringWidth(new String[] {unlockedTiles, unspentTiles}, graphics),
-                0));
+        String overlayQuality = snapshot.getOverlayQuality().toString();
+        overlayQualityLine = LineComponent.builder()
+                .left(OVERLAY_QUALITY)
+                .right(overlayQuality)
+                .rightColor(Color.ORANGE)
+                .build();
 
-        return super.render(graphics);
-    }
+        preferredSize = new Dimension(
+                getLongestStringWidth(STRINGS, graphics)
+                        + getLongestStringWidth(new String[] {unlockedTiles, unspentTiles, overlayQuality}, graphics),
+                0);
 
-    private Color getTextColor() {
-        if(config.enableTileWarnings()) {
-            if (plugin.getRemainingTiles() <= 0) {
-                return Color.RED;
-            } else if (plugin.getRemainingTiles() <= config.warningLimit()) {
-                return Color.ORANGE;
-            }
-        }
-        return Color.WHITE;
+        lineSnapshot = snapshot;
+        lineFont = graphics.getFont();
     }
 
     private int getLongestStringWidth(String[] strings, Graphics2D graphics) {
@@ -114,17 +152,4 @@ class TileInfoOverlay extends OverlayPanel {
         }
         return longest;
     }
-
-    private String addCommasToNumber(int number) {
-        String input = Integer.toString(number);
-        StringBuilder output = new StringBuilder();
-        for(int x = input.length() - 1; x >= 0; x--) {
-            int lastPosition = input.length() - x - 1;
-            if(lastPosition != 0 && lastPosition % 3 == 0) {
-                output.append(",");
-            }
-            output.append(input.charAt(x));
-        }
-        return output.reverse().toString();
-    }
 }
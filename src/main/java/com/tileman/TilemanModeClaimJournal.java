@@ -0,0 +1,222 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Append-only log of tile claims and releases that have not yet reached durable tile storage.
+ *
+ * Every claim is appended as one 8 byte record as it happens, so a crash before the tile store is flushed and saved
+ * loses nothing: the records are replayed into the store on the next start. Once the store has been saved the
+ * records it covers are compacted away.
+ * <pre>
+ *   header   magic, version                                      8 bytes
+ *   record   timestamp seconds (32) | regionId (16) x (6) y (6) plane (2) claimed (1)   8 bytes each
+ * </pre>
+ */
+@Slf4j
+class TilemanModeClaimJournal {
+
+    private static final int MAGIC = 0x544D4A4C; // "TMJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 8;
+
+    interface RecordVisitor {
+        void visit(int regionId, int regionX, int regionY, int plane, boolean claimed, long timestamp);
+    }
+
+    private final Path path;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private FileChannel channel;
+
+    private TilemanModeClaimJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the journal, creating it if it doesn't exist. A record torn by a crash mid-append is discarded.
+     *
+     * @throws IOException if the journal can't be opened or isn't a claim journal
+     */
+    static TilemanModeClaimJournal open(File file) throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create claim journal directory " + directory);
+        }
+
+        TilemanModeClaimJournal journal = new TilemanModeClaimJournal(file.toPath());
+        journal.channel = openChannel(journal.path);
+        try {
+            journal.validate();
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Records a claim or release. Failures are logged rather than thrown, the claim itself has already been made.
+     */
+    synchronized void append(int regionId, int regionX, int regionY, int plane, boolean claimed) {
+        if (channel == null) {
+            return;
+        }
+
+        long timestamp = Instant.now().getEpochSecond() & 0xFFFFFFFFL;
+        long tile = ((long) regionId << 15) | (regionX << 9) | (regionY << 3) | (plane << 1) | (claimed ? 1 : 0);
+        recordBuffer.clear();
+        recordBuffer.putLong(timestamp << 32 | tile);
+        recordBuffer.flip();
+        try {
+            while (recordBuffer.hasRemaining()) {
+                channel.write(recordBuffer);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to append to the claim journal {}", path, e);
+        }
+    }
+
+    /**
+     * Visits every record in the order it was appended.
+     *
+     * @return the number of records visited
+     */
+    synchronized int replay(RecordVisitor visitor) throws IOException {
+        if (channel == null) {
+            return 0;
+        }
+
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 512);
+        long position = HEADER_SIZE;
+        int records = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                long record = buffer.getLong();
+                int tile = (int) record;
+                visitor.visit(tile >>> 15, (tile >> 9) & 0x3F, (tile >> 3) & 0x3F, (tile >> 1) & 3, (tile & 1) != 0,
+                        record >>> 32);
+                records++;
+            }
+            position += read - buffer.remaining();
+        }
+        return records;
+    }
+
+    /**
+     * @return the length of the journal's records in bytes, used as a mark to compact up to
+     */
+    synchronized long size() {
+        if (channel == null) {
+            return 0;
+        }
+        try {
+            return channel.size() - HEADER_SIZE;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Drops the records before the mark, keeping anything appended since. Call once the tile storage holding the
+     * dropped claims has been saved.
+     */
+    synchronized void compact(long mark) throws IOException {
+        if (channel == null || mark <= 0) {
+            return;
+        }
+
+        long size = channel.size();
+        long keepFrom = Math.min(HEADER_SIZE + mark, size);
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - keepFrom));
+        while (tail.hasRemaining() && channel.read(tail, keepFrom + tail.position()) > 0) {
+            // keep reading until the tail is in memory
+        }
+        tail.flip();
+
+        // write the kept records to a new journal and move it into place so a crash never leaves a partial journal
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeHeader(out);
+            while (tail.hasRemaining()) {
+                out.write(tail);
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        channel = null;
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openChannel(path);
+        log.debug("TileManMode compacted claim journal, {} bytes of records kept", size - keepFrom);
+    }
+
+    synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Unable to close the claim journal", e);
+        }
+        channel = null;
+    }
+
+    private void validate() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            writeHeader(channel);
+            channel.force(true);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading until the header is in memory
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Unrecognised claim journal " + path);
+        }
+
+        long torn = (size - HEADER_SIZE) % RECORD_SIZE;
+        if (torn != 0) {
+            log.debug("Discarding a partial claim journal record in {}", path);
+            channel.truncate(size - torn);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        // reads are positional, so the channel position stays at the end of the file and appends stay sequential
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+}
@@ -60,6 +60,11 @@ public interface TilemanModeConfig extends Config {
         ACCELERATED
     }
 
+    public enum TilemanRenderMode {
+        TILES,
+        CONTOURS
+    }
+
     @Alpha
     @ConfigItem(
             keyName = "gameMode",
@@ -153,6 +158,98 @@ public interface TilemanModeConfig extends Config {
         return Color.YELLOW;
     }
 
+    @Range(
+            min = 1,
+            max = 100
+    )
+    @Units(Units.TICKS)
+    @ConfigItem(
+            keyName = "saveInterval",
+            name = "Save interval",
+            section = settingsSection,
+            description = "How many game ticks claimed tiles are held in memory before being saved. "
+                    + "Tiles are always saved on logout.",
+            position = 7
+    )
+    default int saveInterval() {
+        return 1;
+    }
+
+    @ConfigItem(
+            keyName = "useTileDatabase",
+            name = "Use local tile database",
+            section = settingsSection,
+            description = "Stores claimed tiles in a memory mapped file in the .runelite folder instead of the RuneLite config. "
+                    + "Turning this off copies the tiles back into the config.",
+            position = 8
+    )
+    default boolean useTileDatabase() {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "renderMode",
+            name = "Tile render mode",
+            section = settingsSection,
+            description = "Tiles draws an outline for every claimed tile. "
+                    + "Contours draws one outline around each claimed area, which is much cheaper for large areas.",
+            position = 9
+    )
+    default TilemanRenderMode renderMode() {
+        return TilemanRenderMode.TILES;
+    }
+
+    @Range(
+            max = 16
+    )
+    @Units(Units.MILLISECONDS)
+    @ConfigItem(
+            keyName = "overlayFrameBudget",
+            name = "Overlay frame budget",
+            section = settingsSection,
+            description = "How long the tile and minimap overlays may each take to draw a frame before they draw less detail, "
+                    + "restoring it when there is time to spare. Set to 0 to always draw full detail.",
+            position = 10
+    )
+    default int overlayFrameBudget() {
+        return 4;
+    }
+
+    @ConfigItem(
+            keyName = "groupSyncFolder",
+            name = "Group sync folder",
+            section = settingsSection,
+            description = "A folder shared with your group, such as one synced by a cloud drive. "
+                    + "Your tile set is written to it and everyone else's is imported whenever it changes. Leave empty to turn off.",
+            position = 11
+    )
+    default String groupSyncFolder() {
+        return "";
+    }
+
+    @ConfigItem(
+            keyName = "groupSyncServer",
+            name = "Group sync server",
+            section = settingsSection,
+            description = "A group sync relay, as host:port. Your claims are streamed to it as you make them "
+                    + "and your group's show up within a tick or two. Leave empty to turn off.",
+            position = 12
+    )
+    default String groupSyncServer() {
+        return "";
+    }
+
+    @ConfigItem(
+            keyName = "groupSyncGroup",
+            name = "Group sync name",
+            section = settingsSection,
+            description = "The group to join on the sync relay. Everyone in your group must use the same name.",
+            position = 13
+    )
+    default String groupSyncGroup() {
+        return "";
+    }
+
     /***   Custom Game Mode section   ***/
     @ConfigItem(
             keyName = "enableCustomGameMode",
@@ -122,4 +122,24 @@ class TilemanModeConfigEvaluator implements TilemanModeConfig {
     public boolean allowTileDeficit() {
         return config.allowTileDeficit();
     }
+
+    @Override
+    public int saveInterval() {
+        return config.saveInterval();
+    }
+
+    @Override
+    public boolean useTileDatabase() {
+        return config.useTileDatabase();
+    }
+
+    @Override
+    public TilemanRenderMode renderMode() {
+        return config.renderMode();
+    }
+
+    @Override
+    public int overlayFrameBudget() {
+        return config.overlayFrameBudget();
+    }
 }
@@ -0,0 +1,141 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.config.ConfigManager;
+
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores each region plane as its own key in the RuneLite config, the plugin's original storage.
+ * Player regions use the V3 format, imported tile sets stay on V2 for compatibility.
+ */
+@Slf4j
+class TilemanModeConfigTileStorage implements TilemanModeTileStorage {
+
+    private final ConfigManager configManager;
+
+    TilemanModeConfigTileStorage(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    @Override
+    public TilemanModeRegionBitmap read(String prefix, int regionId, int plane) {
+        String key = toConfigKey(prefix, regionId, plane);
+        String encoded = configManager.getConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+        if (encoded == null || encoded.isEmpty()) {
+            return TilemanModeRegionBitmap.EMPTY;
+        }
+
+        TilemanModeRegionBitmap bitmap;
+        try {
+            bitmap = isV3Prefix(prefix) ? TilemanModeTileCodec.decodeV3(encoded) : TilemanModeTileCodec.decodeV2(encoded);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to decode tile data for {}", key, e);
+            return TilemanModeRegionBitmap.EMPTY;
+        }
+        return bitmap.isEmpty() ? TilemanModeRegionBitmap.EMPTY : bitmap;
+    }
+
+    @Override
+    public void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        String key = toConfigKey(prefix, regionId, plane);
+
+        // don't write empty regions. remove them instead.
+        if (bitmap.isEmpty()) {
+            configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+            return;
+        }
+
+        if (isV3Prefix(prefix)) {
+            configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, key, TilemanModeTileCodec.encodeV3(bitmap));
+        } else {
+            configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, key, bitmap.toByteArray());
+        }
+    }
+
+    @Override
+    public Set<Integer> getRegionIds(String prefix) {
+        String fullPrefix = TilemanModePlugin.CONFIG_GROUP + "." + prefix;
+        Set<Integer> regionIds = new HashSet<>();
+        for (String key : configManager.getConfigurationKeys(fullPrefix)) {
+            // keys are <prefix><regionId>_<plane>
+            String regionKey = key.substring(fullPrefix.length());
+            int underscoreIndex = regionKey.lastIndexOf('_');
+            if (underscoreIndex <= 0) {
+                continue;
+            }
+            try {
+                regionIds.add(Integer.parseInt(regionKey.substring(0, underscoreIndex)));
+            } catch (NumberFormatException e) {
+                log.debug("Skipping unexpected tile data key {}", key);
+            }
+        }
+        return regionIds;
+    }
+
+    @Override
+    public Set<String> getPrefixes(String startingWith) {
+        String fullPrefix = TilemanModePlugin.CONFIG_GROUP + "." + startingWith;
+        Set<String> prefixes = new HashSet<>();
+        for (String key : configManager.getConfigurationKeys(fullPrefix)) {
+            // advance forward in the string until _ is encountered, using the characters traveled over as the label
+            String label = key.substring(fullPrefix.length());
+            int underscoreIndex = label.indexOf('_');
+            if (underscoreIndex > 0) {
+                prefixes.add(startingWith + label.substring(0, underscoreIndex + 1));
+            }
+        }
+        return prefixes;
+    }
+
+    @Override
+    public byte[] readManifest(String prefix) {
+        String encoded = configManager.getConfiguration(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.MANIFEST_PREFIX + prefix);
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            return Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            log.warn("Unable to decode the region manifest for {}", prefix, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void writeManifest(String prefix, byte[] manifest) {
+        configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.MANIFEST_PREFIX + prefix, manifest);
+    }
+
+    @Override
+    public int deletePrefix(String prefix) {
+        String configGroup = TilemanModePlugin.CONFIG_GROUP + ".";
+        List<String> keys = configManager.getConfigurationKeys(configGroup + prefix);
+        for (String key : keys) {
+            log.debug("Scrubbing config key: " + key);
+            configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, key.substring(configGroup.length()));
+        }
+        configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, TilemanModePlugin.MANIFEST_PREFIX + prefix);
+        return keys.size();
+    }
+
+    @Override
+    public void sync() {
+        configManager.sendConfig();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static String toConfigKey(String prefix, int regionId, int plane) {
+        return prefix + regionId + "_" + plane;
+    }
+
+    private static boolean isV3Prefix(String prefix) {
+        return prefix.startsWith(TilemanModePlugin.REGION_PREFIX_V3);
+    }
+}
@@ -0,0 +1,224 @@
+package com.tileman;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws the claimed tiles of a scene index near the player as merged outlines rather than one polygon per tile.
+ *
+ * The boundary between claimed and unclaimed tiles is traced into closed loops of tile corners, marching-squares
+ * style, keeping only the corners where the outline turns. All loops are filled and stroked as one even-odd path,
+ * so holes stay open and the draw cost follows the perimeter of the claimed area rather than its tile count.
+ *
+ * Loops are only re-traced when the index or the draw window changes. Corners come from the overlay's
+ * {@link TilemanModeSceneProjection}, and the path is only rebuilt when the loops or the projection change.
+ */
+class TilemanModeContourRenderer {
+
+    private static final int VERTICES_PER_SIDE = TilemanModeSceneProjection.VERTICES_PER_SIDE;
+    private static final Stroke STROKE = new BasicStroke(2);
+
+    // outgoing boundary edge directions from a tile corner
+    private static final int EAST = 1;
+    private static final int NORTH = 2;
+    private static final int WEST = 4;
+    private static final int SOUTH = 8;
+
+    // traced loops as corner indices (y * VERTICES_PER_SIDE + x), and what they were traced from
+    private List<int[]> loops = new ArrayList<>();
+    private TilemanModeSceneIndex tracedIndex;
+    private int tracedVersion = -1;
+    private int tracedPlane = -1;
+    private int tracedMinX, tracedMinY, tracedMaxX, tracedMaxY;
+
+    // the projected outlines, rebuilt in place only when the loops or the projection change
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+    private int pathStamp;
+
+    // fill for the outline colour, made again only when the colour changes
+    private Color fillColor;
+    private Color fillSource;
+
+    /**
+     * @param projection updated for this frame
+     */
+    void render(Graphics2D graphics, TilemanModeSceneProjection projection, TilemanModeSceneIndex index, int plane,
+                int centerX, int centerY, int distance, Color color) {
+        int minX = Math.max(0, centerX - distance);
+        int maxX = Math.min(TilemanModeSceneIndex.SCENE_SIZE - 1, centerX + distance);
+        int minY = Math.max(0, centerY - distance);
+        int maxY = Math.min(TilemanModeSceneIndex.SCENE_SIZE - 1, centerY + distance);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        if (index != tracedIndex || index.getVersion() != tracedVersion || plane != tracedPlane
+                || minX != tracedMinX || minY != tracedMinY || maxX != tracedMaxX || maxY != tracedMaxY) {
+            loops = trace(index, plane, minX, minY, maxX, maxY);
+            tracedIndex = index;
+            tracedVersion = index.getVersion();
+            tracedPlane = plane;
+            tracedMinX = minX;
+            tracedMinY = minY;
+            tracedMaxX = maxX;
+            tracedMaxY = maxY;
+            pathStamp = 0;
+        }
+        if (loops.isEmpty()) {
+            return;
+        }
+
+        if (pathStamp != projection.getStamp()) {
+            path.reset();
+            for (int i = 0; i < loops.size(); i++) {
+                appendLoop(projection, loops.get(i));
+            }
+            pathStamp = projection.getStamp();
+        }
+
+        graphics.setColor(color);
+        graphics.setStroke(STROKE);
+        graphics.draw(path);
+        if (!color.equals(fillSource)) {
+            fillColor = TilemanModeOverlay.fillColor(color);
+            fillSource = color;
+        }
+        graphics.setColor(fillColor);
+        graphics.fill(path);
+    }
+
+    /**
+     * Traces the outlines of the claimed tiles in the window. Edges run with the claimed tiles on their left, so
+     * outer boundaries run anticlockwise and holes clockwise. Tiles outside the window count as unclaimed.
+     */
+    static List<int[]> trace(TilemanModeSceneIndex index, int plane, int minX, int minY, int maxX, int maxY) {
+        int[] outgoing = new int[VERTICES_PER_SIDE * VERTICES_PER_SIDE];
+        int edges = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                if (!index.contains(plane, x, y)) {
+                    continue;
+                }
+                if (y == minY || !index.contains(plane, x, y - 1)) {
+                    outgoing[vertex(x, y)] |= EAST;
+                    edges++;
+                }
+                if (x == maxX || !index.contains(plane, x + 1, y)) {
+                    outgoing[vertex(x + 1, y)] |= NORTH;
+                    edges++;
+                }
+                if (y == maxY || !index.contains(plane, x, y + 1)) {
+                    outgoing[vertex(x + 1, y + 1)] |= WEST;
+                    edges++;
+                }
+                if (x == minX || !index.contains(plane, x - 1, y)) {
+                    outgoing[vertex(x, y + 1)] |= SOUTH;
+                    edges++;
+                }
+            }
+        }
+
+        List<int[]> loops = new ArrayList<>();
+        int[] corners = new int[edges];
+        for (int start = 0; start < outgoing.length && edges > 0; start++) {
+            while (outgoing[start] != 0) {
+                int length = 0;
+                int vertex = start;
+                int direction = Integer.lowestOneBit(outgoing[start]);
+                int previousDirection = 0;
+                do {
+                    outgoing[vertex] &= ~direction;
+                    edges--;
+                    if (direction != previousDirection) {
+                        // only keep corners where the outline turns
+                        corners[length++] = vertex;
+                    }
+                    previousDirection = direction;
+                    vertex = step(vertex, direction);
+                    direction = nextDirection(outgoing[vertex], direction);
+                } while (direction != 0);
+
+                // the start corner is dropped if the outline runs straight through it
+                if (length > 1 && previousDirection == directionOf(corners[0], corners[1])) {
+                    loops.add(Arrays.copyOfRange(corners, 1, length));
+                } else {
+                    loops.add(Arrays.copyOf(corners, length));
+                }
+            }
+        }
+        return loops;
+    }
+
+    private void appendLoop(TilemanModeSceneProjection projection, int[] loop) {
+        // project every corner first, a loop with a corner behind the camera is skipped rather than drawn distorted
+        for (int vertex : loop) {
+            if (!projection.project(vertex)) {
+                return;
+            }
+        }
+        path.moveTo(projection.getX(loop[0]), projection.getY(loop[0]));
+        for (int i = 1; i < loop.length; i++) {
+            path.lineTo(projection.getX(loop[i]), projection.getY(loop[i]));
+        }
+        path.closePath();
+    }
+
+    /**
+     * Picks the edge to follow out of a corner, preferring a left turn, then straight on, then a right turn.
+     * Turning left at a corner shared by two diagonal tiles keeps them as separate outlines.
+     */
+    private static int nextDirection(int outgoing, int incoming) {
+        int left = rotateLeft(incoming);
+        if ((outgoing & left) != 0) {
+            return left;
+        }
+        if ((outgoing & incoming) != 0) {
+            return incoming;
+        }
+        int right = rotateLeft(rotateLeft(left));
+        if ((outgoing & right) != 0) {
+            return right;
+        }
+        return 0;
+    }
+
+    private static int rotateLeft(int direction) {
+        // EAST -> NORTH -> WEST -> SOUTH -> EAST
+        return direction == SOUTH ? EAST : direction << 1;
+    }
+
+    private static int step(int vertex, int direction) {
+        switch (direction) {
+            case EAST:
+                return vertex + 1;
+            case NORTH:
+                return vertex + VERTICES_PER_SIDE;
+            case WEST:
+                return vertex - 1;
+            default:
+                return vertex - VERTICES_PER_SIDE;
+        }
+    }
+
+    private static int directionOf(int from, int to) {
+        int dx = to % VERTICES_PER_SIDE - from % VERTICES_PER_SIDE;
+        int dy = to / VERTICES_PER_SIDE - from / VERTICES_PER_SIDE;
+        if (dx > 0) {
+            return EAST;
+        }
+        if (dx < 0) {
+            return WEST;
+        }
+        return dy > 0 ? NORTH : SOUTH;
+    }
+
+    private static int vertex(int x, int y) {
+        return TilemanModeSceneProjection.vertex(x, y);
+    }
+}
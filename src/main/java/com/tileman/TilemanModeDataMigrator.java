@@ -0,0 +1,290 @@
+package com.tileman;
+
+import com.google.common.base.Strings;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.chat.ChatMessageBuilder;
+import net.runelite.client.config.ConfigManager;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Moves legacy tile data (v1 JSON "region_" keys and v2 "regionv2_" keys) into the tile store in the background.
+ *
+ * Keys are migrated in sorted batches. Each batch is merged into the tile store and saved, and then a checkpoint
+ * recording the last migrated key is written before the batch's legacy keys are removed. If the client closes part
+ * way through, the next run carries on from the checkpoint. Legacy keys at or before it are migrated again rather than
+ * just removed, as a profile sync may have brought them in since. Tiles are merged into whatever the store already
+ * holds, so migrating a key twice is harmless and claims made while a migration runs are kept.
+ *
+ * A migration writes into the tile store it was started with. {@link #cancel()} waits for the batch in progress, so
+ * the store can't be closed or swapped part way through a batch, and legacy keys are only removed once their batch
+ * was saved to the store that is still the plugin's.
+ */
+@Slf4j
+class TilemanModeDataMigrator implements Runnable {
+
+    // Use string literals here rather than constants in case somebody removes or changes the constants in future
+    private static final String V1_PREFIX = "region_";
+    private static final String V2_PREFIX = "regionv2_";
+    static final String CHECKPOINT_KEY = "migrationCheckpoint";
+    private static final int BATCH_SIZE = 50;
+    private static final Color NEUTRAL_COLOR = new Color(0, 0, 0);
+
+    private final TilemanModePlugin plugin;
+    private final ConfigManager configManager;
+    private final TilemanModeTileStore tileStore;
+    private final Runnable onBatchMigrated;
+    // held while a batch is migrated
+    private final Object batchLock = new Object();
+    private volatile boolean cancelled = false;
+
+    TilemanModeDataMigrator(TilemanModePlugin plugin, ConfigManager configManager, TilemanModeTileStore tileStore,
+                            Runnable onBatchMigrated) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.tileStore = tileStore;
+        this.onBatchMigrated = onBatchMigrated;
+    }
+
+    /**
+     * Stops the migration, waiting for the batch in progress to be saved first. It resumes from its checkpoint the
+     * next time it is run.
+     */
+    void cancel() {
+        cancelled = true;
+        synchronized (batchLock) {
+            // the batch in progress, if any, has finished
+        }
+    }
+
+    /**
+     * @return true if the key belongs to data the migrator reads or writes, so config listeners can ignore it
+     */
+    static boolean isMigrationKey(String key) {
+        return key != null && (key.startsWith(V1_PREFIX) || key.startsWith(V2_PREFIX) || key.equals(CHECKPOINT_KEY));
+    }
+
+    @Override
+    public void run() {
+        try {
+            migrate();
+        } catch (RuntimeException e) {
+            log.warn("TileManMode data migration failed, it will be retried on the next start", e);
+        }
+    }
+
+    private void migrate() {
+        Instant startTime = Instant.now();
+
+        // "region_" sorts before "regionv2_", so sorting the keys also keeps v1 data ahead of v2 data
+        List<String> keys = new ArrayList<>();
+        keys.addAll(getKeys(V1_PREFIX));
+        keys.addAll(getKeys(V2_PREFIX));
+        Collections.sort(keys);
+
+        Checkpoint checkpoint = Checkpoint.parse(configManager.getConfiguration(TilemanModePlugin.CONFIG_GROUP, CHECKPOINT_KEY));
+        if (keys.isEmpty()) {
+            if (checkpoint != null) {
+                configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, CHECKPOINT_KEY);
+            }
+            return;
+        }
+
+        int done = 0;
+        if (checkpoint != null) {
+            // keys at or before the checkpoint were either migrated and their removal interrupted, or synced in
+            // since. Either way they sort first and are merged again, so they aren't counted as done yet.
+            int migrated = 0;
+            while (migrated < keys.size() && keys.get(migrated).compareTo(checkpoint.lastKey) <= 0) {
+                migrated++;
+            }
+            done = Math.max(0, checkpoint.done - migrated);
+        }
+        int total = done + keys.size();
+        sendProgress(checkpoint != null
+                ? "Resuming tile data migration, " + done + " of " + total + " regions already migrated..."
+                : "Migrating " + total + " regions of tile data to the latest format...");
+
+        int nextProgressReport = 25;
+        for (int start = 0; start < keys.size(); start += BATCH_SIZE) {
+            List<String> batch = keys.subList(start, Math.min(start + BATCH_SIZE, keys.size()));
+
+            synchronized (batchLock) {
+                if (cancelled) {
+                    break;
+                }
+
+                for (String key : batch) {
+                    migrateKey(key);
+                }
+
+                // save the migrated tiles, then the checkpoint, and only then remove the legacy keys
+                tileStore.flush();
+                tileStore.sync();
+                if (plugin.getTileStore() != tileStore) {
+                    // the legacy keys still hold the tiles, so the next run migrates them into the new store
+                    log.warn("TileManMode tile store was replaced during data migration, stopping");
+                    cancelled = true;
+                    break;
+                }
+                done += batch.size();
+                String lastKey = batch.get(batch.size() - 1);
+                configManager.setConfiguration(TilemanModePlugin.CONFIG_GROUP, CHECKPOINT_KEY, done + "/" + lastKey);
+                for (String key : batch) {
+                    configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+                }
+                configManager.sendConfig();
+            }
+            onBatchMigrated.run();
+
+            int percent = done * 100 / total;
+            if (percent >= nextProgressReport && done < total) {
+                sendProgress("Tile data migration " + percent + "% complete (" + done + " of " + total + " regions)");
+                nextProgressReport = (percent / 25 + 1) * 25;
+            }
+        }
+
+        if (cancelled) {
+            log.debug("TileManMode data migration paused at {} of {} keys", done, total);
+            return;
+        }
+
+        configManager.unsetConfiguration(TilemanModePlugin.CONFIG_GROUP, CHECKPOINT_KEY);
+        configManager.sendConfig();
+        sendProgress("Tile data migration complete, " + total + " regions migrated.");
+
+        Duration d = Duration.between(startTime, Instant.now());
+        log.debug("TileManMode data migration - Finish (" + d.toMillis() + "ms)");
+    }
+
+    private List<String> getKeys(String prefix) {
+        String groupPrefix = TilemanModePlugin.CONFIG_GROUP + ".";
+        List<String> keys = new ArrayList<>();
+        for (String key : configManager.getConfigurationKeys(groupPrefix + prefix)) {
+            keys.add(key.substring(groupPrefix.length()));
+        }
+        return keys;
+    }
+
+    private void migrateKey(String key) {
+        String value = configManager.getConfiguration(TilemanModePlugin.CONFIG_GROUP, key);
+        if (Strings.isNullOrEmpty(value)) {
+            return;
+        }
+
+        try {
+            if (key.startsWith(V2_PREFIX)) {
+                // regionv2_<regionId>_<plane>
+                String regionKey = key.substring(V2_PREFIX.length());
+                int underscoreIndex = regionKey.lastIndexOf('_');
+                int regionId = Integer.parseInt(regionKey.substring(0, underscoreIndex));
+                int plane = Integer.parseInt(regionKey.substring(underscoreIndex + 1));
+                tileStore.mergeRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, plane, TilemanModeTileCodec.decodeV2(value));
+            } else {
+                int regionId = Integer.parseInt(key.substring(V1_PREFIX.length()));
+                TilemanModeRegionBitmap[] planes = readV1Region(value);
+                for (int plane = 0; plane < planes.length; plane++) {
+                    tileStore.mergeRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, plane, planes[plane]);
+                }
+            }
+        } catch (IOException | IllegalArgumentException | IndexOutOfBoundsException | IllegalStateException e) {
+            // the key is still removed with its batch, as retrying it on every start would never succeed
+            log.warn("Skipping unreadable legacy tile data {}", key, e);
+        }
+    }
+
+    /**
+     * Streams a v1 JSON list of tiles straight into one bitmap per plane, without building the tile objects.
+     */
+    private static TilemanModeRegionBitmap[] readV1Region(String json) throws IOException {
+        TilemanModeRegionBitmap[] planes = new TilemanModeRegionBitmap[4];
+        for (int plane = 0; plane < planes.length; plane++) {
+            planes[plane] = new TilemanModeRegionBitmap();
+        }
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // Gson left a missing or null coordinate at 0
+                int regionX = 0;
+                int regionY = 0;
+                int plane = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    switch (name) {
+                        case "regionX":
+                            regionX = reader.nextInt();
+                            break;
+                        case "regionY":
+                            regionY = reader.nextInt();
+                            break;
+                        case "z":
+                            plane = reader.nextInt();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (regionX >= 0 && regionX < TilemanModeRegionBitmap.REGION_SIZE
+                        && regionY >= 0 && regionY < TilemanModeRegionBitmap.REGION_SIZE
+                        && plane >= 0 && plane < planes.length) {
+                    planes[plane].set(regionX, regionY);
+                }
+            }
+            reader.endArray();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected data after v1 tile list");
+            }
+        }
+        return planes;
+    }
+
+    private void sendProgress(String message) {
+        log.debug("TileManMode {}", message);
+        plugin.sendChatMessage(new ChatMessageBuilder()
+                .append(NEUTRAL_COLOR, message)
+                .build());
+    }
+
+    private static class Checkpoint {
+        private final int done;
+        private final String lastKey;
+
+        private Checkpoint(int done, String lastKey) {
+            this.done = done;
+            this.lastKey = lastKey;
+        }
+
+        /**
+         * @return the checkpoint saved as "done/lastKey", or null if there is none
+         */
+        static Checkpoint parse(String value) {
+            if (Strings.isNullOrEmpty(value)) {
+                return null;
+            }
+            int slashIndex = value.indexOf('/');
+            try {
+                return new Checkpoint(Integer.parseInt(value.substring(0, slashIndex)), value.substring(slashIndex + 1));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                log.debug("Ignoring unreadable migration checkpoint {}", value);
+                return null;
+            }
+        }
+    }
+}
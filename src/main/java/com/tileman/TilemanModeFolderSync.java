@@ -0,0 +1,246 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Shares tile sets through a folder every member can reach, such as one synced by a cloud drive. Each member writes
+ * their own compact export to "&lt;name&gt;.tileman" in the folder and imports everyone else's file when it changes.
+ *
+ * Files are written to a hidden temporary file and moved into place, so a reader only ever sees a whole export.
+ * The folder is watched with a {@link WatchService} on its own thread rather than polled. Changes are debounced,
+ * as sync clients often write a file in several steps, and every write and import runs on the executor.
+ */
+@Slf4j
+class TilemanModeFolderSync {
+
+    static final String FILE_EXTENSION = ".tileman";
+    private static final String TEMP_EXTENSION = ".tmp";
+    // how long a file has to stop changing before it is imported
+    private static final long IMPORT_DELAY_MS = 2000;
+    // claims made within this long of each other go out in one write
+    private static final long WRITE_DELAY_MS = 5000;
+    // a compact export of every tile in the game is far smaller than this
+    private static final long MAX_FILE_BYTES = 32 * 1024 * 1024;
+
+    private final Path folder;
+    private final ScheduledExecutorService executor;
+    private final BiConsumer<String, String> importer;
+    private final Map<Path, PendingImport> pendingImports = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread watchThread;
+
+    // the player's own file, unknown until they log in. Other files are only imported once it is known.
+    private volatile String ownFileName;
+    private Future<?> pendingWrite;
+    private int writtenHistoryId;
+    private int writtenVersion = -1;
+
+    /**
+     * An import waiting for its file to stop changing. Each one only ever removes itself from the pending imports, so
+     * a newer one for the same file is left for {@link #close()} to cancel.
+     */
+    private final class PendingImport implements Runnable {
+        private final Path file;
+        private volatile Future<?> future;
+        private volatile boolean cancelled;
+
+        private PendingImport(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            pendingImports.remove(file, this);
+            importFile(file);
+        }
+
+        private void cancel() {
+            // set first, in case it is cancelled before it has been scheduled
+            cancelled = true;
+            Future<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param importer imports the text of another member's file, called on the executor with the text and the
+     *                 player's own tile set name. The file's name only says whose it should be, so the importer skips
+     *                 one that turns out to hold the player's own tile set.
+     */
+    TilemanModeFolderSync(Path folder, ScheduledExecutorService executor, BiConsumer<String, String> importer) {
+        this.folder = folder;
+        this.executor = executor;
+        this.importer = importer;
+    }
+
+    /**
+     * Starts watching the folder.
+     *
+     * @throws IOException if the folder can't be watched
+     */
+    synchronized void start() throws IOException {
+        watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchThread = new Thread(this::watch, "tileman-folder-sync");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Stops watching the folder and drops any write or import not yet started.
+     */
+    synchronized void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the shared folder watch", e);
+        }
+        for (PendingImport pending : pendingImports.values()) {
+            pending.cancel();
+        }
+        pendingImports.clear();
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+        }
+    }
+
+    /**
+     * Writes the player's tile set to the folder shortly, unless the version was already written.
+     *
+     * @param export builds the compact export to write, called on the executor
+     */
+    synchronized void tileSetChanged(String playerName, int historyId, int version, Supplier<String> export) {
+        String fileName = toFileName(playerName);
+        if (!fileName.equals(ownFileName)) {
+            ownFileName = fileName;
+            writtenVersion = -1;
+            // files that changed before the player's own one was known were skipped, so catch up on them now
+            executor.execute(this::importAll);
+        }
+
+        if ((historyId == writtenHistoryId && version == writtenVersion) || pendingWrite != null) {
+            return;
+        }
+        pendingWrite = executor.schedule(() -> {
+            synchronized (this) {
+                pendingWrite = null;
+                writtenHistoryId = historyId;
+                writtenVersion = version;
+            }
+            write(fileName, export.get());
+        }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the file a player's tile set is written to, named like the tile set it imports as
+     */
+    static String toFileName(String playerName) {
+        return GroupTilemanDataManager.toTileSetName(playerName) + FILE_EXTENSION;
+    }
+
+    private void write(String fileName, String text) {
+        Path target = folder.resolve(fileName);
+        Path temp = folder.resolve("." + fileName + TEMP_EXTENSION);
+        try {
+            Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("TileManMode wrote {} to the shared folder", fileName);
+        } catch (IOException e) {
+            log.warn("Failed to write the tile set to the shared folder {}", folder, e);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were lost, so any file may have changed
+                        executor.execute(this::importAll);
+                    } else {
+                        fileChanged(folder.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("TileManMode stopped watching the shared folder {}, it is no longer accessible", folder);
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void fileChanged(Path file) {
+        if (!isMemberFile(file)) {
+            return;
+        }
+        PendingImport pending = new PendingImport(file);
+        PendingImport previous = pendingImports.put(file, pending);
+        pending.future = executor.schedule(pending, IMPORT_DELAY_MS, TimeUnit.MILLISECONDS);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void importAll() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                if (isMemberFile(file)) {
+                    importFile(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read the shared folder {}", folder, e);
+        }
+    }
+
+    private void importFile(Path file) {
+        try {
+            if (!Files.isRegularFile(file) || Files.size(file) > MAX_FILE_BYTES) {
+                return;
+            }
+            String own = ownFileName;
+            importer.accept(new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+                    own.substring(0, own.length() - FILE_EXTENSION.length()));
+        } catch (IOException e) {
+            log.warn("Failed to read {} from the shared folder", file, e);
+        }
+    }
+
+    private boolean isMemberFile(Path file) {
+        String fileName = file.getFileName().toString();
+        String own = ownFileName;
+        return own != null && !fileName.equals(own) && !fileName.startsWith(".") && fileName.endsWith(FILE_EXTENSION);
+    }
+}
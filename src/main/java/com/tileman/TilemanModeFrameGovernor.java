@@ -0,0 +1,105 @@
+package com.tileman;
+
+/**
+ * Keeps an overlay inside a per-frame time budget by stepping its drawing quality down when a moving average of its
+ * render time goes over the budget, and back up once there is headroom again.
+ *
+ * Levels only change after the average has had time to settle at the current one. Stepping back up waits longer
+ * each time it has to be undone soon after, so an overlay sitting right at the budget doesn't flicker between levels.
+ */
+class TilemanModeFrameGovernor {
+
+    enum Level {
+        FULL("Full"),
+        REDUCED_RADIUS("Reduced radius"),
+        NO_GROUP_TILES("No group tiles"),
+        OUTLINES_ONLY("Outlines only");
+
+        private final String displayName;
+
+        Level(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    // weight of the latest frame in the moving average
+    private static final double SMOOTHING = 0.1;
+    // frames at a level before the average is trusted to reflect it
+    private static final int SETTLE_FRAMES = 60;
+    private static final int MAX_RESTORE_FRAMES = SETTLE_FRAMES * 32;
+    // the average has to be this far under budget before quality is restored
+    private static final double RESTORE_FRACTION = 0.5;
+
+    private final Level lowestLevel;
+    private volatile Level level = Level.FULL;
+    private double averageNanos;
+    private int framesAtLevel;
+    private int restoreFrames = SETTLE_FRAMES;
+    private boolean restoredLast;
+
+    /**
+     * @param lowestLevel the lowest quality the overlay can fall back to
+     */
+    TilemanModeFrameGovernor(Level lowestLevel) {
+        this.lowestLevel = lowestLevel;
+    }
+
+    Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Records how long a frame took to draw and adjusts the level for the next one.
+     *
+     * @param budgetNanos the budget per frame, 0 to always draw at full quality
+     */
+    void record(long frameNanos, long budgetNanos) {
+        if (budgetNanos <= 0) {
+            reset();
+            return;
+        }
+
+        averageNanos = framesAtLevel == 0 ? frameNanos : averageNanos + SMOOTHING * (frameNanos - averageNanos);
+        framesAtLevel++;
+
+        if (averageNanos > budgetNanos && framesAtLevel >= SETTLE_FRAMES && level != lowestLevel) {
+            // quality was only just restored and is already over budget again, so wait longer before the next try
+            if (restoredLast && framesAtLevel < restoreFrames * 2) {
+                restoreFrames = Math.min(restoreFrames * 2, MAX_RESTORE_FRAMES);
+            }
+            changeLevel(level.ordinal() + 1, false);
+        } else if (averageNanos < budgetNanos * RESTORE_FRACTION && framesAtLevel >= restoreFrames && level != Level.FULL) {
+            changeLevel(level.ordinal() - 1, true);
+        } else if (restoredLast && framesAtLevel >= restoreFrames * 2) {
+            // the restored level held, so the next restore can be tried as soon as it settles
+            restoredLast = false;
+            restoreFrames = SETTLE_FRAMES;
+        }
+    }
+
+    void reset() {
+        level = Level.FULL;
+        framesAtLevel = 0;
+        restoreFrames = SETTLE_FRAMES;
+        restoredLast = false;
+    }
+
+    private void changeLevel(int ordinal, boolean restored) {
+        level = Level.values()[ordinal];
+        // the average carries on from the previous level rather than starting over, only the settle time restarts
+        framesAtLevel = 1;
+        restoredLast = restored;
+    }
+
+    /**
+     * @return the lower of the two qualities
+     */
+    static Level lowest(Level a, Level b) {
+        return a.ordinal() >= b.ordinal() ? a : b;
+    }
+}
@@ -0,0 +1,278 @@
+package com.tileman;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every imported group tile set merged into one layer. Per region plane it keeps a union of all members' claims,
+ * so "claimed by anyone in the group" is one bit test, and each member's own bitplane, so tiles can still be told
+ * apart by who claimed them.
+ *
+ * Members are added and removed one at a time as tile sets are imported and deleted, touching only the regions
+ * that member has claims in. Bitmaps handed out are never changed afterwards, a change replaces them, so they can
+ * be read on other threads without holding the index's lock.
+ */
+class TilemanModeGroupIndex {
+
+    private static final int PLANES = 4;
+    private static final int REGION_SIZE = TilemanModeRegionBitmap.REGION_SIZE;
+
+    private static final class GroupRegion {
+        private TilemanModeRegionBitmap union = TilemanModeRegionBitmap.EMPTY;
+        // indexed by member slot, null where the member has no claims
+        private TilemanModeRegionBitmap[] owners = new TilemanModeRegionBitmap[0];
+    }
+
+    private final TilemanModeTileStore store;
+    // member slot -> tile set name, null for slots freed by a removed member
+    private final List<String> members = new ArrayList<>();
+    // (regionId << 2 | plane) -> union and bitplanes
+    private final Map<Integer, GroupRegion> regions = new HashMap<>();
+    // tile set name -> (regionId << 2 | plane) of every region plane the member has claims in
+    private final Map<String, Set<Integer>> memberRegions = new HashMap<>();
+    private int version = 0;
+    // change counters for region planes, hashed by (regionId << 2 | plane) into a fixed table as the tile store does,
+    // so reading one never boxes. Region planes sharing a counter only cost a redraw.
+    private static final int REGION_VERSION_BUCKETS = 8192;
+    private final int[] regionVersions = new int[REGION_VERSION_BUCKETS];
+
+    TilemanModeGroupIndex(TilemanModeTileStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Builds the index from every tile set imported into the store.
+     */
+    static TilemanModeGroupIndex load(TilemanModeTileStore store) {
+        TilemanModeGroupIndex index = new TilemanModeGroupIndex(store);
+        for (String tileSetName : store.getImportedTileSetNames()) {
+            index.addMember(tileSetName);
+        }
+        return index;
+    }
+
+    /**
+     * Reads the tile set's claims from the store into the index, replacing any it already held for the tile set.
+     */
+    synchronized void addMember(String tileSetName) {
+        removeMember(tileSetName);
+
+        String prefix = TilemanModePlugin.getImportedTileSetPrefix(tileSetName);
+        int slot = members.indexOf(null);
+        if (slot < 0) {
+            slot = members.size();
+            members.add(tileSetName);
+        } else {
+            members.set(slot, tileSetName);
+        }
+
+        Set<Integer> claimedRegions = new HashSet<>();
+        for (int regionId : store.getRegionIds(prefix)) {
+            for (int plane = 0; plane < PLANES; plane++) {
+                // the manifest knows which planes have claims, so empty planes are never decoded
+                if (store.cardinality(prefix, regionId, plane) == 0) {
+                    continue;
+                }
+                TilemanModeRegionBitmap claims = copyOf(store.getRegion(prefix, regionId, plane));
+                if (claims.isEmpty()) {
+                    continue;
+                }
+
+                int key = packKey(regionId, plane);
+                GroupRegion region = regions.computeIfAbsent(key, k -> new GroupRegion());
+                if (region.owners.length <= slot) {
+                    TilemanModeRegionBitmap[] owners = new TilemanModeRegionBitmap[members.size()];
+                    System.arraycopy(region.owners, 0, owners, 0, region.owners.length);
+                    region.owners = owners;
+                }
+                region.owners[slot] = claims;
+                claimedRegions.add(key);
+                regionVersions[versionBucket(key)]++;
+
+                TilemanModeRegionBitmap union = copyOf(region.union);
+                for (int y = 0; y < REGION_SIZE; y++) {
+                    union.setRow(y, union.getRow(y) | claims.getRow(y));
+                }
+                region.union = union;
+            }
+        }
+        if (claimedRegions.isEmpty()) {
+            // e.g. reloading a tile set that was deleted elsewhere
+            members.set(slot, null);
+        } else {
+            memberRegions.put(tileSetName, claimedRegions);
+        }
+        version++;
+    }
+
+    /**
+     * Drops the tile set's claims from the index, keeping any tiles another member also claimed. Only the region
+     * planes the member has claims in are visited.
+     */
+    synchronized void removeMember(String tileSetName) {
+        int slot = members.indexOf(tileSetName);
+        if (slot < 0) {
+            return;
+        }
+        members.set(slot, null);
+
+        Set<Integer> claimedRegions = memberRegions.remove(tileSetName);
+        if (claimedRegions != null) {
+            for (int key : claimedRegions) {
+                GroupRegion region = regions.get(key);
+                if (region == null || slot >= region.owners.length) {
+                    continue;
+                }
+                region.owners[slot] = null;
+                regionVersions[versionBucket(key)]++;
+
+                TilemanModeRegionBitmap union = unionOf(region.owners);
+                if (union.isEmpty()) {
+                    regions.remove(key);
+                } else {
+                    region.union = union;
+                }
+            }
+        }
+        version++;
+    }
+
+    /**
+     * Replaces one region plane of the member's claims, adding the member if it isn't in the index yet.
+     * Only that region plane's union is recomputed.
+     */
+    synchronized void putMemberRegion(String tileSetName, int regionId, int plane, TilemanModeRegionBitmap claims) {
+        int slot = members.indexOf(tileSetName);
+        if (slot < 0) {
+            if (claims.isEmpty()) {
+                return;
+            }
+            slot = members.indexOf(null);
+            if (slot < 0) {
+                slot = members.size();
+                members.add(tileSetName);
+            } else {
+                members.set(slot, tileSetName);
+            }
+        }
+
+        int key = packKey(regionId, plane);
+        GroupRegion region = regions.get(key);
+        if (region == null) {
+            if (claims.isEmpty()) {
+                return;
+            }
+            region = new GroupRegion();
+            regions.put(key, region);
+        }
+        if (region.owners.length <= slot) {
+            TilemanModeRegionBitmap[] owners = new TilemanModeRegionBitmap[members.size()];
+            System.arraycopy(region.owners, 0, owners, 0, region.owners.length);
+            region.owners = owners;
+        }
+        region.owners[slot] = claims.isEmpty() ? null : copyOf(claims);
+        if (claims.isEmpty()) {
+            Set<Integer> claimedRegions = memberRegions.get(tileSetName);
+            if (claimedRegions != null) {
+                claimedRegions.remove(key);
+            }
+        } else {
+            memberRegions.computeIfAbsent(tileSetName, name -> new HashSet<>()).add(key);
+        }
+
+        TilemanModeRegionBitmap union = unionOf(region.owners);
+        if (union.isEmpty()) {
+            regions.remove(key);
+        } else {
+            region.union = union;
+        }
+        regionVersions[versionBucket(key)]++;
+        version++;
+    }
+
+    /**
+     * @return the tiles any member claimed in the region plane. Never modify it.
+     */
+    synchronized TilemanModeRegionBitmap getUnion(int regionId, int plane) {
+        GroupRegion region = regions.get(packKey(regionId, plane));
+        return region == null ? TilemanModeRegionBitmap.EMPTY : region.union;
+    }
+
+    synchronized boolean contains(int regionId, int regionX, int regionY, int plane) {
+        GroupRegion region = regions.get(packKey(regionId, plane));
+        return region != null && region.union.contains(regionX, regionY);
+    }
+
+    /**
+     * @return the tiles the member claimed in the region plane. Never modify it.
+     */
+    synchronized TilemanModeRegionBitmap getMemberRegion(String tileSetName, int regionId, int plane) {
+        int slot = members.indexOf(tileSetName);
+        GroupRegion region = regions.get(packKey(regionId, plane));
+        if (slot < 0 || region == null || slot >= region.owners.length || region.owners[slot] == null) {
+            return TilemanModeRegionBitmap.EMPTY;
+        }
+        return region.owners[slot];
+    }
+
+    /**
+     * @return the names of the tile sets in the index
+     */
+    synchronized List<String> getMembers() {
+        List<String> names = new ArrayList<>();
+        for (String member : members) {
+            if (member != null) {
+                names.add(member);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return a count that changes whenever a member is added or removed, or any member's claims change
+     */
+    synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return a count that changes whenever the union of the region plane may have changed
+     */
+    synchronized int getRegionVersion(int regionId, int plane) {
+        return regionVersions[versionBucket(packKey(regionId, plane))];
+    }
+
+    private static TilemanModeRegionBitmap unionOf(TilemanModeRegionBitmap[] owners) {
+        TilemanModeRegionBitmap union = new TilemanModeRegionBitmap();
+        for (TilemanModeRegionBitmap owner : owners) {
+            if (owner == null) {
+                continue;
+            }
+            for (int y = 0; y < REGION_SIZE; y++) {
+                union.setRow(y, union.getRow(y) | owner.getRow(y));
+            }
+        }
+        return union;
+    }
+
+    private static TilemanModeRegionBitmap copyOf(TilemanModeRegionBitmap bitmap) {
+        TilemanModeRegionBitmap copy = new TilemanModeRegionBitmap();
+        for (int y = 0; y < REGION_SIZE; y++) {
+            copy.setRow(y, bitmap.getRow(y));
+        }
+        return copy;
+    }
+
+    private static int versionBucket(int key) {
+        // neighbouring regions differ in the low bits of the region id, spread them before masking
+        return (key * 0x9E3779B1 >>> 16) & (REGION_VERSION_BUCKETS - 1);
+    }
+
+    private static int packKey(int regionId, int plane) {
+        return regionId << 2 | plane;
+    }
+}
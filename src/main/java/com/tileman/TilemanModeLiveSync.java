@@ -0,0 +1,334 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Streams the player's claims to a {@link TilemanModeSyncRelay} and receives the rest of the group's, so they show
+ * up for teammates within a tick or two.
+ *
+ * Claims made during a tick are sent together when it ends, as one {@link TilemanModeSyncProtocol#CLAIMS} frame.
+ * Each batch is held until the relay acknowledges it and only {@link #MAX_IN_FLIGHT} are sent unacknowledged. Past
+ * that, claims keep collecting with only the latest state of each tile kept, so a slow relay costs at most one entry
+ * per changed tile rather than a growing queue.
+ *
+ * A dropped connection is retried with backoff. The relay is told the last batch received, to resume from there,
+ * and any batches it hadn't acknowledged are sent again. The relay numbers a member's batches across sessions, so a
+ * new session numbers its batches on from the last one the relay's welcome says it received.
+ */
+@Slf4j
+class TilemanModeLiveSync {
+
+    interface Listener {
+        /**
+         * Called on the connection's reader thread with another member's claims, in the order the relay sent them.
+         */
+        void onClaims(String member, int[] claims);
+
+        /**
+         * Called on the reader thread when the relay no longer held every batch since the last one received.
+         */
+        void onReset();
+    }
+
+    static final int MAX_IN_FLIGHT = 16;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long MIN_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 30000;
+
+    private static final class Batch {
+        private final long sequence;
+        private final int[] claims;
+        private final byte[] frame;
+
+        private Batch(long sequence, int[] claims) {
+            this.sequence = sequence;
+            this.claims = claims;
+            this.frame = TilemanModeSyncProtocol.claims(sequence, claims);
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final String group;
+    private final String member;
+    private final Listener listener;
+
+    // all guarded by this
+    // tile (claim record without the claimed bit) -> the latest claim record, not yet sent
+    private final Map<Integer, Integer> pending = new HashMap<>();
+    private final ArrayDeque<Batch> inFlight = new ArrayDeque<>();
+    private boolean tickEnded;
+    // false until the relay has said which of this member's batches it last received
+    private boolean sequenced;
+    private long nextSequence = 1;
+    private long relaySequence;
+    private Socket socket;
+    private boolean closed;
+
+    /**
+     * @param relaySequence the last relay batch received by an earlier session, 0 to be sent everything the relay holds
+     */
+    TilemanModeLiveSync(String host, int port, String group, String member, long relaySequence, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.group = group;
+        this.member = member;
+        this.relaySequence = relaySequence;
+        this.listener = listener;
+    }
+
+    String getGroup() {
+        return group;
+    }
+
+    String getMember() {
+        return member;
+    }
+
+    /**
+     * @return the last relay batch received, to resume a later session from
+     */
+    synchronized long getRelaySequence() {
+        return relaySequence;
+    }
+
+    void start() {
+        Thread connectionThread = new Thread(this::run, "tileman-live-sync");
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+    }
+
+    /**
+     * Disconnects from the relay. Claims not yet sent are dropped.
+     */
+    synchronized void close() {
+        closed = true;
+        closeSocket();
+        notifyAll();
+    }
+
+    /**
+     * Queues the claim to be sent when the tick ends.
+     */
+    synchronized void claimChanged(int regionId, int regionX, int regionY, int plane, boolean claimed) {
+        int claim = TilemanModeSyncProtocol.packClaim(regionId, regionX, regionY, plane, claimed);
+        pending.put(claim >>> 1, claim);
+    }
+
+    /**
+     * Sends the claims made during the tick.
+     */
+    synchronized void endTick() {
+        if (!pending.isEmpty()) {
+            tickEnded = true;
+            notifyAll();
+        }
+    }
+
+    private void run() {
+        long retryMs = MIN_RETRY_MS;
+        while (!isClosed()) {
+            Socket connection = new Socket();
+            try {
+                connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                connection.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+
+                TilemanModeSyncProtocol.write(out, TilemanModeSyncProtocol.hello(group, member, getRelaySequence()));
+                TilemanModeSyncProtocol.Frame welcome = TilemanModeSyncProtocol.read(in);
+                if (welcome.type != TilemanModeSyncProtocol.WELCOME) {
+                    throw new IOException("Expected a welcome from the relay, got frame " + welcome.type);
+                }
+                welcomed(TilemanModeSyncProtocol.readLong(welcome.body));
+                if (!attach(connection)) {
+                    return;
+                }
+                log.debug("TileManMode connected to the live sync relay {}:{}", host, port);
+                retryMs = MIN_RETRY_MS;
+
+                Thread reader = new Thread(() -> read(connection, in), "tileman-live-sync-reader");
+                reader.setDaemon(true);
+                reader.start();
+                send(connection, out);
+            } catch (IOException e) {
+                log.debug("TileManMode live sync connection to {}:{} failed", host, port, e);
+            } finally {
+                detach(connection);
+            }
+
+            synchronized (this) {
+                if (!closed) {
+                    try {
+                        wait(retryMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+        }
+    }
+
+    /**
+     * Sends batches on the connection until it drops, starting with those sent before but never acknowledged.
+     */
+    private void send(Socket connection, OutputStream out) throws IOException {
+        byte[][] resend;
+        synchronized (this) {
+            resend = new byte[inFlight.size()][];
+            int i = 0;
+            for (Batch batch : inFlight) {
+                resend[i++] = batch.frame;
+            }
+        }
+        for (byte[] frame : resend) {
+            TilemanModeSyncProtocol.write(out, frame);
+        }
+
+        while (true) {
+            byte[] frame;
+            synchronized (this) {
+                while (socket == connection && (!tickEnded || inFlight.size() >= MAX_IN_FLIGHT)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (socket != connection) {
+                    return;
+                }
+                frame = takeBatch();
+            }
+            TilemanModeSyncProtocol.write(out, frame);
+        }
+    }
+
+    private byte[] takeBatch() {
+        int[] claims = new int[Math.min(pending.size(), TilemanModeSyncProtocol.MAX_BATCH_CLAIMS)];
+        Iterator<Integer> iterator = pending.values().iterator();
+        for (int i = 0; i < claims.length; i++) {
+            claims[i] = iterator.next();
+            iterator.remove();
+        }
+        tickEnded = !pending.isEmpty();
+
+        Batch batch = new Batch(nextSequence++, claims);
+        inFlight.add(batch);
+        return batch.frame;
+    }
+
+    private void read(Socket connection, DataInputStream in) {
+        try {
+            while (true) {
+                TilemanModeSyncProtocol.Frame frame = TilemanModeSyncProtocol.read(in);
+                switch (frame.type) {
+                    case TilemanModeSyncProtocol.ACK:
+                        acknowledge(TilemanModeSyncProtocol.readLong(frame.body));
+                        break;
+                    case TilemanModeSyncProtocol.BATCH: {
+                        long sequence = TilemanModeSyncProtocol.readLong(frame.body);
+                        String batchMember = TilemanModeSyncProtocol.readString(frame.body);
+                        int[] claims = TilemanModeSyncProtocol.readClaims(frame.body);
+                        listener.onClaims(batchMember, claims);
+                        setRelaySequence(sequence);
+                        break;
+                    }
+                    case TilemanModeSyncProtocol.RESET: {
+                        // a member joining for the first time had nothing to miss
+                        boolean receivedBefore = getRelaySequence() > 0;
+                        setRelaySequence(TilemanModeSyncProtocol.readLong(frame.body));
+                        if (receivedBefore) {
+                            listener.onReset();
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unexpected sync frame " + frame.type);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("TileManMode live sync connection to {}:{} dropped", host, port, e);
+        } finally {
+            detach(connection);
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void setRelaySequence(long sequence) {
+        relaySequence = sequence;
+    }
+
+    /**
+     * Takes the last of this member's batches the relay received, from any session. Once this session has numbered
+     * batches after it, they were all received up to there. Otherwise the number came from another session, so
+     * anything still in flight is numbered on from it, or the relay would take those batches for ones it already has.
+     */
+    private synchronized void welcomed(long lastSequence) {
+        if (sequenced && nextSequence > lastSequence) {
+            acknowledge(lastSequence);
+            return;
+        }
+        sequenced = true;
+        nextSequence = lastSequence + 1;
+        ArrayDeque<Batch> renumbered = new ArrayDeque<>();
+        for (Batch batch : inFlight) {
+            renumbered.add(new Batch(nextSequence++, batch.claims));
+        }
+        inFlight.clear();
+        inFlight.addAll(renumbered);
+    }
+
+    private synchronized void acknowledge(long sequence) {
+        while (!inFlight.isEmpty() && inFlight.peekFirst().sequence <= sequence) {
+            inFlight.removeFirst();
+        }
+        notifyAll();
+    }
+
+    private synchronized boolean attach(Socket connection) {
+        if (closed) {
+            return false;
+        }
+        socket = connection;
+        return true;
+    }
+
+    private synchronized void detach(Socket connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the live sync connection", e);
+        }
+        if (socket == connection) {
+            socket = null;
+            notifyAll();
+        }
+    }
+
+    private void closeSocket() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the live sync connection", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores region bitmaps in memory mapped files outside of the RuneLite config.
+ *
+ * Data lives in fixed size segment files (tiles-0.db, tiles-1.db, ...), each laid out as:
+ * <pre>
+ *   header   16 bytes      magic, version, slots per segment, reserved
+ *   index    1024 x 8      owner id (-1 when the slot is free), regionId << 2 | plane
+ *   slots    1024 x 512    the 64 rows of the region bitmap
+ * </pre>
+ * Bitmap rows are written straight into the mapping with no encoding step. Reads copy a slot's 512 bytes into a new
+ * bitmap, so what the tile store caches stays valid when the slot is rewritten or freed. Owner ids map to tile set
+ * prefixes ("regionv3_", "imported_Name_") listed one per line in owners.txt. New segments are added rather than
+ * growing an existing one, since a mapped file can't be resized on every platform while it is mapped.
+ */
+@Slf4j
+class TilemanModeMappedTileStorage implements TilemanModeTileStorage {
+
+    private static final int MAGIC = 0x544D4442; // "TMDB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOTS_PER_SEGMENT = 1024;
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final int SLOT_SIZE = TilemanModeRegionBitmap.REGION_SIZE * Long.BYTES;
+    private static final int INDEX_OFFSET = HEADER_SIZE;
+    private static final int SLOTS_OFFSET = INDEX_OFFSET + SLOTS_PER_SEGMENT * INDEX_ENTRY_SIZE;
+    private static final int SEGMENT_SIZE = SLOTS_OFFSET + SLOTS_PER_SEGMENT * SLOT_SIZE;
+    private static final int FREE = -1;
+    private static final String OWNERS_FILE = "owners.txt";
+
+    private final File directory;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<String> owners = new ArrayList<>();
+    private final Map<String, Integer> ownerIds = new HashMap<>();
+
+    // (ownerId << 32 | regionId << 2 | plane) -> slot number across all segments
+    private final Map<Long, Integer> slots = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private TilemanModeMappedTileStorage(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the tile database in the directory.
+     *
+     * @param create whether to create the database if it doesn't exist yet, rather than fail
+     * @throws IOException if the database is missing, or can't be created, mapped or is not a tile database
+     */
+    static TilemanModeMappedTileStorage open(File directory, boolean create) throws IOException {
+        if (!directory.isDirectory()) {
+            if (!create) {
+                throw new IOException("No tile database at " + directory);
+            }
+            if (!directory.mkdirs()) {
+                throw new IOException("Unable to create tile database directory " + directory);
+            }
+        }
+
+        TilemanModeMappedTileStorage storage = new TilemanModeMappedTileStorage(directory);
+        try {
+            storage.load();
+        } catch (IOException | RuntimeException e) {
+            storage.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return storage;
+    }
+
+    /**
+     * Deletes a database that was closed, or never fully created.
+     *
+     * @return false if any of its files could not be deleted
+     */
+    static boolean delete(File directory) {
+        boolean deleted = true;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            // segments and the owners list are the only files, the database never has subdirectories
+            for (File file : files) {
+                deleted &= file.delete();
+            }
+        }
+        return directory.delete() && deleted;
+    }
+
+    @Override
+    public TilemanModeRegionBitmap read(String prefix, int regionId, int plane) {
+        Integer ownerId = ownerIds.get(prefix);
+        if (ownerId == null) {
+            return TilemanModeRegionBitmap.EMPTY;
+        }
+        Integer slot = slots.get(slotKey(ownerId, regionId, plane));
+        if (slot == null) {
+            return TilemanModeRegionBitmap.EMPTY;
+        }
+
+        MappedByteBuffer segment = segments.get(slot / SLOTS_PER_SEGMENT);
+        int base = SLOTS_OFFSET + (slot % SLOTS_PER_SEGMENT) * SLOT_SIZE;
+        TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+        for (int y = 0; y < TilemanModeRegionBitmap.REGION_SIZE; y++) {
+            bitmap.setRow(y, segment.getLong(base + y * Long.BYTES));
+        }
+        return bitmap.isEmpty() ? TilemanModeRegionBitmap.EMPTY : bitmap;
+    }
+
+    @Override
+    public void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        Integer existingOwnerId = ownerIds.get(prefix);
+        if (bitmap.isEmpty()) {
+            if (existingOwnerId != null) {
+                Integer slot = slots.remove(slotKey(existingOwnerId, regionId, plane));
+                if (slot != null) {
+                    freeSlot(slot);
+                }
+            }
+            return;
+        }
+
+        int ownerId = existingOwnerId != null ? existingOwnerId : addOwner(prefix);
+        long key = slotKey(ownerId, regionId, plane);
+        Integer slot = slots.get(key);
+        boolean newSlot = slot == null;
+        if (newSlot) {
+            slot = allocateSlot();
+            slots.put(key, slot);
+        }
+
+        MappedByteBuffer segment = segments.get(slot / SLOTS_PER_SEGMENT);
+        int index = slot % SLOTS_PER_SEGMENT;
+        int base = SLOTS_OFFSET + index * SLOT_SIZE;
+        for (int y = 0; y < TilemanModeRegionBitmap.REGION_SIZE; y++) {
+            segment.putLong(base + y * Long.BYTES, bitmap.getRow(y));
+        }
+
+        // only claim the index entry once the slot holds its data
+        if (newSlot) {
+            int entry = INDEX_OFFSET + index * INDEX_ENTRY_SIZE;
+            segment.putInt(entry + 4, packRegion(regionId, plane));
+            segment.putInt(entry, ownerId);
+        }
+    }
+
+    @Override
+    public Set<Integer> getRegionIds(String prefix) {
+        Set<Integer> regionIds = new HashSet<>();
+        Integer ownerId = ownerIds.get(prefix);
+        if (ownerId == null) {
+            return regionIds;
+        }
+        for (long key : slots.keySet()) {
+            if ((int) (key >> 32) == ownerId) {
+                regionIds.add((int) key >> 2);
+            }
+        }
+        return regionIds;
+    }
+
+    @Override
+    public Set<String> getPrefixes(String startingWith) {
+        Set<Integer> usedOwners = new HashSet<>();
+        for (long key : slots.keySet()) {
+            usedOwners.add((int) (key >> 32));
+        }
+
+        Set<String> prefixes = new HashSet<>();
+        for (int ownerId : usedOwners) {
+            String prefix = owners.get(ownerId);
+            if (prefix.startsWith(startingWith)) {
+                prefixes.add(prefix);
+            }
+        }
+        return prefixes;
+    }
+
+    @Override
+    public byte[] readManifest(String prefix) {
+        // the index already lists every region and the slots are raw bitmaps, so the manifest is cheap to rebuild
+        return null;
+    }
+
+    @Override
+    public void writeManifest(String prefix, byte[] manifest) {
+    }
+
+    @Override
+    public int deletePrefix(String prefix) {
+        Integer ownerId = ownerIds.get(prefix);
+        if (ownerId == null) {
+            return 0;
+        }
+
+        List<Long> keys = new ArrayList<>();
+        for (long key : slots.keySet()) {
+            if ((int) (key >> 32) == ownerId) {
+                keys.add(key);
+            }
+        }
+        for (long key : keys) {
+            freeSlot(slots.remove(key));
+        }
+        return keys.size();
+    }
+
+    @Override
+    public void sync() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Unable to close tile database segment", e);
+            }
+        }
+        segments.clear();
+        channels.clear();
+    }
+
+    /**
+     * @return true if the database holds no region data
+     */
+    boolean isEmpty() {
+        return slots.isEmpty();
+    }
+
+    private void load() throws IOException {
+        Path ownersPath = directory.toPath().resolve(OWNERS_FILE);
+        if (Files.exists(ownersPath)) {
+            for (String line : Files.readAllLines(ownersPath, StandardCharsets.UTF_8)) {
+                ownerIds.put(line, owners.size());
+                owners.add(line);
+            }
+        }
+
+        for (int segmentNumber = 0; segmentFile(segmentNumber).exists(); segmentNumber++) {
+            MappedByteBuffer segment = mapSegment(segmentNumber, false);
+            if (segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION || segment.getInt(8) != SLOTS_PER_SEGMENT) {
+                throw new IOException("Unrecognised tile database segment " + segmentFile(segmentNumber));
+            }
+
+            for (int index = 0; index < SLOTS_PER_SEGMENT; index++) {
+                int entry = INDEX_OFFSET + index * INDEX_ENTRY_SIZE;
+                int ownerId = segment.getInt(entry);
+                int slot = segmentNumber * SLOTS_PER_SEGMENT + index;
+                if (ownerId == FREE || ownerId < 0 || ownerId >= owners.size()) {
+                    freeSlots.add(slot);
+                    continue;
+                }
+                int packed = segment.getInt(entry + 4);
+                slots.put(slotKey(ownerId, packed >> 2, packed & 3), slot);
+            }
+        }
+    }
+
+    private MappedByteBuffer mapSegment(int segmentNumber, boolean create) throws IOException {
+        Path path = segmentFile(segmentNumber).toPath();
+        FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.add(channel);
+        if (!create && channel.size() != SEGMENT_SIZE) {
+            throw new IOException("Tile database segment " + path + " has an unexpected size");
+        }
+
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        segments.add(segment);
+        return segment;
+    }
+
+    private int allocateSlot() {
+        Integer slot = freeSlots.poll();
+        if (slot != null) {
+            return slot;
+        }
+
+        int segmentNumber = segments.size();
+        try {
+            MappedByteBuffer segment = mapSegment(segmentNumber, true);
+            segment.putInt(4, VERSION);
+            segment.putInt(8, SLOTS_PER_SEGMENT);
+            for (int index = 0; index < SLOTS_PER_SEGMENT; index++) {
+                segment.putInt(INDEX_OFFSET + index * INDEX_ENTRY_SIZE, FREE);
+            }
+            // the magic goes in last so a segment interrupted while being created is never mistaken for a valid one
+            segment.putInt(0, MAGIC);
+            segment.force();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to add tile database segment " + segmentNumber, e);
+        }
+
+        for (int index = 1; index < SLOTS_PER_SEGMENT; index++) {
+            freeSlots.add(segmentNumber * SLOTS_PER_SEGMENT + index);
+        }
+        return segmentNumber * SLOTS_PER_SEGMENT;
+    }
+
+    private void freeSlot(int slot) {
+        MappedByteBuffer segment = segments.get(slot / SLOTS_PER_SEGMENT);
+        segment.putInt(INDEX_OFFSET + (slot % SLOTS_PER_SEGMENT) * INDEX_ENTRY_SIZE, FREE);
+        freeSlots.add(slot);
+    }
+
+    private int addOwner(String prefix) {
+        int ownerId = owners.size();
+        owners.add(prefix);
+        ownerIds.put(prefix, ownerId);
+
+        // owners are rarely added, so rewrite the whole list and move it into place atomically
+        try {
+            Path ownersPath = directory.toPath().resolve(OWNERS_FILE);
+            Path temp = directory.toPath().resolve(OWNERS_FILE + ".tmp");
+            Files.write(temp, owners, StandardCharsets.UTF_8);
+            Files.move(temp, ownersPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to save tile database owners", e);
+        }
+        return ownerId;
+    }
+
+    private File segmentFile(int segmentNumber) {
+        return new File(directory, "tiles-" + segmentNumber + ".db");
+    }
+
+    private static int packRegion(int regionId, int plane) {
+        return regionId << 2 | plane;
+    }
+
+    private static long slotKey(int ownerId, int regionId, int plane) {
+        return ((long) ownerId << 32) | (packRegion(regionId, plane) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,94 @@
+package com.tileman;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * The claims around the player drawn once into a small image, one pixel per tile, for the minimap overlay to
+ * transform onto the minimap each frame. Pixel (i, j) is the tile (centerX - maxDistance + i, centerY - maxDistance + j),
+ * so rows run northwards and the transform does any flip, rotation and zoom.
+ *
+ * The image is only redrawn when the player moves to another tile, the plane changes or the claims change, so the
+ * cost per frame doesn't depend on how many tiles are claimed nearby.
+ */
+class TilemanModeMinimapLayer implements TilemanModeSceneIndex.SceneTileVisitor {
+
+    private final int maxDistance;
+    private final int size;
+    private final BufferedImage image;
+    private final int[] pixels;
+
+    // what the image was drawn from
+    private TilemanModeVisibleTiles drawnTiles;
+    private int drawnPlayerVersion = -1;
+    private int drawnGroupVersion = -1;
+    private int drawnPlane = -1;
+    private int drawnCenterX;
+    private int drawnCenterY;
+    private int drawnRgb;
+    private int drawnDistance;
+    private boolean drawnGroupTiles;
+
+    // state of the draw in progress
+    private int originX;
+    private int originY;
+    private int rgb;
+
+    TilemanModeMinimapLayer(int maxDistance) {
+        this.maxDistance = maxDistance;
+        this.size = maxDistance * 2 + 1;
+        this.image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * @param distance how far from the tile to draw claims, at most the layer's max distance
+     * @return the image of the claims within the distance of the tile, redrawn only if anything changed
+     */
+    BufferedImage getImage(TilemanModeVisibleTiles visibleTiles, int plane, int centerX, int centerY, Color tileColor,
+                           int distance, boolean drawGroupTiles) {
+        TilemanModeSceneIndex playerIndex = visibleTiles.getPlayerIndex();
+        TilemanModeSceneIndex groupIndex = visibleTiles.getGroupIndex();
+        if (visibleTiles == drawnTiles && playerIndex.getVersion() == drawnPlayerVersion
+                && groupIndex.getVersion() == drawnGroupVersion && plane == drawnPlane
+                && centerX == drawnCenterX && centerY == drawnCenterY && tileColor.getRGB() == drawnRgb
+                && distance == drawnDistance && drawGroupTiles == drawnGroupTiles) {
+            return image;
+        }
+
+        Arrays.fill(pixels, 0);
+        originX = centerX - maxDistance;
+        originY = centerY - maxDistance;
+        int range = Math.min(distance, maxDistance);
+
+        // draw group tileman data first so that player data overlaps it.
+        if (drawGroupTiles) {
+            rgb = Color.PINK.getRGB();
+            groupIndex.forEachWithin(plane, centerX, centerY, range, this);
+        }
+        rgb = tileColor.getRGB();
+        playerIndex.forEachWithin(plane, centerX, centerY, range, this);
+
+        drawnTiles = visibleTiles;
+        drawnPlayerVersion = playerIndex.getVersion();
+        drawnGroupVersion = groupIndex.getVersion();
+        drawnPlane = plane;
+        drawnCenterX = centerX;
+        drawnCenterY = centerY;
+        drawnRgb = tileColor.getRGB();
+        drawnDistance = distance;
+        drawnGroupTiles = drawGroupTiles;
+        return image;
+    }
+
+    @Override
+    public void visit(int sceneX, int sceneY) {
+        pixels[(sceneY - originY) * size + (sceneX - originX)] = rgb;
+    }
+}
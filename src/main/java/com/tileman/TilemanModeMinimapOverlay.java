@@ -25,32 +25,44 @@
  */
 package com.tileman;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import net.runelite.api.Client;
 import net.runelite.api.Perspective;
 import net.runelite.api.Point;
 import net.runelite.api.coords.LocalPoint;
-import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.ui.overlay.*;
 
 import javax.inject.Inject;
 import java.awt.*;
-import java.util.Collection;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 class TilemanModeMinimapOverlay extends Overlay
 {
 	private static final int MAX_DRAW_DISTANCE = 16;
-	private static final int TILE_WIDTH = 4;
-	private static final int TILE_HEIGHT = 4;
+	private static final int REDUCED_DRAW_DISTANCE = 8;
+	// tiles either side of the player the minimap transform is measured at, far apart to keep rounding small
+	private static final int TRANSFORM_SPAN = MAX_DRAW_DISTANCE - 1;
 
 	private final Client client;
-	private final TilemanModeConfig config;
 	private final TilemanModePlugin plugin;
+	private final TilemanModeMinimapLayer layer = new TilemanModeMinimapLayer(MAX_DRAW_DISTANCE - 1);
+	private final AffineTransform transform = new AffineTransform();
+	// the tiles either side of the player's tile that the transform is measured at, made again when the player moves
+	private LocalPoint westPoint;
+	private LocalPoint eastPoint;
+	private LocalPoint southPoint;
+	private LocalPoint northPoint;
+	private int pointsSceneX = -1;
+	private int pointsSceneY = -1;
+	@Getter(AccessLevel.PACKAGE)
+	private final TilemanModeFrameGovernor governor = new TilemanModeFrameGovernor(TilemanModeFrameGovernor.Level.NO_GROUP_TILES);
 
 	@Inject
-	private TilemanModeMinimapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin)
+	private TilemanModeMinimapOverlay(Client client, TilemanModePlugin plugin)
 	{
 		this.client = client;
-		this.config = config;
 		this.plugin = plugin;
 		setPosition(OverlayPosition.DYNAMIC);
 		setPriority(Overlay.PRIORITY_LOW);
@@ -60,71 +72,72 @@ class TilemanModeMinimapOverlay extends Overlay
 	@Override
 	public Dimension render(Graphics2D graphics)
 	{
-		if (!config.drawTilesOnMinimap())
+		final TilemanModeRenderSnapshot snapshot = plugin.getRenderSnapshot();
+		if (!snapshot.isDrawOnMinimap() || !snapshot.isPlayerInScene())
 		{
 			return null;
 		}
 
-		// draw group tileman data first so that player data overlaps it.
-		final Collection<WorldPoint> groupPoints = plugin.getGroupTilesToRender();
-		for (final WorldPoint point : groupPoints)
-		{
-			WorldPoint worldPoint = point;
-			if (worldPoint.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-
-			drawOnMinimap(graphics, worldPoint, Color.PINK);
-		}
-
-		final Collection<WorldPoint> points = plugin.getTilesToRender();
-		for (final WorldPoint point : points)
-		{
-			WorldPoint worldPoint = point;
-			if (worldPoint.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-
-			drawOnMinimap(graphics, worldPoint, getTileColor());
-		}
+		final long startNanos = System.nanoTime();
+		drawLayer(graphics, snapshot, governor.getLevel());
+		governor.record(System.nanoTime() - startNanos, snapshot.getFrameBudgetNanos());
 
 		return null;
 	}
 
-	private void drawOnMinimap(Graphics2D graphics, WorldPoint point, Color color)
+	private void drawLayer(Graphics2D graphics, TilemanModeRenderSnapshot snapshot, TilemanModeFrameGovernor.Level level)
 	{
-		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
+		final int playerSceneX = snapshot.getPlayerSceneX();
+		final int playerSceneY = snapshot.getPlayerSceneY();
 
-		if (point.distanceTo(playerLocation) >= MAX_DRAW_DISTANCE)
-		{
-			return;
-		}
+		// when over the frame budget, draw closer to the player, then leave out group tiles
+		final int distance = (level == TilemanModeFrameGovernor.Level.FULL ? MAX_DRAW_DISTANCE : REDUCED_DRAW_DISTANCE) - 1;
+		final boolean drawGroupTiles = level.compareTo(TilemanModeFrameGovernor.Level.NO_GROUP_TILES) < 0;
 
-		LocalPoint lp = LocalPoint.fromWorld(client, point);
-		if (lp == null)
+		// the claims around the player's tile are only redrawn into the layer when they or the tile change
+		final BufferedImage image = layer.getImage(plugin.getVisibleTiles(), snapshot.getPlane(),
+			playerSceneX, playerSceneY, snapshot.getTileColor(), distance, drawGroupTiles);
+
+		// measure where the minimap currently puts the tiles either side of the player's tile. This carries the
+		// minimap's rotation, zoom and the player's movement between tiles into the transform.
+		if (playerSceneX != pointsSceneX || playerSceneY != pointsSceneY)
 		{
-			return;
+			westPoint = toLocal(playerSceneX - TRANSFORM_SPAN, playerSceneY);
+			eastPoint = toLocal(playerSceneX + TRANSFORM_SPAN, playerSceneY);
+			southPoint = toLocal(playerSceneX, playerSceneY - TRANSFORM_SPAN);
+			northPoint = toLocal(playerSceneX, playerSceneY + TRANSFORM_SPAN);
+			pointsSceneX = playerSceneX;
+			pointsSceneY = playerSceneY;
 		}
-
-		Point posOnMinimap = Perspective.localToMinimap(client, lp);
-		if (posOnMinimap == null)
+		final Point west = Perspective.localToMinimap(client, westPoint);
+		final Point east = Perspective.localToMinimap(client, eastPoint);
+		final Point south = Perspective.localToMinimap(client, southPoint);
+		final Point north = Perspective.localToMinimap(client, northPoint);
+		if (west == null || east == null || south == null || north == null)
 		{
 			return;
 		}
 
-		OverlayUtil.renderMinimapRect(client, graphics, posOnMinimap, TILE_WIDTH, TILE_HEIGHT, color);
+		final double eastX = (east.getX() - west.getX()) / (2.0 * TRANSFORM_SPAN);
+		final double eastY = (east.getY() - west.getY()) / (2.0 * TRANSFORM_SPAN);
+		final double northX = (north.getX() - south.getX()) / (2.0 * TRANSFORM_SPAN);
+		final double northY = (north.getY() - south.getY()) / (2.0 * TRANSFORM_SPAN);
+		final double originX = (west.getX() + east.getX() + south.getX() + north.getX()) / 4.0;
+		final double originY = (west.getY() + east.getY() + south.getY() + north.getY()) / 4.0;
+
+		// the centre of the player's tile is the centre of the layer's middle pixel
+		final double center = layer.getMaxDistance() + 0.5;
+		transform.setTransform(eastX, eastY, northX, northY,
+			originX - center * (eastX + northX),
+			originY - center * (eastY + northY));
+		graphics.drawImage(image, transform, null);
 	}
 
-	private Color getTileColor() {
-		if(config.enableTileWarnings()) {
-			if (plugin.getRemainingTiles() <= 0) {
-				return Color.RED;
-			} else if (plugin.getRemainingTiles() <= config.warningLimit()) {
-				return new Color(255, 153, 0);
-			}
-		}
-		return config.markerColor();
+	private static LocalPoint toLocal(int sceneX, int sceneY)
+	{
+		// centre of the scene tile in local coordinates
+		return new LocalPoint(
+			(sceneX << Perspective.LOCAL_COORD_BITS) + Perspective.LOCAL_HALF_TILE_SIZE,
+			(sceneY << Perspective.LOCAL_COORD_BITS) + Perspective.LOCAL_HALF_TILE_SIZE);
 	}
 }
@@ -26,32 +26,46 @@
  */
 package com.tileman;
 
+import lombok.AccessLevel;
+import lombok.Getter;
 import net.runelite.api.Client;
-import net.runelite.api.Perspective;
-import net.runelite.api.coords.LocalPoint;
-import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.ui.overlay.*;
 
 import javax.inject.Inject;
 import java.awt.*;
-import java.util.Collection;
 
-public class TilemanModeOverlay extends Overlay
+public class TilemanModeOverlay extends Overlay implements TilemanModeSceneIndex.SceneTileVisitor
 {
 	private static final int MAX_DRAW_DISTANCE = 32;
+	private static final int REDUCED_DRAW_DISTANCE = 16;
+	// the outline OverlayUtil.renderPolygon draws with, kept here so a frame doesn't create one for every tile
+	private static final Stroke STROKE = new BasicStroke(2);
+	private static final int FILL_ALPHA = 50;
+	private static final Color GROUP_FILL_COLOR = fillColor(Color.PINK);
 
 	private final Client client;
 	private final TilemanModePlugin plugin;
+	private final TilemanModeContourRenderer groupContours = new TilemanModeContourRenderer();
+	private final TilemanModeContourRenderer playerContours = new TilemanModeContourRenderer();
+	private final TilemanModeSceneProjection projection = new TilemanModeSceneProjection();
+	// reused for every tile, its corners are overwritten before each draw
+	private final Polygon tilePoly = new Polygon(new int[4], new int[4], 4);
+	@Getter(AccessLevel.PACKAGE)
+	private final TilemanModeFrameGovernor governor = new TilemanModeFrameGovernor(TilemanModeFrameGovernor.Level.OUTLINES_ONLY);
+
+	// target of the scene walk in progress, so the walk needs no capturing lambda per frame
+	private Graphics2D tileGraphics;
+	private Color tileColor;
+	private Color tileFillColor;
+	// fill for the player's tile colour, made again only when the colour changes
+	private Color playerFillColor = GROUP_FILL_COLOR;
+	private Color playerFillSource = Color.PINK;
 
 	@Inject
-	private TilemanModeConfig config;
-
-	@Inject
-	private TilemanModeOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin)
+	private TilemanModeOverlay(Client client, TilemanModePlugin plugin)
 	{
 		this.client = client;
 		this.plugin = plugin;
-		this.config = config;
 		setPosition(OverlayPosition.DYNAMIC);
 		setPriority(Overlay.PRIORITY_LOW);
 		setLayer(OverlayLayer.ABOVE_SCENE);
@@ -60,94 +74,112 @@ public class TilemanModeOverlay extends Overlay
 	@Override
 	public Dimension render(Graphics2D graphics)
 	{
-		// If players plane changes (or has never been set) refresh the tile list to render
-		// We trigger it here in the render thread to avoid a ConcurrentModificationException of the tilesToRender collection.
-		if (plugin.lastPlane != client.getPlane()){
-			plugin.updateTilesToRender();
-			plugin.lastPlane = client.getPlane();
-		}
-
-		// draw group tileman data first so that player centric rendering draws on top of them
-		final Collection<WorldPoint> groupPoints = plugin.getGroupTilesToRender();
-		for (final WorldPoint point : groupPoints)
+		// everything drawn here comes from the snapshot published on the last game tick
+		final TilemanModeRenderSnapshot snapshot = plugin.getRenderSnapshot();
+		if (!snapshot.isPlayerInScene())
 		{
-			if (point.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-			temporaryDrawImportedTile(graphics, point);
+			return null;
 		}
 
-		// draw player tiles
-		final Collection<WorldPoint> points = plugin.getTilesToRender();
-		for (final WorldPoint point : points)
-		{
-			if (point.getPlane() != client.getPlane())
-			{
-				continue;
-			}
-
-			drawTile(graphics, point);
-		}
+		final long startNanos = System.nanoTime();
+		final Stroke originalStroke = graphics.getStroke();
+		graphics.setStroke(STROKE);
+		drawTiles(graphics, snapshot, governor.getLevel());
+		graphics.setStroke(originalStroke);
+		governor.record(System.nanoTime() - startNanos, snapshot.getFrameBudgetNanos());
 
 		return null;
 	}
 
-	private void temporaryDrawImportedTile(Graphics2D graphics, WorldPoint point)
+	private void drawTiles(Graphics2D graphics, TilemanModeRenderSnapshot snapshot, TilemanModeFrameGovernor.Level level)
 	{
-		// This method is temporary to avoid touching the changed rendering logic in drawTile when
-		// integrating with the wayfinding code.
-
-		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
-		if (point.distanceTo(playerLocation) >= MAX_DRAW_DISTANCE)
+		// a rebuild may publish new tiles between frames, so take them once for the whole frame
+		final TilemanModeVisibleTiles visibleTiles = plugin.getVisibleTiles();
+		final int plane = snapshot.getPlane();
+		final int playerSceneX = snapshot.getPlayerSceneX();
+		final int playerSceneY = snapshot.getPlayerSceneY();
+
+		// when over the frame budget, draw closer to the player, then leave out group tiles, then only outline areas
+		final int distance = (level == TilemanModeFrameGovernor.Level.FULL ? MAX_DRAW_DISTANCE : REDUCED_DRAW_DISTANCE) - 1;
+		final boolean drawGroupTiles = level.compareTo(TilemanModeFrameGovernor.Level.NO_GROUP_TILES) < 0;
+		projection.update(client, plane, visibleTiles, visibleTiles.getPlayerIndex().getVersion());
+
+		if (snapshot.getRenderMode() == TilemanModeConfig.TilemanRenderMode.CONTOURS
+			|| level == TilemanModeFrameGovernor.Level.OUTLINES_ONLY)
 		{
+			// group areas first so the player's own outlines are drawn on top of them
+			if (drawGroupTiles)
+			{
+				groupContours.render(graphics, projection, visibleTiles.getGroupIndex(), plane, playerSceneX, playerSceneY,
+					distance, Color.PINK);
+			}
+			playerContours.render(graphics, projection, visibleTiles.getPlayerIndex(), plane, playerSceneX, playerSceneY,
+				distance, snapshot.getTileColor());
 			return;
 		}
-		LocalPoint lp = LocalPoint.fromWorld(client, point);
-		if (lp == null)
+
+		tileGraphics = graphics;
+
+		// draw group tileman data first so that player centric rendering draws on top of them
+		if (drawGroupTiles)
 		{
-			return;
+			tileColor = Color.PINK;
+			tileFillColor = GROUP_FILL_COLOR;
+			visibleTiles.getGroupIndex().forEachWithin(plane, playerSceneX, playerSceneY, distance, this);
 		}
-		Polygon poly = Perspective.getCanvasTilePoly(client, lp);
-		if (poly == null)
+
+		// draw player tiles
+		tileColor = snapshot.getTileColor();
+		if (!tileColor.equals(playerFillSource))
 		{
-			return;
+			playerFillColor = fillColor(tileColor);
+			playerFillSource = tileColor;
 		}
-		OverlayUtil.renderPolygon(graphics, poly, Color.PINK);
+		tileFillColor = playerFillColor;
+		visibleTiles.getPlayerIndex().forEachWithin(plane, playerSceneX, playerSceneY, distance, this);
+
+		tileGraphics = null;
 	}
 
-	private void drawTile(Graphics2D graphics, WorldPoint point)
+	@Override
+	public void visit(int sceneX, int sceneY)
 	{
-		WorldPoint playerLocation = client.getLocalPlayer().getWorldLocation();
-
-		if (point.distanceTo(playerLocation) >= MAX_DRAW_DISTANCE)
+		// the tile's corners, anticlockwise from its south west corner
+		final int southWest = TilemanModeSceneProjection.vertex(sceneX, sceneY);
+		final int southEast = southWest + 1;
+		final int northEast = southEast + TilemanModeSceneProjection.VERTICES_PER_SIDE;
+		final int northWest = southWest + TilemanModeSceneProjection.VERTICES_PER_SIDE;
+
+		// a tile with a corner behind the camera is skipped rather than drawn distorted
+		if (!projection.project(southWest) || !projection.project(southEast)
+			|| !projection.project(northEast) || !projection.project(northWest))
 		{
 			return;
 		}
 
-		LocalPoint lp = LocalPoint.fromWorld(client, point);
-		if (lp == null)
-		{
-			return;
-		}
+		setCorner(0, southWest);
+		setCorner(1, southEast);
+		setCorner(2, northEast);
+		setCorner(3, northWest);
+		tilePoly.invalidate();
 
-		Polygon poly = Perspective.getCanvasTilePoly(client, lp);
-		if (poly == null)
-		{
-			return;
-		}
+		tileGraphics.setColor(tileColor);
+		tileGraphics.draw(tilePoly);
+		tileGraphics.setColor(tileFillColor);
+		tileGraphics.fill(tilePoly);
+	}
 
-		OverlayUtil.renderPolygon(graphics, poly, getTileColor());
+	/**
+	 * The fill for tiles outlined in the colour, a faint wash of the same colour that keeps the outline's transparency.
+	 */
+	static Color fillColor(Color color)
+	{
+		return new Color(color.getRed(), color.getGreen(), color.getBlue(), FILL_ALPHA * color.getAlpha() / 255);
 	}
 
-	private Color getTileColor() {
-		if(config.enableTileWarnings()) {
-			if (plugin.getRemainingTiles() <= 0) {
-				return Color.RED;
-			} else if (plugin.getRemainingTiles() <= config.warningLimit()) {
-				return new Color(255, 153, 0);
-			}
-		}
-		return config.markerColor();
+	private void setCorner(int corner, int vertex)
+	{
+		tilePoly.xpoints[corner] = projection.getX(vertex);
+		tilePoly.ypoints[corner] = projection.getY(vertex);
 	}
 }
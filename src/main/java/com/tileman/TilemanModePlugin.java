@@ -27,6 +27,7 @@
 package com.tileman;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.inject.Provides;
@@ -41,8 +42,11 @@ import net.runelite.api.events.*;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.events.ConfigChanged;
+import net.runelite.client.events.ProfileChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
+import net.runelite.client.RuneLite;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.ui.overlay.OverlayManager;
@@ -52,10 +56,22 @@ import net.runelite.client.chat.QueuedMessage;
 import net.runelite.client.game.chatbox.ChatboxPanelManager;
 
 import javax.inject.Inject;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -70,8 +86,27 @@ public class TilemanModePlugin extends Plugin {
     public static final String CONFIG_GROUP = "tilemanMode";
     public static final String LEGACY_GROUP_TILEMAN_CONFIG_GROUP = "groupTilemanAddon";
     public static final String REGION_PREFIX_IMPORTED = "imported_";
+    public static final String REGION_PREFIX_V3 = "regionv3_";
     public static final String REGION_PREFIX_V2 = "regionv2_";
     public static final String REGION_PREFIX_V1 = "region_";
+    public static final String MANIFEST_PREFIX = "manifest_";
+    private static final String TILE_DATABASE_ID_KEY = "tileDatabaseId";
+    // the computer the tile database is on, the config syncs between computers but the database stays on this one
+    private static final String TILE_DATABASE_MACHINE_KEY = "tileDatabaseMachine";
+    private static final String CLAIM_JOURNAL_ID_KEY = "claimJournalId";
+    // group sync state: when the player's region planes changed, the version last exported, and per imported tile
+    // set the "<historyId>:<version>" held
+    static final String SYNC_KEY_PREFIX = "sync";
+    static final String SYNC_VERSIONS_KEY = "syncVersions";
+    static final String SYNC_EXPORTED_VERSION_KEY = "syncExportedVersion";
+    static final String SYNC_IMPORTED_VERSION_PREFIX = "syncImported_";
+    // + group + "_" + tile set name, the last relay batch a member received, to resume live sync from
+    static final String SYNC_RELAY_SEQUENCE_PREFIX = "syncRelaySequence_";
+    private static final int CLAIM_JOURNAL_COMPACT_RECORDS = 1024;
+    private static final Color WARNING_COLOR = new Color(255, 153, 0);
+    private static final File TILE_DATABASE_ROOT = new File(RuneLite.RUNELITE_DIR, "tileman-mode");
+    // holds this computer's id, made the first time a tile database is created
+    private static final File MACHINE_ID_FILE = new File(TILE_DATABASE_ROOT, "machine-id");
 
     // Constants for menu option strings that the plugin utilises
     private static final String MARK = "Unlock Tileman tile";
@@ -79,12 +114,51 @@ public class TilemanModePlugin extends Plugin {
     private static final String WALK_HERE = "Walk here";
 
     private GroupTilemanDataManager groupTilemanDataManager;
+    // null unless a shared folder is configured
+    private TilemanModeFolderSync folderSync;
+    // null unless a sync relay is configured and the player has logged in
+    private TilemanModeLiveSync liveSync;
+    // set when the configured relay address can't be used, until the config changes
+    private boolean liveSyncMisconfigured;
+
+    // swapped on the client thread, read by the data migrator to check it still writes to the current store
+    @Getter(AccessLevel.PACKAGE)
+    private volatile TilemanModeTileStore tileStore;
+
+    // set while the profile's tiles can't be loaded on this computer. The tile store is then empty and the plugin
+    // claims, saves, migrates and syncs nothing, so neither the config nor the tile database is changed.
+    @Getter(AccessLevel.PACKAGE)
+    private volatile boolean tilesUnavailable;
 
+    // every imported group tile set merged, rebuilt with the tile store and updated as tile sets are imported or deleted
     @Getter(AccessLevel.PACKAGE)
-    private final List<WorldPoint> tilesToRender = new ArrayList<>();
+    private volatile TilemanModeGroupIndex groupIndex;
 
     @Getter(AccessLevel.PACKAGE)
-    private final Set<WorldPoint> groupTilesToRender = new HashSet<>();
+    private TilemanModeSyncVersions syncVersions;
+
+    private TilemanModeClaimJournal claimJournal;
+    private TilemanModeDataMigrator dataMigrator;
+    private final AtomicBoolean claimJournalCompacting = new AtomicBoolean();
+
+    // claimed tiles over the loaded scene as drawn. Builds run on sceneExecutor into the spare, which is swapped in
+    // whole on the client thread, so neither thread ever sees a half built scene.
+    @Getter(AccessLevel.PACKAGE)
+    private volatile TilemanModeVisibleTiles visibleTiles = new TilemanModeVisibleTiles();
+    private TilemanModeVisibleTiles spareVisibleTiles = new TilemanModeVisibleTiles();
+    private ExecutorService sceneExecutor;
+    // bumped for every build requested, only the latest request's build is published
+    private int visibleTilesGeneration = 0;
+    private int publishedVisibleTilesGeneration = 0;
+    // set while a rebuild asked for off the client thread is waiting to run there
+    private final AtomicBoolean tilesToRenderRequested = new AtomicBoolean();
+    // claims made while a build is pending, (plane << 17 | sceneX << 9 | sceneY << 1 | claimed). The build may have
+    // read their regions before they changed, so they are replayed onto it when it is published.
+    private final List<Integer> pendingSceneClaims = new ArrayList<>();
+
+    // replaced, never mutated, once per game tick. The overlays draw from whichever snapshot is current.
+    @Getter(AccessLevel.PACKAGE)
+    private volatile TilemanModeRenderSnapshot renderSnapshot = TilemanModeRenderSnapshot.EMPTY;
 
     @Inject
     private Client client;
@@ -119,6 +193,12 @@ public class TilemanModePlugin extends Plugin {
     @Inject
     private ChatMessageManager chatMessageManager;
 
+    @Inject
+    private ScheduledExecutorService executor;
+
+    @Inject
+    private ClientThread clientThread;
+
     @Inject
     private ChatboxPanelManager chatboxPanelManager;
 
@@ -154,11 +234,12 @@ public class TilemanModePlugin extends Plugin {
     private boolean inHouse = false;
     private long totalXp;
     private boolean dataMigrationInProgress = false;
+    private int ticksSinceTileSave = 0;
 
     @Subscribe
     public void onMenuOptionClicked(MenuOptionClicked event) {
 
-        if (event.getMenuAction().getId() != MenuAction.RUNELITE.getId() ||
+        if (tilesUnavailable || event.getMenuAction().getId() != MenuAction.RUNELITE.getId() ||
                 !(event.getMenuOption().equals(MARK) || event.getMenuOption().equals(UNMARK))) {
             return;
         }
@@ -172,6 +253,10 @@ public class TilemanModePlugin extends Plugin {
 
     @Subscribe
     public void onMenuEntryAdded(MenuEntryAdded event) {
+        if (tilesUnavailable) {
+            return;
+        }
+
         final boolean hotKeyPressed = client.isKeyPressed(KeyCode.KC_SHIFT);
         if (hotKeyPressed && event.getOption().equals(WALK_HERE)) {
             final Tile selectedSceneTile = client.getSelectedSceneTile();
@@ -180,14 +265,16 @@ public class TilemanModePlugin extends Plugin {
                 return;
             }
 
-            final WorldPoint worldPoint = WorldPoint.fromLocalInstance(client, selectedSceneTile.getLocalLocation());
-
-            if (worldPoint.getPlane() != client.getPlane()) {
+            final int plane = client.getPlane();
+            if (selectedSceneTile.getPlane() != plane) {
                 return;
             }
 
+            final LocalPoint localPoint = selectedSceneTile.getLocalLocation();
+            final boolean claimed = visibleTiles.getPlayerIndex().contains(plane, localPoint.getSceneX(), localPoint.getSceneY());
+
             client.createMenuEntry(-1)
-                .setOption(tilesToRender.contains(worldPoint) ? UNMARK : MARK)
+                .setOption(claimed ? UNMARK : MARK)
                 .setTarget(event.getTarget())
                 .setType(MenuAction.RUNELITE);
         }
@@ -195,38 +282,176 @@ public class TilemanModePlugin extends Plugin {
 
     @Subscribe
     public void onGameTick(GameTick tick) {
+        // nothing is claimed or saved until the profile's tiles can be loaded
+        if (tilesUnavailable) {
+            return;
+        }
+
+        // every plane of the scene is already built, so a plane change only changes which one the overlays draw
+        lastPlane = client.getPlane();
+
         autoMark();
+
+        // claims are held in the tile store and written to the config at most once per save interval
+        if (++ticksSinceTileSave >= config.saveInterval()) {
+            tileStore.flush();
+            saveSyncVersions();
+            ticksSinceTileSave = 0;
+
+            if (folderSync != null && client.getLocalPlayer() != null) {
+                TilemanModeSyncVersions versions = syncVersions;
+                String playerName = getPlayerName();
+                folderSync.tileSetChanged(playerName, versions.getHistoryId(), versions.getVersion(),
+                        () -> TilemanModeTileSetCodec.encode(playerName, versions.getHistoryId(), 0, versions.getVersion(), readPlayerRegions()));
+            }
+
+            if (claimJournal != null && claimJournal.size() >= CLAIM_JOURNAL_COMPACT_RECORDS * TilemanModeClaimJournal.RECORD_SIZE) {
+                compactClaimJournal();
+            }
+        }
+
+        updateLiveSync();
+
+        publishRenderSnapshot();
     }
 
     @Subscribe
     public void onGameStateChanged(GameStateChanged gameStateChanged) {
+        if (tilesUnavailable) {
+            return;
+        }
 
         // Guard against doing anything until the player is actually logged in
         if (gameStateChanged.getGameState() != GameState.LOGGED_IN) {
             lastTile = null;
+            // make sure nothing claimed this session is left unsaved when logging out or hopping
+            tileStore.flush();
+            saveSyncVersions();
+            compactClaimJournal();
             return;
         }
 
-        updateTileCountFromConfigs();
+        // the tile counter is kept up to date incrementally, so only the visible tiles need refreshing here
         updateTilesToRender();
         inHouse = false;
     }
 
     @Subscribe
     public void onConfigChanged(ConfigChanged event) {
-        // exit early if change made is during an automatic data migration
-        if (dataMigrationInProgress){
+        // exit early if change made is during an automatic data migration, or belongs to another plugin
+        if (dataMigrationInProgress || !CONFIG_GROUP.equals(event.getGroup())){
+            return;
+        }
+
+        // another computer moving the tiles out of or back into its tile database changes where they are too
+        if ("useTileDatabase".equals(event.getKey()) || TILE_DATABASE_ID_KEY.equals(event.getKey())) {
+            replaceTileStore(true);
+            return;
+        }
+
+        if ("groupSyncFolder".equals(event.getKey())) {
+            stopFolderSync();
+            startFolderSync();
+            return;
+        }
+
+        if ("groupSyncServer".equals(event.getKey()) || "groupSyncGroup".equals(event.getKey())) {
+            // reconnects on the next tick
+            stopLiveSync();
+            liveSyncMisconfigured = false;
+            return;
+        }
+
+        if (tilesUnavailable) {
+            return;
+        }
+
+        // manifests follow the region keys, which are handled below, the migrator reports its own progress and sync
+        // state only matters when exporting or importing
+        if (event.getKey() != null && (event.getKey().startsWith(MANIFEST_PREFIX) || event.getKey().startsWith(SYNC_KEY_PREFIX)
+                || TilemanModeDataMigrator.isMigrationKey(event.getKey()))) {
+            return;
+        }
+
+        if (isTileDataKey(event.getKey())) {
+            // our own flushes already adjusted the counter as each tile was claimed.
+            // With the tile database in use the config holds no tiles, so there is nothing to refresh either.
+            if (tileStore.isPersisting() || !(tileStore.getStorage() instanceof TilemanModeConfigTileStorage)) {
+                return;
+            }
+
+            // anything else changing tile data (e.g. a profile sync) means the cached copy is stale
+            log.debug("TileManMode external tile data change: {}", event.getKey());
+            evictTileDataKey(event.getKey());
+            if (event.getKey().startsWith(REGION_PREFIX_V3)) {
+                updateTileCountFromConfigs();
+            }
+            updateTilesToRender();
             return;
         }
 
         // Check if automark tiles is on, and if so attempt to step on current tile
-        final WorldPoint playerPos = client.getLocalPlayer().getWorldLocation();
-        final LocalPoint playerPosLocal = LocalPoint.fromWorld(client, playerPos);
-        if (playerPosLocal != null && config.automarkTiles() && !lastAutoTilesConfig) {
-            handleWalkedToTile(playerPosLocal);
+        if (client.getLocalPlayer() != null) {
+            final WorldPoint playerPos = client.getLocalPlayer().getWorldLocation();
+            final LocalPoint playerPosLocal = LocalPoint.fromWorld(client, playerPos);
+            if (playerPosLocal != null && config.automarkTiles() && !lastAutoTilesConfig) {
+                handleWalkedToTile(playerPosLocal);
+            }
         }
         lastAutoTilesConfig = config.automarkTiles();
-        updateTileCountFromConfigs();
+
+        // settings such as the game mode change how many tiles are earned, not how many are used
+        updateRemainingTiles();
+        publishRenderSnapshot();
+    }
+
+    private static boolean isTileDataKey(String key) {
+        return key != null && (key.startsWith(REGION_PREFIX_V3) || key.startsWith(REGION_PREFIX_IMPORTED));
+    }
+
+    private void evictTileDataKey(String key) {
+        if (key.startsWith(REGION_PREFIX_IMPORTED)) {
+            // imported keys are imported_<tileSetName>_<regionId>_<plane>, only that region plane is re-read
+            String tileSetKey = key.substring(REGION_PREFIX_IMPORTED.length());
+            int underscoreIndex = tileSetKey.indexOf('_');
+            if (underscoreIndex <= 0) {
+                return;
+            }
+            String tileSetName = tileSetKey.substring(0, underscoreIndex);
+            String prefix = getImportedTileSetPrefix(tileSetName);
+            String regionKey = tileSetKey.substring(underscoreIndex + 1);
+            int planeIndex = regionKey.lastIndexOf('_');
+            try {
+                int regionId = Integer.parseInt(regionKey.substring(0, planeIndex));
+                int plane = Integer.parseInt(regionKey.substring(planeIndex + 1));
+                tileStore.evictRegion(prefix, regionId, plane);
+                groupIndex.putMemberRegion(tileSetName, regionId, plane, tileStore.getRegion(prefix, regionId, plane));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                log.debug("Unable to parse tile data key {}, reloading tile set {}", key, tileSetName, e);
+                tileStore.evict(prefix);
+                groupIndex.addMember(tileSetName);
+            }
+            return;
+        }
+
+        // player keys are regionv3_<regionId>_<plane>
+        String regionKey = key.substring(REGION_PREFIX_V3.length());
+        int underscoreIndex = regionKey.lastIndexOf('_');
+        try {
+            int regionId = Integer.parseInt(regionKey.substring(0, underscoreIndex));
+            int plane = Integer.parseInt(regionKey.substring(underscoreIndex + 1));
+            tileStore.evictRegion(REGION_PREFIX_V3, regionId, plane);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            log.debug("Unable to parse tile data key {}, dropping all cached player tiles", key, e);
+            tileStore.evict(REGION_PREFIX_V3);
+        }
+    }
+
+    @Subscribe
+    public void onProfileChanged(ProfileChanged event) {
+        // every cached region belongs to the previous profile, so start again from the new profile's config.
+        // Unsaved claims are dropped rather than flushed, as flushing now would write them into the new profile.
+        replaceTileStore(false);
     }
 
     @Subscribe
@@ -243,7 +468,15 @@ public class TilemanModePlugin extends Plugin {
 
         log.debug("TileManMode Startup - Start");
 
-        performConfigVersionMigrations();
+        tileStore = createTileStore();
+        groupIndex = TilemanModeGroupIndex.load(tileStore);
+        loadSyncVersions();
+        sceneExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("tileman-scene-%d")
+                .setDaemon(true)
+                .build());
+        openClaimJournal();
+        startDataMigration();
 
         tutorialIslandRegionIds.add(12079);
         tutorialIslandRegionIds.add(12080);
@@ -259,7 +492,7 @@ public class TilemanModePlugin extends Plugin {
         updateTileCountFromConfigs();
         updateTilesToRender();
 
-        groupTilemanDataManager = new GroupTilemanDataManager(this, configManager, gson);
+        groupTilemanDataManager = new GroupTilemanDataManager(this, configManager, gson, executor);
         NavigationButton navButton = NavigationButton.builder()
                 .tooltip("Group Tileman Data")
                 .icon(ImageUtil.getResourceStreamFromClass(getClass(), "/icon.png"))
@@ -271,17 +504,486 @@ public class TilemanModePlugin extends Plugin {
 
         // check if legacy group tileman data is found
         groupTilemanDataManager.generateLegacyGroupTilemanPluginWarning();
+        startFolderSync();
+        publishRenderSnapshot();
     }
 
     @Override
     protected void shutDown() {
+        stopFolderSync();
+        stopLiveSync();
         tutorialIslandRegionIds.clear();
         overlayManager.remove(overlay);
         overlayManager.remove(minimapOverlay);
         overlayManager.remove(worldMapOverlay);
         overlayManager.remove(infoOverlay);
-        tilesToRender.clear();
-        groupTilesToRender.clear();
+        // drop any build still running or waiting to be published
+        sceneExecutor.shutdownNow();
+        visibleTilesGeneration++;
+        pendingSceneClaims.clear();
+        visibleTiles = new TilemanModeVisibleTiles();
+        spareVisibleTiles = new TilemanModeVisibleTiles();
+        renderSnapshot = TilemanModeRenderSnapshot.EMPTY;
+        stopDataMigration();
+        saveSyncVersions();
+        tileStore.close();
+        closeClaimJournal(true);
+    }
+
+    /**
+     * Swaps the tile store for one on the storage the current profile's config asks for.
+     *
+     * @param keepUnsaved whether claims not yet saved are written to the old storage before it is closed
+     */
+    private void replaceTileStore(boolean keepUnsaved) {
+        stopDataMigration();
+        if (keepUnsaved) {
+            saveSyncVersions();
+        } else {
+            tileStore.evictAll();
+        }
+        tileStore.close();
+        // unsaved claims stay in the old journal, to be replayed next time its profile is loaded
+        closeClaimJournal(keepUnsaved);
+
+        tileStore = createTileStore();
+        groupIndex = TilemanModeGroupIndex.load(tileStore);
+        loadSyncVersions();
+        openClaimJournal();
+        startDataMigration();
+        if (tilesUnavailable) {
+            stopFolderSync();
+            stopLiveSync();
+            // stop drawing the previous profile's tiles
+            renderSnapshot = TilemanModeRenderSnapshot.EMPTY;
+        } else if (folderSync == null) {
+            startFolderSync();
+        }
+        updateTileCountFromConfigs();
+        updateTilesToRender();
+    }
+
+    private TilemanModeTileStore createTileStore() {
+        TilemanModeTileStorage storage = createTileStorage();
+        tilesUnavailable = storage == null;
+        return new TilemanModeTileStore(tilesUnavailable ? new TilemanModeUnavailableTileStorage() : storage);
+    }
+
+    /**
+     * Picks the storage backend for the tile store. Tiles are kept in the RuneLite config unless the tile database is
+     * enabled, in which case they are moved into a database directory on this computer. The profile records which
+     * database and computer hold them, as the config syncs to other computers but the database doesn't. Turning the
+     * database off moves them back.
+     *
+     * Once moved out of the config, tiles are only ever read from their database. If it is on another computer,
+     * missing or can't be read, the player is told and nothing is loaded, created or changed.
+     *
+     * @return the storage, or null if the profile's tiles can't be loaded on this computer
+     */
+    private TilemanModeTileStorage createTileStorage() {
+        TilemanModeConfigTileStorage configStorage = new TilemanModeConfigTileStorage(configManager);
+        String databaseId = configManager.getConfiguration(CONFIG_GROUP, TILE_DATABASE_ID_KEY);
+        if (Strings.isNullOrEmpty(databaseId)) {
+            return config.useTileDatabase() ? createTileDatabase(configStorage) : configStorage;
+        }
+
+        String databaseMachine = configManager.getConfiguration(CONFIG_GROUP, TILE_DATABASE_MACHINE_KEY);
+        if (databaseMachine != null && !databaseMachine.equals(getMachineId())) {
+            log.warn("TileManMode tiles are in the tile database {} on another computer {}", databaseId, databaseMachine);
+            sendChatMessage("Your claimed tiles are in the tile database of another computer. Turn off "
+                    + "\"Use local tile database\" and start RuneLite on that computer to move them back into your "
+                    + "profile. Tileman Mode is paused until then.");
+            return null;
+        }
+
+        File databaseDirectory = new File(TILE_DATABASE_ROOT, databaseId);
+        TilemanModeMappedTileStorage databaseStorage;
+        try {
+            databaseStorage = TilemanModeMappedTileStorage.open(databaseDirectory, false);
+        } catch (IOException e) {
+            log.warn("Unable to open the tile database at {}", databaseDirectory, e);
+            sendChatMessage("Your tile database at " + databaseDirectory + " could not be opened. "
+                    + "Tileman Mode is paused and nothing has been changed.");
+            return null;
+        }
+
+        if (config.useTileDatabase()) {
+            return databaseStorage;
+        }
+
+        dataMigrationInProgress = true;
+        try {
+            copyTiles(databaseStorage, configStorage);
+            configManager.unsetConfiguration(CONFIG_GROUP, TILE_DATABASE_ID_KEY);
+            configManager.unsetConfiguration(CONFIG_GROUP, TILE_DATABASE_MACHINE_KEY);
+            configManager.sendConfig();
+            log.debug("TileManMode moved tiles from the tile database back to the config");
+            return configStorage;
+        } catch (RuntimeException e) {
+            // the config only holds some of the tiles, the database still holds them all and is still recorded
+            log.warn("Unable to move tiles from the tile database back to the config", e);
+            sendChatMessage("Your tiles could not be moved out of the tile database. "
+                    + "Tileman Mode is paused, your tiles are still in the database.");
+            return null;
+        } finally {
+            databaseStorage.close();
+            dataMigrationInProgress = false;
+        }
+    }
+
+    /**
+     * Moves the config's tiles into a new tile database on this computer. They stay in the config if that fails.
+     */
+    private TilemanModeTileStorage createTileDatabase(TilemanModeConfigTileStorage configStorage) {
+        String machineId = getMachineId();
+        if (machineId == null) {
+            return configStorage;
+        }
+
+        // each profile gets its own database, so profiles never see each other's tiles
+        String databaseId = UUID.randomUUID().toString();
+        File databaseDirectory = new File(TILE_DATABASE_ROOT, databaseId);
+        TilemanModeMappedTileStorage databaseStorage;
+        try {
+            databaseStorage = TilemanModeMappedTileStorage.open(databaseDirectory, true);
+        } catch (IOException e) {
+            log.warn("Unable to create a tile database at {}, using the RuneLite config instead", databaseDirectory, e);
+            deleteTileDatabase(databaseDirectory);
+            return configStorage;
+        }
+
+        // set once the profile refers to the database, from then on it holds the profile's tiles
+        boolean databaseRecorded = false;
+        dataMigrationInProgress = true;
+        try {
+            copyTiles(configStorage, databaseStorage);
+            databaseStorage.sync();
+            configManager.setConfiguration(CONFIG_GROUP, TILE_DATABASE_MACHINE_KEY, machineId);
+            configManager.setConfiguration(CONFIG_GROUP, TILE_DATABASE_ID_KEY, databaseId);
+            databaseRecorded = true;
+            deleteTiles(configStorage);
+            configManager.sendConfig();
+            log.debug("TileManMode moved tiles from the config into the tile database {}", databaseId);
+            return databaseStorage;
+        } catch (RuntimeException e) {
+            if (databaseRecorded) {
+                // only clearing the moved tiles out of the config was cut short, the database has every tile
+                log.warn("Unable to remove the tiles moved into the tile database {} from the config", databaseId, e);
+                return databaseStorage;
+            }
+
+            log.warn("Unable to move tiles into the tile database, using the RuneLite config instead", e);
+            databaseStorage.close();
+            // nothing refers to the half filled database, so the next attempt starts a new one
+            deleteTileDatabase(databaseDirectory);
+            return configStorage;
+        } finally {
+            dataMigrationInProgress = false;
+        }
+    }
+
+    /**
+     * @return the id of this computer, made the first time it is asked for, or null if it can't be read or saved
+     */
+    private static String getMachineId() {
+        try {
+            if (MACHINE_ID_FILE.isFile()) {
+                String machineId = new String(Files.readAllBytes(MACHINE_ID_FILE.toPath()), StandardCharsets.UTF_8).trim();
+                if (!machineId.isEmpty()) {
+                    return machineId;
+                }
+            }
+
+            if (!TILE_DATABASE_ROOT.isDirectory() && !TILE_DATABASE_ROOT.mkdirs()) {
+                throw new IOException("Unable to create " + TILE_DATABASE_ROOT);
+            }
+            String machineId = UUID.randomUUID().toString();
+            Files.write(MACHINE_ID_FILE.toPath(), machineId.getBytes(StandardCharsets.UTF_8));
+            return machineId;
+        } catch (IOException e) {
+            log.warn("Unable to read or save this computer's id in {}", MACHINE_ID_FILE, e);
+            return null;
+        }
+    }
+
+    private static void deleteTileDatabase(File databaseDirectory) {
+        if (!TilemanModeMappedTileStorage.delete(databaseDirectory)) {
+            log.warn("Unable to delete the unused tile database at {}", databaseDirectory);
+        }
+    }
+
+    /**
+     * Moves any legacy tile data into the tile store on the executor, refreshing the counter and visible tiles as
+     * each batch lands so the plugin is usable while it runs.
+     */
+    private void startDataMigration() {
+        if (tilesUnavailable) {
+            return;
+        }
+
+        dataMigrator = new TilemanModeDataMigrator(this, configManager, tileStore, () -> clientThread.invokeLater(() -> {
+            updateTileCountFromConfigs();
+            updateTilesToRender();
+        }));
+        executor.execute(dataMigrator);
+    }
+
+    /**
+     * Stops the migration, waiting for the batch in progress to be saved so the tile store can be closed or swapped.
+     */
+    private void stopDataMigration() {
+        if (dataMigrator != null) {
+            dataMigrator.cancel();
+            dataMigrator = null;
+        }
+    }
+
+    /**
+     * Loads this profile's record of when the player's region planes changed into the tile store, starting a new
+     * history if there is none or it can't be read.
+     */
+    private void loadSyncVersions() {
+        syncVersions = null;
+        String encoded = configManager.getConfiguration(CONFIG_GROUP, SYNC_VERSIONS_KEY);
+        if (!Strings.isNullOrEmpty(encoded)) {
+            try {
+                syncVersions = TilemanModeSyncVersions.fromByteArray(Base64.getUrlDecoder().decode(encoded));
+            } catch (IllegalArgumentException e) {
+                log.warn("Discarding unreadable sync versions, the next export will be a full one", e);
+            }
+        }
+        if (syncVersions == null) {
+            syncVersions = TilemanModeSyncVersions.create();
+        }
+        tileStore.setSyncVersions(syncVersions);
+    }
+
+    /**
+     * Saves the sync versions to the config if they changed since they were last saved.
+     */
+    void saveSyncVersions() {
+        byte[] changes = syncVersions.takeChanges();
+        if (changes != null) {
+            configManager.setConfiguration(CONFIG_GROUP, SYNC_VERSIONS_KEY, changes);
+        }
+    }
+
+    /**
+     * Starts sharing tile sets through the configured folder, if there is one.
+     */
+    private void startFolderSync() {
+        // sharing the empty stand in store would overwrite the player's tile set in the folder
+        if (tilesUnavailable) {
+            return;
+        }
+
+        String folder = config.groupSyncFolder();
+        if (Strings.isNullOrEmpty(folder) || folder.trim().isEmpty()) {
+            return;
+        }
+
+        try {
+            folderSync = new TilemanModeFolderSync(Paths.get(folder.trim()), executor,
+                    groupTilemanDataManager::importSharedTileSet);
+            folderSync.start();
+        } catch (IOException | InvalidPathException e) {
+            log.warn("Unable to watch the group sync folder {}", folder, e);
+            folderSync = null;
+            sendChatMessage("Group sync folder " + folder + " could not be opened, tile sets are not being shared.");
+        }
+    }
+
+    private void stopFolderSync() {
+        if (folderSync != null) {
+            folderSync.close();
+            folderSync = null;
+        }
+    }
+
+    /**
+     * Sends the claims made this tick to the sync relay, connecting first if the player has logged in since it was
+     * configured or is now on another account.
+     */
+    private void updateLiveSync() {
+        if (client.getLocalPlayer() == null || client.getLocalPlayer().getName() == null) {
+            return;
+        }
+        if (liveSync != null && !liveSync.getMember().equals(getPlayerName())) {
+            stopLiveSync();
+        }
+        if (liveSync == null) {
+            startLiveSync(getPlayerName());
+        }
+        if (liveSync != null) {
+            liveSync.endTick();
+        }
+    }
+
+    private void startLiveSync(String playerName) {
+        String server = config.groupSyncServer().trim();
+        if (server.isEmpty() || liveSyncMisconfigured) {
+            return;
+        }
+
+        int separator = server.lastIndexOf(':');
+        int port;
+        try {
+            port = separator < 0 ? -1 : Integer.parseInt(server.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (separator <= 0 || port < 1 || port > 65535) {
+            liveSyncMisconfigured = true;
+            sendChatMessage("Group sync server " + server + " is not a host:port, claims are not being streamed.");
+            return;
+        }
+
+        String group = config.groupSyncGroup().trim();
+        long relaySequence = 0;
+        String stored = configManager.getConfiguration(CONFIG_GROUP, relaySequenceKey(group, playerName));
+        if (!Strings.isNullOrEmpty(stored)) {
+            try {
+                relaySequence = Long.parseLong(stored);
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed live sync sequence {}", stored);
+            }
+        }
+
+        liveSync = new TilemanModeLiveSync(server.substring(0, separator), port, group, playerName, relaySequence,
+                new TilemanModeLiveSync.Listener() {
+                    @Override
+                    public void onClaims(String member, int[] claims) {
+                        executor.execute(() -> groupTilemanDataManager.applyLiveClaims(member, claims));
+                    }
+
+                    @Override
+                    public void onReset() {
+                        sendChatMessage("Group sync missed some of your group's claims while disconnected. "
+                                + "Import a fresh export from them to catch up.");
+                    }
+                });
+        liveSync.start();
+    }
+
+    private void stopLiveSync() {
+        if (liveSync != null) {
+            liveSync.close();
+            // the next session resumes from here rather than being sent the group's whole history again
+            long relaySequence = liveSync.getRelaySequence();
+            if (relaySequence > 0) {
+                configManager.setConfiguration(CONFIG_GROUP, relaySequenceKey(liveSync.getGroup(), liveSync.getMember()),
+                        relaySequence);
+            }
+            liveSync = null;
+        }
+    }
+
+    private static String relaySequenceKey(String group, String playerName) {
+        return SYNC_RELAY_SEQUENCE_PREFIX + group + "_" + GroupTilemanDataManager.toTileSetName(playerName);
+    }
+
+    /**
+     * Opens this profile's claim journal and replays any claims a crash kept from reaching the tile storage.
+     * The tile store keeps working without a journal if it can't be opened.
+     */
+    private void openClaimJournal() {
+        // replaying into the empty stand in store would lose the claims, they wait for the real one
+        if (tilesUnavailable) {
+            return;
+        }
+
+        String journalId = configManager.getConfiguration(CONFIG_GROUP, CLAIM_JOURNAL_ID_KEY);
+        if (Strings.isNullOrEmpty(journalId)) {
+            journalId = UUID.randomUUID().toString();
+            configManager.setConfiguration(CONFIG_GROUP, CLAIM_JOURNAL_ID_KEY, journalId);
+        }
+
+        File journalFile = new File(TILE_DATABASE_ROOT, "journal-" + journalId + ".log");
+        try {
+            claimJournal = TilemanModeClaimJournal.open(journalFile);
+            int replayed = claimJournal.replay((regionId, regionX, regionY, plane, claimed, timestamp) -> {
+                if (claimed) {
+                    tileStore.set(REGION_PREFIX_V3, regionId, regionX, regionY, plane);
+                } else {
+                    tileStore.clear(REGION_PREFIX_V3, regionId, regionX, regionY, plane);
+                }
+            });
+            if (replayed > 0) {
+                log.debug("TileManMode replayed {} claims from the claim journal", replayed);
+                compactClaimJournal();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to open the claim journal {}, claims are only saved with the tile store", journalFile, e);
+            closeClaimJournal(false);
+        }
+    }
+
+    /**
+     * Saves the tile store and then drops the journal records it now covers. The save and the compaction run on the
+     * executor, as saving can mean writing out the whole RuneLite profile.
+     */
+    private void compactClaimJournal() {
+        if (claimJournal == null || claimJournal.size() == 0 || !claimJournalCompacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        TilemanModeTileStore store = tileStore;
+        TilemanModeClaimJournal journal = claimJournal;
+        store.flush();
+        long mark = journal.size();
+        executor.execute(() -> {
+            try {
+                store.sync();
+                journal.compact(mark);
+            } catch (IOException e) {
+                log.warn("Unable to compact the claim journal", e);
+            } finally {
+                claimJournalCompacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * @param compact whether the tile store has been saved and every journal record can be dropped
+     */
+    private void closeClaimJournal(boolean compact) {
+        if (claimJournal == null) {
+            return;
+        }
+        if (compact) {
+            try {
+                claimJournal.compact(claimJournal.size());
+            } catch (IOException e) {
+                log.warn("Unable to compact the claim journal", e);
+            }
+        }
+        claimJournal.close();
+        claimJournal = null;
+    }
+
+    private static Set<String> getTilePrefixes(TilemanModeTileStorage storage) {
+        Set<String> prefixes = new HashSet<>(storage.getPrefixes(REGION_PREFIX_IMPORTED));
+        prefixes.add(REGION_PREFIX_V3);
+        return prefixes;
+    }
+
+    private static void copyTiles(TilemanModeTileStorage from, TilemanModeTileStorage to) {
+        for (String prefix : getTilePrefixes(from)) {
+            for (int regionId : from.getRegionIds(prefix)) {
+                for (int plane = 0; plane < 4; plane++) {
+                    TilemanModeRegionBitmap bitmap = from.read(prefix, regionId, plane);
+                    if (!bitmap.isEmpty()) {
+                        to.write(prefix, regionId, plane, bitmap);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deleteTiles(TilemanModeTileStorage storage) {
+        for (String prefix : getTilePrefixes(storage)) {
+            storage.deletePrefix(prefix);
+        }
     }
 
     private void autoMark() {
@@ -315,36 +1017,11 @@ public class TilemanModePlugin extends Plugin {
         updateRemainingTiles();
     }
 
-    Set<Integer> getAllRegionIds(String configGroup, String regionPrefix) {
-
-        List<String> allKeys = configManager.getConfigurationKeys(configGroup + "." + regionPrefix);
-        Set<Integer> regionIds = new HashSet<>();
-
-        for (String key : allKeys) {
-            key = key.replace(configGroup + "." + regionPrefix, "");
-            key = key.replace("_0", "");
-            key = key.replace("_1", "");
-            key = key.replace("_2", "");
-            key = key.replace("_3", "");
-            regionIds.add(Integer.parseInt(key));
-        }
-
-        return regionIds;
-    }
-
     private void updateTileCountFromConfigs() {
         log.debug("Updating tile counter");
 
-        int totalTiles = 0;
-        Set<Integer> regions = getAllRegionIds(CONFIG_GROUP, REGION_PREFIX_V2);
-        for (int regionId : regions) {
-            for (int plane = 0; plane < 4; plane++) {
-                Collection<TilemanModeTile> regionTiles = readTiles(regionId, plane);
-                totalTiles += regionTiles.size();
-            }
-        }
-
-        totalTilesUsed = totalTiles;
+        // the manifest keeps a count per region plane, so no bitmaps are decoded here
+        totalTilesUsed = tileStore.totalCardinality(REGION_PREFIX_V3);
         updateRemainingTiles();
     }
 
@@ -369,70 +1046,41 @@ public class TilemanModePlugin extends Plugin {
         xpUntilNextTile = config.expPerTile() - Integer.parseInt(Long.toString(client.getOverallExperience() % config.expPerTile()));
     }
 
-    private void performConfigVersionMigrations() {
-        Instant startTime = Instant.now();
-        // Progressively move v1 -> v2, then v2 -> v3 etc so users configs are always on the latest version.
-        // This ensures runtime code is always using the most efficient / current implementation.
-        // Use string literals here rather than constants in case somebody removes or changes the constants in future
+    public Collection<TilemanModeTile> readTiles(int regionId, int plane) {
+        // Wrap most data reads using this handler so if the format changes in future only one location needs updating
+        return toTiles(regionId, plane, tileStore.getRegion(REGION_PREFIX_V3, regionId, plane));
+    }
 
-        dataMigrationInProgress = true;
+    public Collection<TilemanModeTile> readImportedTileSet(String tileSetName, int regionId, int plane) {
+        return toTiles(regionId, plane, tileStore.getRegion(getImportedTileSetPrefix(tileSetName), regionId, plane));
+    }
 
-        // v1 to v2 data
-        String prefix = "tilemanMode.region_";
-        List<String> v1keys = configManager.getConfigurationKeys(prefix);
-        for (String key : v1keys){
-            Integer regionId = Integer.parseInt(key.replace(prefix, ""));
-            String json = configManager.getConfiguration("tilemanMode", "region_" + regionId);
-            List<TilemanModeTile> tiles = gson.fromJson(json, new TypeToken<List<TilemanModeTile>>(){}.getType());
-            log.debug("TileManMode performConfigVersionMigrations - " + tiles.size() + " tiles to migrate");
+    /**
+     * @return the player's claims, region id -> the region's tiles by plane as stored
+     */
+    Map<Integer, TilemanModeRegionBitmap[]> readPlayerRegions() {
+        Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+        for (int regionId : tileStore.getRegionIds(REGION_PREFIX_V3)) {
+            TilemanModeRegionBitmap[] planes = new TilemanModeRegionBitmap[4];
             for (int plane = 0; plane < 4; plane++) {
-                List<TilemanModeTile> filteredTiles = new ArrayList<TilemanModeTile>();
-                for (TilemanModeTile tile : tiles) {
-                    if (tile.getZ() == plane){
-                        filteredTiles.add(tile);
-                    }
-                }
-                key = "regionv2_" + regionId + "_" + plane;
-                writeV2FormatData(filteredTiles, key);
+                planes[plane] = tileStore.getRegion(REGION_PREFIX_V3, regionId, plane);
             }
+            regions.put(regionId, planes);
         }
-        configManager.sendConfig(); // v1 -> v2 saved to disk
-
-        // cleanup v1 keys now the v2 keys have been safely saved to disk
-        for (String key : v1keys) {
-            Integer regionId = Integer.parseInt(key.replace(prefix, ""));
-            configManager.unsetConfiguration("tilemanMode", "region_" + regionId); // remove old v1 format
-        }
-        configManager.sendConfig(); // v1 removed from configs and saved to disk
-
-        // any future migrations should be added here migrating from v2 data to v3 and so on.
-
-        dataMigrationInProgress = false;
-        Duration d = Duration.between(startTime, Instant.now());
-        log.debug("TileManMode performConfigVersionMigrations - Finish (" + d.toMillis() + "ms)");
+        return regions;
     }
 
-    private void writeTiles(int regionId, Collection<TilemanModeTile> tiles, int plane) {
-        // Wrap data writes using this handler so if the format changes in future only one location needs updating
-        Instant startTime = Instant.now();
-        String key = REGION_PREFIX_V2 + regionId + "_" + plane;
-        writeV2FormatData(tiles, key);
-        Duration d = Duration.between(startTime, Instant.now());
-        log.debug("TileManMode writeTiles (memory) - Finish (" + d.toMillis() + "ms)");
+    static String getImportedTileSetPrefix(String tileSetName) {
+        return REGION_PREFIX_IMPORTED + tileSetName + "_";
     }
 
-    public Collection<TilemanModeTile> readTiles(int regionId, int plane) {
-        // Wrap most data reads using this handler so if the format changes in future only one location needs updating
-        // The logging here is spammy for general development but useful for on demand profiling, so we comment gate it.
-        //Instant startTime = Instant.now();
-        Collection<TilemanModeTile> tiles = readV2FormatData(REGION_PREFIX_V2, regionId, plane);
-        //Duration d = Duration.between(startTime, Instant.now());
-        //log.debug("TileManMode readTiles (memory) " + regionId + ":" + plane + " - Finish (" + d.toNanos()+ " nanoseconds)");
-        return tiles;
-    }
+    private Collection<TilemanModeTile> toTiles(int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        if (bitmap.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-    public Collection<TilemanModeTile> readImportedTileSet(String tileSetName, int regionId, int plane) {
-        Collection<TilemanModeTile> tiles = readV2FormatData(REGION_PREFIX_IMPORTED + tileSetName + "_", regionId, plane);
+        List<TilemanModeTile> tiles = new ArrayList<>(bitmap.cardinality());
+        bitmap.forEach((regionX, regionY) -> tiles.add(new TilemanModeTile(regionId, regionX, regionY, plane)));
         return tiles;
     }
 
@@ -449,104 +1097,123 @@ public class TilemanModePlugin extends Plugin {
         }.getType());
     }
 
-    private Collection<TilemanModeTile> readV2FormatData(String prefix, int regionID, int plane) {
-
-        // generate the list to build or return empty.
-        List<TilemanModeTile> tilesStoredInV2Format = new ArrayList<>();
-
-        // grab the raw encoded string in Base64 from the config file
-        String key = prefix + regionID + "_" + plane;
-        String encoded = configManager.getConfiguration(CONFIG_GROUP, key);
-
-        if (encoded == null){
-            return tilesStoredInV2Format;
-        }
-
-        // decode to a byte array, then interpret it as a Bitset
-        byte[] bytes = Base64.getUrlDecoder().decode(encoded);
-
-        // return if there's no data under that key
-        if (bytes == null || bytes.length == 0){
-            return tilesStoredInV2Format;
+    /**
+     * Rebuilds the visible tiles for the loaded scene on the scene executor. What is drawn only changes once the
+     * build is published, so this never decodes region data on the client thread.
+     */
+    public void updateTilesToRender() {
+        // the group panel and sync ask from other threads, the scene and build state belong to the client thread.
+        // Asks made before the client thread gets to them are answered by one rebuild.
+        if (!client.isClientThread()) {
+            if (tilesToRenderRequested.compareAndSet(false, true)) {
+                clientThread.invokeLater(() -> {
+                    tilesToRenderRequested.set(false);
+                    updateTilesToRender();
+                });
+            }
+            return;
         }
 
-        BitSet bitSet = BitSet.valueOf(bytes);
-
-        // find bits set to 1, and create a tile when they're found
-        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
-            int tileRegionY = i / 64;
-            int tileRegionX = i - (64 * tileRegionY);
-            tilesStoredInV2Format.add(new TilemanModeTile(regionID, tileRegionX, tileRegionY, plane));
+        TilemanModeVisibleTiles.Scene scene = TilemanModeVisibleTiles.Scene.capture(client);
+        if (scene == null) {
+            return;
         }
 
-        return tilesStoredInV2Format;
+        // every build requested before now is stale, and the spare can't be published until this one is done
+        final int generation = ++visibleTilesGeneration;
+        final TilemanModeVisibleTiles target = spareVisibleTiles;
+        final TilemanModeTileStore store = tileStore;
+        final TilemanModeGroupIndex group = groupIndex;
+        pendingSceneClaims.clear();
+
+        sceneExecutor.execute(() -> {
+            Instant startTime = Instant.now();
+            target.build(store, group, scene);
+
+            Duration d = Duration.between(startTime, Instant.now());
+            log.debug("TileManMode updateTilesToRender - Finish (" + d.toNanos()+ " nanoseconds)");
+            clientThread.invokeLater(() -> publishVisibleTiles(target, generation));
+        });
     }
 
-    public void updateTilesToRender() {
-        Instant startTime = Instant.now();
-
-        // clear any existing rendering arrays
-        tilesToRender.clear();
-        groupTilesToRender.clear();
-
-        // we only want to update tiles to render if they are around the player
-        int[] regions = client.getMapRegions();
-        if (regions == null) {
+    private void publishVisibleTiles(TilemanModeVisibleTiles built, int generation) {
+        // a newer build was requested while this one ran. It reuses the same buffer and will be published instead.
+        if (generation != visibleTilesGeneration) {
             return;
         }
 
-        for (int regionId : regions) {
-
-            // update player centric tile claims
-            Collection<WorldPoint> worldPoint = translateToWorldPoint(readTiles(regionId, client.getPlane()));
-            tilesToRender.addAll(worldPoint);
-
-            // update group tileman claims
-            for (String tileSetName : groupTilemanDataManager.getImportedDataSetKeys()) {
-                Collection<WorldPoint> groupTiles = translateToWorldPoint(readImportedTileSet(tileSetName, regionId, client.getPlane()));
-                groupTilesToRender.addAll(groupTiles);
-            }
+        for (int claim : pendingSceneClaims) {
+            setSceneClaim(built.getPlayerIndex(), claim >> 17, claim >> 9 & 0xFF, claim >> 1 & 0xFF, (claim & 1) != 0);
         }
+        pendingSceneClaims.clear();
 
-        Duration d = Duration.between(startTime, Instant.now());
-        log.debug("TileManMode updateTilesToRender - Finish (" + d.toNanos()+ " nanoseconds)");
+        spareVisibleTiles = visibleTiles;
+        publishedVisibleTilesGeneration = generation;
+        visibleTiles = built;
     }
 
-    public void writeV2FormatData(Collection<TilemanModeTile> tiles, String key) {
-
-        // don't write empty regions. remove them instead.
-        if (tiles == null || tiles.isEmpty()) {
-            configManager.unsetConfiguration(CONFIG_GROUP, key);
-            return;
+    /**
+     * Shows a claim in the drawn tiles straight away, and again in the build that replaces them if one is pending.
+     */
+    private void updateSceneClaim(int plane, int sceneX, int sceneY, boolean claimed) {
+        setSceneClaim(visibleTiles.getPlayerIndex(), plane, sceneX, sceneY, claimed);
+        if (publishedVisibleTilesGeneration != visibleTilesGeneration) {
+            pendingSceneClaims.add(plane << 17 | sceneX << 9 | sceneY << 1 | (claimed ? 1 : 0));
         }
+    }
 
-        // 4096 = 64x64 because that's Runelite's region dimensions
-        BitSet out = new BitSet(4096);
-        for (TilemanModeTile tile : tiles) {
-            out.set(tile.getRegionY() * 64 + tile.getRegionX());
+    private static void setSceneClaim(TilemanModeSceneIndex index, int plane, int sceneX, int sceneY, boolean claimed) {
+        if (claimed) {
+            index.set(plane, sceneX, sceneY);
+        } else {
+            index.clear(plane, sceneX, sceneY);
         }
+    }
 
-        // write out the plane data directly to base64 encoded string.
-        configManager.setConfiguration(CONFIG_GROUP, key, out.toByteArray());
+    int getTotalTiles() {
+        return totalTilesUsed;
     }
 
-    private Collection<WorldPoint> translateToWorldPoint(Collection<TilemanModeTile> points) {
-        if (points.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * Captures the colours, counts and player position the overlays draw with until the next game tick.
+     */
+    private void publishRenderSnapshot() {
+        if (groupTilemanDataManager == null) {
+            return;
         }
 
-        return points.stream()
-                .map(point -> WorldPoint.fromRegion(point.getRegionId(), point.getRegionX(), point.getRegionY(), point.getZ()))
-                .flatMap(worldPoint ->
-                {
-                    final Collection<WorldPoint> localWorldPoints = WorldPoint.toLocalInstance(client, worldPoint);
-                    return localWorldPoints.stream();
-                })
-                .collect(Collectors.toList());
-    }
+        Color tileColor = config.markerColor();
+        Color infoTextColor = Color.WHITE;
+        if (config.enableTileWarnings()) {
+            if (remainingTiles <= 0) {
+                tileColor = Color.RED;
+                infoTextColor = Color.RED;
+            } else if (remainingTiles <= config.warningLimit()) {
+                tileColor = WARNING_COLOR;
+                infoTextColor = Color.ORANGE;
+            }
+        }
 
-    int getTotalTiles() {
-        return totalTilesUsed;
+        Player player = client.getLocalPlayer();
+        LocalPoint playerLocation = player == null ? null : player.getLocalLocation();
+
+        renderSnapshot = new TilemanModeRenderSnapshot(
+                tileColor,
+                new Color(config.markerColor().getRGB()),
+                infoTextColor,
+                TilemanModeRenderSnapshot.formatCount(remainingTiles),
+                TilemanModeRenderSnapshot.formatCount(totalTilesUsed),
+                TilemanModeRenderSnapshot.formatCount(xpUntilNextTile),
+                !(config.enableCustomGameMode() && config.excludeExp()),
+                config.drawTilesOnMinimap(),
+                config.drawTilesOnWorldMap(),
+                config.renderMode(),
+                playerLocation != null,
+                client.getPlane(),
+                playerLocation == null ? 0 : playerLocation.getSceneX(),
+                playerLocation == null ? 0 : playerLocation.getSceneY(),
+                TimeUnit.MILLISECONDS.toNanos(config.overlayFrameBudget()),
+                TilemanModeFrameGovernor.lowest(overlay.getGovernor().getLevel(), minimapOverlay.getGovernor().getLevel()));
     }
 
     int getRemainingTiles() {
@@ -731,6 +1398,15 @@ public class TilemanModePlugin extends Plugin {
         updateTileMark(localPoint, true, false);
     }
 
+    private void appendClaim(int regionId, int regionX, int regionY, int plane, boolean claimed) {
+        if (claimJournal != null) {
+            claimJournal.append(regionId, regionX, regionY, plane, claimed);
+        }
+        if (liveSync != null) {
+            liveSync.claimChanged(regionId, regionX, regionY, plane, claimed);
+        }
+    }
+
     private void updateTileMark(LocalPoint localPoint, boolean claimTile, boolean ignoreImportedTiles) {
         Instant startTime = Instant.now();
 
@@ -742,22 +1418,23 @@ public class TilemanModePlugin extends Plugin {
         int plane = client.getPlane();
         WorldPoint worldPoint = WorldPoint.fromLocalInstance(client, localPoint);
         int regionId = worldPoint.getRegionID();
-        TilemanModeTile tile = new TilemanModeTile(regionId, worldPoint.getRegionX(), worldPoint.getRegionY(), plane);
-        log.debug("Updating point: {} - {}", tile, worldPoint);
+        int regionX = worldPoint.getRegionX();
+        int regionY = worldPoint.getRegionY();
+        log.debug("Updating point: {}", worldPoint);
 
-        Collection<TilemanModeTile> tiles = readTiles(regionId, plane);
-        Boolean tileIsUnlocked = tiles.contains(tile);
-        Boolean stateChanged = false;
-        Boolean groupTilemanClaimed = !ignoreImportedTiles && groupTilesToRender.contains(WorldPoint.fromLocalInstance(client, localPoint));
+        boolean tileIsUnlocked = tileStore.contains(REGION_PREFIX_V3, regionId, regionX, regionY, plane);
+        boolean groupTilemanClaimed = !ignoreImportedTiles
+                && groupIndex.contains(regionId, regionX, regionY, plane);
 
-        // attempt to unlock
+        // attempt to unlock. The store writes the change through to the config.
         if (claimTile && !tileIsUnlocked && !groupTilemanClaimed) {
             if ((config.allowTileDeficit() || remainingTiles > 0)) {
                 log.debug("TileManMode updateTileMark - claimed tile");
-                tiles.add(tile);
-                tilesToRender.add(worldPoint);
+                tileStore.set(REGION_PREFIX_V3, regionId, regionX, regionY, plane);
+                appendClaim(regionId, regionX, regionY, plane, true);
+                updateSceneClaim(plane, localPoint.getSceneX(), localPoint.getSceneY(), true);
                 totalTilesUsed += 1;
-                stateChanged = true;
+                updateRemainingTiles();
             }
         }
 
@@ -765,16 +1442,11 @@ public class TilemanModePlugin extends Plugin {
         if (!claimTile && tileIsUnlocked)
         {
             log.debug("TileManMode updateTileMark - released tile");
-            tiles.remove(tile);
-            tilesToRender.remove(worldPoint);
+            tileStore.clear(REGION_PREFIX_V3, regionId, regionX, regionY, plane);
+            appendClaim(regionId, regionX, regionY, plane, false);
+            updateSceneClaim(plane, localPoint.getSceneX(), localPoint.getSceneY(), false);
             totalTilesUsed -= 1;
-            stateChanged = true;
-        }
-
-        // do updates only if state changes to prevent updates when unchanged
-        if (stateChanged)
-        {
-            writeTiles(regionId, tiles, plane);
+            updateRemainingTiles();
         }
 
         Duration d = Duration.between(startTime, Instant.now());
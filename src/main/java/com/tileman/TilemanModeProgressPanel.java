@@ -0,0 +1,78 @@
+package com.tileman;
+
+import net.runelite.client.ui.ColorScheme;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Shows the progress of a group tile set operation running in the background, with a button to cancel it.
+ * Progress can be reported from any thread. Cancelling only asks the operation to stop, it checks
+ * {@link #checkCancelled()} at the points where stopping leaves nothing half done.
+ */
+class TilemanModeProgressPanel extends JPanel {
+
+    private final JLabel label = new JLabel();
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton("Cancel");
+    private volatile boolean cancelled;
+
+    TilemanModeProgressPanel() {
+        super(new BorderLayout(0, 4));
+        setBackground(ColorScheme.DARK_GRAY_COLOR);
+        setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
+        label.setForeground(Color.WHITE);
+        cancelButton.addActionListener(l -> {
+            cancelled = true;
+            cancelButton.setEnabled(false);
+            label.setText(label.getText() + " (cancelling)");
+        });
+        add(label, BorderLayout.NORTH);
+        add(progressBar, BorderLayout.CENTER);
+        add(cancelButton, BorderLayout.SOUTH);
+        setVisible(false);
+    }
+
+    /**
+     * Shows the panel for a new operation, with its progress unknown until it reports some. Call it on the Swing thread.
+     */
+    void start(String description) {
+        cancelled = false;
+        label.setText(description);
+        progressBar.setIndeterminate(true);
+        progressBar.setValue(0);
+        cancelButton.setEnabled(true);
+        setVisible(true);
+        revalidate();
+    }
+
+    void setProgress(int percent) {
+        SwingUtilities.invokeLater(() -> {
+            progressBar.setIndeterminate(false);
+            progressBar.setValue(percent);
+        });
+    }
+
+    void finish() {
+        SwingUtilities.invokeLater(() -> {
+            setVisible(false);
+            revalidate();
+        });
+    }
+
+    /**
+     * @throws CancellationException if the player cancelled the operation
+     */
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.tileman;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Claim state for a single 64x64 region plane, held as one primitive long per row of the region.
+ * Bit x of row y is the tile at regionX = x, regionY = y, matching the bit order of the V2 config format.
+ */
+class TilemanModeRegionBitmap {
+
+    static final int REGION_SIZE = 64;
+
+    /**
+     * Shared read-only instance returned for regions that have no claims. Never mutate it.
+     */
+    static final TilemanModeRegionBitmap EMPTY = new TilemanModeRegionBitmap();
+
+    private final long[] rows = new long[REGION_SIZE];
+    private int cardinality;
+
+    interface TileVisitor {
+        void visit(int regionX, int regionY);
+    }
+
+    boolean contains(int regionX, int regionY) {
+        return (rows[regionY] & (1L << regionX)) != 0;
+    }
+
+    /**
+     * @return true if the tile was not previously set
+     */
+    boolean set(int regionX, int regionY) {
+        long bit = 1L << regionX;
+        if ((rows[regionY] & bit) != 0) {
+            return false;
+        }
+        rows[regionY] |= bit;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * @return true if the tile was previously set
+     */
+    boolean clear(int regionX, int regionY) {
+        long bit = 1L << regionX;
+        if ((rows[regionY] & bit) == 0) {
+            return false;
+        }
+        rows[regionY] &= ~bit;
+        cardinality--;
+        return true;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    long getRow(int regionY) {
+        return rows[regionY];
+    }
+
+    void setRow(int regionY, long row) {
+        cardinality += Long.bitCount(row) - Long.bitCount(rows[regionY]);
+        rows[regionY] = row;
+    }
+
+    /**
+     * @return true if both bitmaps claim exactly the same tiles
+     */
+    boolean hasSameTiles(TilemanModeRegionBitmap other) {
+        return cardinality == other.cardinality && Arrays.equals(rows, other.rows);
+    }
+
+    void forEach(TileVisitor visitor) {
+        for (int y = 0; y < REGION_SIZE; y++) {
+            long row = rows[y];
+            while (row != 0) {
+                int x = Long.numberOfTrailingZeros(row);
+                visitor.visit(x, y);
+                row &= row - 1;
+            }
+        }
+    }
+
+    /**
+     * Encodes the bitmap as the little-endian BitSet bytes used by the V2 config format.
+     */
+    byte[] toByteArray() {
+        return BitSet.valueOf(rows).toByteArray();
+    }
+
+    static TilemanModeRegionBitmap fromByteArray(byte[] bytes) {
+        TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+        if (bytes == null || bytes.length == 0) {
+            return bitmap;
+        }
+
+        long[] words = BitSet.valueOf(bytes).toLongArray();
+        int length = Math.min(words.length, REGION_SIZE);
+        for (int y = 0; y < length; y++) {
+            bitmap.rows[y] = words[y];
+            bitmap.cardinality += Long.bitCount(words[y]);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,146 @@
+package com.tileman;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Every non-empty region plane under one storage prefix, with its claimed tile count.
+ * Entries are kept sorted by (regionId << 2 | plane) in two parallel primitive arrays, so listing regions and totalling
+ * tiles never touches the bitmaps themselves.
+ *
+ * Serialised as a varint entry count followed by (key delta, tile count) varint pairs.
+ */
+class TilemanModeRegionManifest {
+
+    private int[] keys = new int[16];
+    private int[] counts = new int[16];
+    private int size;
+    private int total;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the claimed tiles across every region plane
+     */
+    int total() {
+        return total;
+    }
+
+    int getCount(int regionId, int plane) {
+        int index = Arrays.binarySearch(keys, 0, size, packKey(regionId, plane));
+        return index >= 0 ? counts[index] : 0;
+    }
+
+    /**
+     * Sets the tile count of a region plane, removing it when the count is zero.
+     *
+     * @return true if the count changed
+     */
+    boolean put(int regionId, int plane, int count) {
+        int key = packKey(regionId, plane);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            if (counts[index] == count) {
+                return false;
+            }
+            total += count - counts[index];
+            if (count == 0) {
+                System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+                System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+                size--;
+            } else {
+                counts[index] = count;
+            }
+            return true;
+        }
+
+        if (count == 0) {
+            return false;
+        }
+        int insertAt = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(keys, insertAt, keys, insertAt + 1, size - insertAt);
+        System.arraycopy(counts, insertAt, counts, insertAt + 1, size - insertAt);
+        keys[insertAt] = key;
+        counts[insertAt] = count;
+        size++;
+        total += count;
+        return true;
+    }
+
+    /**
+     * @return the distinct region ids with claims, in ascending order
+     */
+    int[] getRegionIds() {
+        int[] regionIds = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            int regionId = keys[i] >> 2;
+            // keys are sorted, so the planes of a region are adjacent
+            if (length == 0 || regionIds[length - 1] != regionId) {
+                regionIds[length++] = regionId;
+            }
+        }
+        return Arrays.copyOf(regionIds, length);
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 + size * 4);
+        writeVarint(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, keys[i] - previous);
+            writeVarint(out, counts[i]);
+            previous = keys[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a manifest
+     */
+    static TilemanModeRegionManifest fromByteArray(byte[] bytes) {
+        TilemanModeRegionManifest manifest = new TilemanModeRegionManifest();
+        int[] position = new int[1];
+        int entries = readVarint(bytes, position);
+        int key = 0;
+        for (int i = 0; i < entries; i++) {
+            key += readVarint(bytes, position);
+            int count = readVarint(bytes, position);
+            manifest.put(key >> 2, key & 3, count);
+        }
+        return manifest;
+    }
+
+    private static int packKey(int regionId, int plane) {
+        return regionId << 2 | plane;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (position[0] >= bytes.length || shift > 28) {
+                throw new IllegalArgumentException("Truncated region manifest");
+            }
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
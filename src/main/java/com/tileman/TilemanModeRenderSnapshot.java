@@ -0,0 +1,60 @@
+package com.tileman;
+
+import lombok.Value;
+
+import java.awt.Color;
+
+/**
+ * Everything the overlays need to draw a frame, captured once per game tick.
+ * Overlays read the latest snapshot instead of calling into the plugin, config or client per tile, so a steady
+ * frame computes and allocates nothing of its own.
+ */
+@Value
+class TilemanModeRenderSnapshot {
+
+    static final TilemanModeRenderSnapshot EMPTY = new TilemanModeRenderSnapshot(
+            Color.WHITE, Color.WHITE, Color.WHITE, "0", "0", "0", false,
+            false, false, TilemanModeConfig.TilemanRenderMode.TILES,
+            false, 0, 0, 0, 0, TilemanModeFrameGovernor.Level.FULL);
+
+    // colour of the player's tiles in the scene and on the minimap, which turns red/orange as tiles run out
+    Color tileColor;
+    // colour of the player's tiles on the world map, which never shows the warning colours
+    Color worldMapTileColor;
+    Color infoTextColor;
+
+    String remainingTilesText;
+    String unlockedTilesText;
+    String xpUntilNextTileText;
+    boolean showXpUntilNextTile;
+
+    boolean drawOnMinimap;
+    boolean drawOnWorldMap;
+    TilemanModeConfig.TilemanRenderMode renderMode;
+
+    boolean playerInScene;
+    int plane;
+    int playerSceneX;
+    int playerSceneY;
+
+    // per overlay, 0 when detail is never reduced
+    long frameBudgetNanos;
+    // the lowest quality any overlay is currently drawing at
+    TilemanModeFrameGovernor.Level overlayQuality;
+
+    /**
+     * Formats a count with thousands separators, e.g. 1234567 as "1,234,567".
+     */
+    static String formatCount(int number) {
+        String input = Integer.toString(number);
+        StringBuilder output = new StringBuilder();
+        for(int x = input.length() - 1; x >= 0; x--) {
+            int lastPosition = input.length() - x - 1;
+            if(lastPosition != 0 && lastPosition % 3 == 0) {
+                output.append(",");
+            }
+            output.append(input.charAt(x));
+        }
+        return output.reverse().toString();
+    }
+}
@@ -0,0 +1,109 @@
+package com.tileman;
+
+import net.runelite.api.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Claim bitmap over the loaded scene, indexed by scene coordinates. Each plane is a 13x13 grid of 8x8 tile chunks,
+ * with each chunk packed into a single long, so "is this scene tile claimed" is a constant time bit test with no
+ * WorldPoint allocation, and walking the claims near the player only touches the chunks within range.
+ * Rebuilt whenever the scene's tiles to render are refreshed, and kept in step with claims made in between.
+ */
+class TilemanModeSceneIndex {
+
+    static final int SCENE_SIZE = Constants.SCENE_SIZE;
+    static final int PLANES = 4;
+    private static final int CHUNK_SIZE = 8;
+    private static final int CHUNKS_PER_SIDE = (SCENE_SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+    private final long[][] planes = new long[PLANES][CHUNKS_PER_SIDE * CHUNKS_PER_SIDE];
+
+    // bumped on every change, so anything derived from the index can tell when it is stale
+    private int version = 0;
+
+    interface SceneTileVisitor {
+        void visit(int sceneX, int sceneY);
+    }
+
+    boolean contains(int plane, int sceneX, int sceneY) {
+        if (!isInScene(plane, sceneX, sceneY)) {
+            return false;
+        }
+        return (planes[plane][chunkIndex(sceneX, sceneY)] & chunkBit(sceneX, sceneY)) != 0;
+    }
+
+    void set(int plane, int sceneX, int sceneY) {
+        if (!isInScene(plane, sceneX, sceneY)) {
+            return;
+        }
+        planes[plane][chunkIndex(sceneX, sceneY)] |= chunkBit(sceneX, sceneY);
+        version++;
+    }
+
+    void clear(int plane, int sceneX, int sceneY) {
+        if (!isInScene(plane, sceneX, sceneY)) {
+            return;
+        }
+        planes[plane][chunkIndex(sceneX, sceneY)] &= ~chunkBit(sceneX, sceneY);
+        version++;
+    }
+
+    void reset() {
+        for (long[] plane : planes) {
+            Arrays.fill(plane, 0L);
+        }
+        version++;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Visits every set tile on the plane no more than {@code distance} tiles from the centre along either axis,
+     * matching {@link net.runelite.api.coords.WorldPoint#distanceTo}. Only the chunks overlapping that square are read.
+     */
+    void forEachWithin(int plane, int centerX, int centerY, int distance, SceneTileVisitor visitor) {
+        if (plane < 0 || plane >= PLANES) {
+            return;
+        }
+        int minX = Math.max(0, centerX - distance);
+        int maxX = Math.min(SCENE_SIZE - 1, centerX + distance);
+        int minY = Math.max(0, centerY - distance);
+        int maxY = Math.min(SCENE_SIZE - 1, centerY + distance);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        long[] chunks = planes[plane];
+        for (int chunkY = minY / CHUNK_SIZE; chunkY <= maxY / CHUNK_SIZE; chunkY++) {
+            for (int chunkX = minX / CHUNK_SIZE; chunkX <= maxX / CHUNK_SIZE; chunkX++) {
+                long chunk = chunks[chunkY * CHUNKS_PER_SIDE + chunkX];
+                while (chunk != 0) {
+                    int bit = Long.numberOfTrailingZeros(chunk);
+                    chunk &= chunk - 1;
+                    int sceneX = chunkX * CHUNK_SIZE + (bit % CHUNK_SIZE);
+                    int sceneY = chunkY * CHUNK_SIZE + (bit / CHUNK_SIZE);
+                    if (sceneX >= minX && sceneX <= maxX && sceneY >= minY && sceneY <= maxY) {
+                        visitor.visit(sceneX, sceneY);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int chunkIndex(int sceneX, int sceneY) {
+        return (sceneY / CHUNK_SIZE) * CHUNKS_PER_SIDE + sceneX / CHUNK_SIZE;
+    }
+
+    private static long chunkBit(int sceneX, int sceneY) {
+        return 1L << ((sceneY % CHUNK_SIZE) * CHUNK_SIZE + sceneX % CHUNK_SIZE);
+    }
+
+    private static boolean isInScene(int plane, int sceneX, int sceneY) {
+        return plane >= 0 && plane < PLANES
+                && sceneX >= 0 && sceneX < SCENE_SIZE
+                && sceneY >= 0 && sceneY < SCENE_SIZE;
+    }
+}
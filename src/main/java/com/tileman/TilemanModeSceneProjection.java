@@ -0,0 +1,121 @@
+package com.tileman;
+
+import net.runelite.api.Client;
+import net.runelite.api.Constants;
+import net.runelite.api.Perspective;
+import net.runelite.api.Point;
+
+import java.util.Arrays;
+
+/**
+ * Canvas positions of the loaded scene's tile corners for the current camera, shared by everything the scene overlay
+ * draws. A corner is projected the first time it is asked for and kept until the camera, the plane or the drawn
+ * tiles change, so a still camera re-projects nothing and allocates nothing.
+ */
+class TilemanModeSceneProjection {
+
+    static final int VERTICES_PER_SIDE = TilemanModeSceneIndex.SCENE_SIZE + 1;
+    private static final int BRIDGE_TILE = 2;
+
+    // projected corners, valid while projectionStamp[i] == stamp
+    private final int[] projectedX = new int[VERTICES_PER_SIDE * VERTICES_PER_SIDE];
+    private final int[] projectedY = new int[VERTICES_PER_SIDE * VERTICES_PER_SIDE];
+    private final int[] projectionStamp = new int[VERTICES_PER_SIDE * VERTICES_PER_SIDE];
+    private int stamp = 1;
+    private final int[] cameraState = new int[12];
+    private final int[] nextCameraState = new int[12];
+    private Object projectedTiles;
+
+    private Client client;
+    private int plane;
+
+    /**
+     * Starts a frame, dropping every projected corner if anything they were projected from has changed.
+     *
+     * @param tiles what is being drawn. Corner heights are only known for the scene it was built in, so a
+     *              different object or version means projecting again.
+     */
+    void update(Client client, int plane, Object tiles, int tilesVersion) {
+        this.client = client;
+        this.plane = plane;
+
+        int[] state = nextCameraState;
+        state[0] = client.getCameraX();
+        state[1] = client.getCameraY();
+        state[2] = client.getCameraZ();
+        state[3] = client.getCameraPitch();
+        state[4] = client.getCameraYaw();
+        state[5] = client.getScale();
+        state[6] = client.getViewportWidth();
+        state[7] = client.getViewportHeight();
+        state[8] = client.getViewportXOffset();
+        state[9] = client.getViewportYOffset();
+        state[10] = plane;
+        state[11] = tilesVersion;
+        if (tiles != projectedTiles || !Arrays.equals(state, cameraState)) {
+            System.arraycopy(state, 0, cameraState, 0, state.length);
+            projectedTiles = tiles;
+            stamp++;
+        }
+    }
+
+    /**
+     * @return a value that changes whenever the projected corners are dropped
+     */
+    int getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Projects the corner if it isn't already, call {@link #update} first each frame.
+     *
+     * @return false if the corner is behind the camera or off the canvas
+     */
+    boolean project(int vertex) {
+        if (projectionStamp[vertex] == stamp) {
+            return projectedX[vertex] != Integer.MIN_VALUE;
+        }
+        projectionStamp[vertex] = stamp;
+
+        int x = vertex % VERTICES_PER_SIDE;
+        int y = vertex / VERTICES_PER_SIDE;
+        Point point = Perspective.localToCanvas(client, x << Perspective.LOCAL_COORD_BITS,
+                y << Perspective.LOCAL_COORD_BITS, height(x, y));
+        if (point == null) {
+            projectedX[vertex] = Integer.MIN_VALUE;
+            return false;
+        }
+        projectedX[vertex] = point.getX();
+        projectedY[vertex] = point.getY();
+        return true;
+    }
+
+    /**
+     * The height at a tile corner, what {@link Perspective#getTileHeight} gives for a point exactly on it.
+     */
+    private int height(int x, int y) {
+        // a bridge's tiles are drawn with the heights of the plane above
+        int tileX = Math.min(x, TilemanModeSceneIndex.SCENE_SIZE - 1);
+        int tileY = Math.min(y, TilemanModeSceneIndex.SCENE_SIZE - 1);
+        int heightPlane = plane;
+        if (plane < Constants.MAX_Z - 1 && (client.getTileSettings()[1][tileX][tileY] & BRIDGE_TILE) == BRIDGE_TILE) {
+            heightPlane = plane + 1;
+        }
+        return client.getTileHeights()[heightPlane][x][y];
+    }
+
+    int getX(int vertex) {
+        return projectedX[vertex];
+    }
+
+    int getY(int vertex) {
+        return projectedY[vertex];
+    }
+
+    /**
+     * @return the index of the tile corner, the south west corner of the scene tile with the same coordinates
+     */
+    static int vertex(int x, int y) {
+        return y * VERTICES_PER_SIDE + x;
+    }
+}
@@ -0,0 +1,235 @@
+package com.tileman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Frames of the live group sync protocol spoken between {@link TilemanModeLiveSync} clients and a
+ * {@link TilemanModeSyncRelay}. Every frame is its length in four bytes, then its type byte and body.
+ * <pre>
+ *   HELLO    client  protocol version (8), group, member, relay sequence to resume after (64)
+ *   WELCOME  relay   last client sequence received from the member (64)
+ *   CLAIMS   client  client sequence (64), claims
+ *   ACK      relay   client sequence (64)
+ *   BATCH    relay   relay sequence (64), member, claims
+ *   RESET    relay   relay sequence (64), batches after the resume point are no longer held
+ * </pre>
+ * Strings are a varint byte length and UTF-8 bytes. Claims are a varint count and the sorted claim records as varint
+ * gaps, each record packed like the claim journal: regionId (16) x (6) y (6) plane (2) claimed (1).
+ */
+final class TilemanModeSyncProtocol {
+
+    static final int VERSION = 1;
+
+    static final byte HELLO = 1;
+    static final byte WELCOME = 2;
+    static final byte CLAIMS = 3;
+    static final byte ACK = 4;
+    static final byte BATCH = 5;
+    static final byte RESET = 6;
+
+    // a batch is split long before this, anything bigger is not a real frame
+    private static final int MAX_FRAME_BYTES = 1024 * 1024;
+    static final int MAX_BATCH_CLAIMS = 16384;
+
+    private TilemanModeSyncProtocol() {
+    }
+
+    /**
+     * A received frame, its type and body.
+     */
+    static final class Frame {
+        final byte type;
+        final ByteBuffer body;
+
+        private Frame(byte type, ByteBuffer body) {
+            this.type = type;
+            this.body = body;
+        }
+    }
+
+    static int packClaim(int regionId, int regionX, int regionY, int plane, boolean claimed) {
+        return regionId << 15 | regionX << 9 | regionY << 3 | plane << 1 | (claimed ? 1 : 0);
+    }
+
+    static int claimRegionId(int claim) {
+        return claim >>> 15;
+    }
+
+    static int claimRegionX(int claim) {
+        return claim >>> 9 & 0x3F;
+    }
+
+    static int claimRegionY(int claim) {
+        return claim >>> 3 & 0x3F;
+    }
+
+    static int claimPlane(int claim) {
+        return claim >>> 1 & 3;
+    }
+
+    static boolean isClaimed(int claim) {
+        return (claim & 1) != 0;
+    }
+
+    static byte[] hello(String group, String member, long resumeSequence) {
+        ByteArrayOutputStream out = start(HELLO);
+        out.write(VERSION);
+        writeString(out, group);
+        writeString(out, member);
+        writeLong(out, resumeSequence);
+        return finish(out);
+    }
+
+    static byte[] welcome(long clientSequence) {
+        ByteArrayOutputStream out = start(WELCOME);
+        writeLong(out, clientSequence);
+        return finish(out);
+    }
+
+    static byte[] claims(long clientSequence, int[] claims) {
+        ByteArrayOutputStream out = start(CLAIMS);
+        writeLong(out, clientSequence);
+        writeClaims(out, claims);
+        return finish(out);
+    }
+
+    static byte[] ack(long clientSequence) {
+        ByteArrayOutputStream out = start(ACK);
+        writeLong(out, clientSequence);
+        return finish(out);
+    }
+
+    static byte[] batch(long relaySequence, String member, int[] claims) {
+        ByteArrayOutputStream out = start(BATCH);
+        writeLong(out, relaySequence);
+        writeString(out, member);
+        writeClaims(out, claims);
+        return finish(out);
+    }
+
+    static byte[] reset(long relaySequence) {
+        ByteArrayOutputStream out = start(RESET);
+        writeLong(out, relaySequence);
+        return finish(out);
+    }
+
+    static void write(OutputStream out, byte[] frame) throws IOException {
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * Blocks until a whole frame has been read.
+     *
+     * @throws java.io.EOFException if the stream ended
+     * @throws IOException if the frame is malformed
+     */
+    static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Malformed sync frame of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new Frame(bytes[0], ByteBuffer.wrap(bytes, 1, length - 1).slice());
+    }
+
+    static long readLong(ByteBuffer body) throws IOException {
+        if (body.remaining() < 8) {
+            throw new IOException("Malformed sync frame");
+        }
+        return body.getLong();
+    }
+
+    static String readString(ByteBuffer body) throws IOException {
+        int length = readVarint(body);
+        if (length > body.remaining()) {
+            throw new IOException("Malformed sync frame");
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int[] readClaims(ByteBuffer body) throws IOException {
+        int count = readVarint(body);
+        if (count > body.remaining()) {
+            throw new IOException("Malformed sync frame");
+        }
+        int[] claims = new int[count];
+        int claim = 0;
+        for (int i = 0; i < count; i++) {
+            claim += readVarint(body);
+            claims[i] = claim;
+        }
+        return claims;
+    }
+
+    private static ByteArrayOutputStream start(byte type) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        // room for the length, filled in by finish
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(type);
+        return out;
+    }
+
+    private static byte[] finish(ByteArrayOutputStream out) {
+        byte[] frame = out.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        TilemanModeTileCodec.writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeClaims(ByteArrayOutputStream out, int[] claims) {
+        int[] sorted = claims.clone();
+        Arrays.sort(sorted);
+        TilemanModeTileCodec.writeVarint(out, sorted.length);
+        int previous = 0;
+        for (int claim : sorted) {
+            TilemanModeTileCodec.writeVarint(out, claim - previous);
+            previous = claim;
+        }
+    }
+
+    private static int readVarint(ByteBuffer body) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!body.hasRemaining()) {
+                throw new IOException("Malformed sync frame");
+            }
+            byte b = body.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Malformed sync frame");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed sync frame");
+    }
+}
@@ -0,0 +1,279 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small relay for {@link TilemanModeLiveSync}, fanning each member's claim batches out to the rest of their group.
+ * It can be embedded in the plugin, run on its own or bound to loopback for tests.
+ *
+ * Every batch the relay forwards takes the group's next sequence number and the last {@link #HISTORY_LIMIT} are
+ * kept, so a member who reconnects is sent what they missed. A member who was gone longer is sent a
+ * {@link TilemanModeSyncProtocol#RESET} first. Each connection has a bounded queue of frames to send. A member who
+ * can't keep up is disconnected rather than queued for without limit, and catches up from the history on reconnect.
+ */
+@Slf4j
+class TilemanModeSyncRelay {
+
+    static final int HISTORY_LIMIT = 65536;
+    static final int MAX_QUEUED_FRAMES = 1024;
+    // poison frame telling a connection's writer to stop
+    private static final byte[] CLOSE = new byte[0];
+
+    private static final class Entry {
+        private final long sequence;
+        private final String member;
+        private final byte[] frame;
+
+        private Entry(long sequence, String member, byte[] frame) {
+            this.sequence = sequence;
+            this.member = member;
+            this.frame = frame;
+        }
+    }
+
+    private static final class Group {
+        private final ArrayDeque<Entry> history = new ArrayDeque<>();
+        // member -> the last client sequence received from them
+        private final Map<String, Long> clientSequences = new HashMap<>();
+        private final Set<Connection> connections = new HashSet<>();
+        private long sequence;
+    }
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Group> groups = new HashMap<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private boolean closed;
+
+    /**
+     * Binds the relay.
+     *
+     * @param port the port to listen on, 0 for any free one
+     * @throws IOException if the port can't be bound
+     */
+    TilemanModeSyncRelay(InetAddress address, int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, port));
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void start() {
+        Thread acceptThread = new Thread(this::accept, "tileman-sync-relay");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Stops listening and disconnects every member.
+     */
+    void close() {
+        Set<Connection> open;
+        synchronized (this) {
+            closed = true;
+            open = new HashSet<>(connections);
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the sync relay", e);
+        }
+        for (Connection connection : open) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection = new Connection(socket);
+                synchronized (this) {
+                    if (closed) {
+                        socket.close();
+                        return;
+                    }
+                    connections.add(connection);
+                }
+                Thread reader = new Thread(connection::read, "tileman-sync-relay-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.debug("Sync relay failed to accept a connection", e);
+                }
+            }
+        }
+    }
+
+    private synchronized Group groupFor(String name) {
+        return groups.computeIfAbsent(name, n -> new Group());
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+        // the welcome and the batches missed, written before anything queued
+        private final List<byte[]> backlog = new ArrayList<>();
+        private Group group;
+        private String member;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        void read() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                TilemanModeSyncProtocol.Frame hello = TilemanModeSyncProtocol.read(in);
+                if (hello.type != TilemanModeSyncProtocol.HELLO || hello.body.get() != TilemanModeSyncProtocol.VERSION) {
+                    throw new IOException("Expected a hello for protocol version " + TilemanModeSyncProtocol.VERSION);
+                }
+                group = groupFor(TilemanModeSyncProtocol.readString(hello.body));
+                member = TilemanModeSyncProtocol.readString(hello.body);
+                join(TilemanModeSyncProtocol.readLong(hello.body));
+
+                Thread writer = new Thread(this::write, "tileman-sync-relay-writer");
+                writer.setDaemon(true);
+                writer.start();
+
+                while (true) {
+                    TilemanModeSyncProtocol.Frame frame = TilemanModeSyncProtocol.read(in);
+                    if (frame.type != TilemanModeSyncProtocol.CLAIMS) {
+                        throw new IOException("Unexpected sync frame " + frame.type);
+                    }
+                    long clientSequence = TilemanModeSyncProtocol.readLong(frame.body);
+                    forward(clientSequence, TilemanModeSyncProtocol.readClaims(frame.body));
+                    send(TilemanModeSyncProtocol.ack(clientSequence));
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Sync relay connection from {} closed", member, e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Welcomes the member and collects every batch they missed, before any new batch can be queued after them.
+         * The history can be far longer than the queue, so it doesn't go through it.
+         */
+        private void join(long resumeSequence) {
+            synchronized (group) {
+                backlog.add(TilemanModeSyncProtocol.welcome(group.clientSequences.getOrDefault(member, 0L)));
+
+                long oldest = group.history.isEmpty() ? group.sequence + 1 : group.history.peekFirst().sequence;
+                // resuming from before the history, or from a sequence a restarted relay never reached
+                if (resumeSequence < oldest - 1 || resumeSequence > group.sequence) {
+                    resumeSequence = oldest - 1;
+                    backlog.add(TilemanModeSyncProtocol.reset(resumeSequence));
+                }
+                for (Entry entry : group.history) {
+                    if (entry.sequence > resumeSequence && !entry.member.equals(member)) {
+                        backlog.add(entry.frame);
+                    }
+                }
+                group.connections.add(this);
+            }
+        }
+
+        private void forward(long clientSequence, int[] claims) {
+            synchronized (group) {
+                // a batch sent again after a reconnect was already forwarded
+                if (clientSequence <= group.clientSequences.getOrDefault(member, 0L)) {
+                    return;
+                }
+                group.clientSequences.put(member, clientSequence);
+                if (claims.length == 0) {
+                    return;
+                }
+
+                Entry entry = new Entry(++group.sequence, member,
+                        TilemanModeSyncProtocol.batch(group.sequence, member, claims));
+                group.history.addLast(entry);
+                if (group.history.size() > HISTORY_LIMIT) {
+                    group.history.removeFirst();
+                }
+                // a member who fell behind is removed while sending, so walk a copy
+                for (Connection connection : new ArrayList<>(group.connections)) {
+                    if (!connection.member.equals(member)) {
+                        connection.send(entry.frame);
+                    }
+                }
+            }
+        }
+
+        private void send(byte[] frame) {
+            if (!queue.offer(frame)) {
+                log.debug("Sync relay disconnecting {}, who fell {} frames behind", member, MAX_QUEUED_FRAMES);
+                close();
+            }
+        }
+
+        private void write() {
+            try {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                for (byte[] frame : backlog) {
+                    out.write(frame);
+                }
+                out.flush();
+                backlog.clear();
+
+                while (true) {
+                    byte[] frame = queue.take();
+                    if (frame == CLOSE) {
+                        return;
+                    }
+                    out.write(frame);
+                    // write out everything queued together, then flush once
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                log.debug("Sync relay failed to write to {}", member, e);
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the sync relay connection", e);
+            }
+            if (group != null) {
+                synchronized (group) {
+                    group.connections.remove(this);
+                }
+            }
+            synchronized (TilemanModeSyncRelay.this) {
+                connections.remove(this);
+            }
+            // make room for the poison frame, nothing queued will be written any more
+            queue.clear();
+            queue.offer(CLOSE);
+        }
+    }
+}
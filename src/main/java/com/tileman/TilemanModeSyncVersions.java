@@ -0,0 +1,158 @@
+package com.tileman;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When each of the player's region planes last changed, so an export can carry only the planes changed since an
+ * earlier one. Every change takes the next number in a sequence, the tile set's version. Planes that have since
+ * been emptied keep their entry, so a delta can tell importers to clear them.
+ *
+ * The history id is picked at random when the table is first made. A version only means something together with
+ * it, so an importer never applies a delta from a history it didn't follow, such as after the exporter's data was
+ * reset.
+ *
+ * Entries are sorted (regionId << 2 | plane) keys in parallel primitive arrays, like {@link TilemanModeRegionManifest}.
+ * Serialised as the history id in four bytes, then varints: the version, the entry count and (key delta, sequence)
+ * pairs.
+ */
+class TilemanModeSyncVersions {
+
+    private final int historyId;
+    private int version;
+    private int[] keys = new int[16];
+    private int[] sequences = new int[16];
+    private int size;
+    private boolean dirty;
+
+    private TilemanModeSyncVersions(int historyId) {
+        this.historyId = historyId;
+    }
+
+    /**
+     * @return an empty table starting a new history
+     */
+    static TilemanModeSyncVersions create() {
+        TilemanModeSyncVersions versions = new TilemanModeSyncVersions(ThreadLocalRandom.current().nextInt());
+        versions.dirty = true;
+        return versions;
+    }
+
+    int getHistoryId() {
+        return historyId;
+    }
+
+    synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Records a change to the region plane as the next version.
+     */
+    synchronized void bump(int regionId, int plane) {
+        int key = packKey(regionId, plane);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(sequences, index, sequences, index + 1, size - index);
+            keys[index] = key;
+            size++;
+        }
+        sequences[index] = ++version;
+        dirty = true;
+    }
+
+    /**
+     * @return the (regionId << 2 | plane) keys of every region plane changed after the version, in ascending order
+     */
+    synchronized int[] getChangedSince(int sinceVersion) {
+        int[] changed = new int[size];
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            if (sequences[i] > sinceVersion) {
+                changed[length++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(changed, length);
+    }
+
+    /**
+     * @return the table to save if it changed since last taken, otherwise null
+     */
+    synchronized byte[] takeChanges() {
+        if (!dirty) {
+            return null;
+        }
+        dirty = false;
+        return toByteArray();
+    }
+
+    private byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(12 + size * 5);
+        out.write(historyId >>> 24);
+        out.write(historyId >>> 16);
+        out.write(historyId >>> 8);
+        out.write(historyId);
+        TilemanModeTileCodec.writeVarint(out, version);
+        TilemanModeTileCodec.writeVarint(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            TilemanModeTileCodec.writeVarint(out, keys[i] - previous);
+            TilemanModeTileCodec.writeVarint(out, sequences[i]);
+            previous = keys[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a version table
+     */
+    static TilemanModeSyncVersions fromByteArray(byte[] bytes) {
+        if (bytes.length < 4) {
+            throw new IllegalArgumentException("Truncated sync versions");
+        }
+        TilemanModeSyncVersions versions = new TilemanModeSyncVersions(
+                (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF));
+        int[] position = {4};
+        versions.version = readVarint(bytes, position);
+        int entries = readVarint(bytes, position);
+        if (entries > bytes.length) {
+            throw new IllegalArgumentException("Truncated sync versions");
+        }
+        versions.keys = new int[Math.max(16, entries)];
+        versions.sequences = new int[versions.keys.length];
+        int key = 0;
+        for (int i = 0; i < entries; i++) {
+            key += readVarint(bytes, position);
+            versions.keys[i] = key;
+            versions.sequences[i] = readVarint(bytes, position);
+        }
+        versions.size = entries;
+        return versions;
+    }
+
+    private static int packKey(int regionId, int plane) {
+        return regionId << 2 | plane;
+    }
+
+    private static int readVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (position[0] >= bytes.length || shift > 28) {
+                throw new IllegalArgumentException("Truncated sync versions");
+            }
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,237 @@
+package com.tileman;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+
+/**
+ * Encodes region bitmaps to and from their config string formats.
+ *
+ * V2 is the raw 4096 bit BitSet of a region plane, Base64 encoded by the ConfigManager.
+ * V3 picks whichever of three encodings is smallest for the region and tags it with a leading format byte:
+ * <ul>
+ *     <li>SPARSE - the sorted 12 bit tile offsets (y * 64 + x), packed two to every three bytes</li>
+ *     <li>RUNS - alternating unclaimed/claimed run lengths over the offsets as varints, starting with unclaimed</li>
+ *     <li>BITMAP - the raw V2 BitSet bytes</li>
+ * </ul>
+ * Values can arrive truncated or corrupt, e.g. from a partial profile sync, so decoding checks every length and
+ * offset and reports a bad value as an {@link IllegalArgumentException}.
+ */
+final class TilemanModeTileCodec {
+
+    static final byte FORMAT_SPARSE = 1;
+    static final byte FORMAT_RUNS = 2;
+    static final byte FORMAT_BITMAP = 3;
+
+    private static final int TILES_PER_REGION = TilemanModeRegionBitmap.REGION_SIZE * TilemanModeRegionBitmap.REGION_SIZE;
+    private static final int BITMAP_BYTES = TILES_PER_REGION / Byte.SIZE;
+    // a run is at most TILES_PER_REGION, which fits in two varint bytes
+    private static final int MAX_VARINT_BYTES = 2;
+
+    private TilemanModeTileCodec() {
+    }
+
+    static TilemanModeRegionBitmap decodeV2(String encoded) {
+        return TilemanModeRegionBitmap.fromByteArray(Base64.getUrlDecoder().decode(encoded));
+    }
+
+    static String encodeV3(TilemanModeRegionBitmap bitmap) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(toV3Bytes(bitmap));
+    }
+
+    static TilemanModeRegionBitmap decodeV3(String encoded) {
+        return fromV3Bytes(Base64.getUrlDecoder().decode(encoded));
+    }
+
+    static byte[] toV3Bytes(TilemanModeRegionBitmap bitmap) {
+        byte[] raw = bitmap.toByteArray();
+        int sparseSize = 3 + (bitmap.cardinality() * 3 + 1) / 2;
+        int runsSize = 1 + runsLength(bitmap);
+        int bitmapSize = 1 + raw.length;
+
+        if (sparseSize <= runsSize && sparseSize <= bitmapSize) {
+            return toSparse(bitmap, sparseSize);
+        }
+        if (runsSize <= bitmapSize) {
+            return toRuns(bitmap, runsSize);
+        }
+
+        byte[] out = new byte[bitmapSize];
+        out[0] = FORMAT_BITMAP;
+        System.arraycopy(raw, 0, out, 1, raw.length);
+        return out;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a well formed V3 value
+     */
+    static TilemanModeRegionBitmap fromV3Bytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new TilemanModeRegionBitmap();
+        }
+
+        switch (bytes[0]) {
+            case FORMAT_SPARSE:
+                return fromSparse(bytes);
+            case FORMAT_RUNS:
+                return fromRuns(bytes);
+            case FORMAT_BITMAP:
+                if (bytes.length - 1 > BITMAP_BYTES) {
+                    throw new IllegalArgumentException("V3 tile bitmap is " + (bytes.length - 1) + " bytes");
+                }
+                byte[] raw = new byte[bytes.length - 1];
+                System.arraycopy(bytes, 1, raw, 0, raw.length);
+                return TilemanModeRegionBitmap.fromByteArray(raw);
+            default:
+                throw new IllegalArgumentException("Unknown V3 tile format " + bytes[0]);
+        }
+    }
+
+    private static byte[] toSparse(TilemanModeRegionBitmap bitmap, int size) {
+        byte[] out = new byte[size];
+        int count = bitmap.cardinality();
+        out[0] = FORMAT_SPARSE;
+        out[1] = (byte) (count >> 8);
+        out[2] = (byte) count;
+
+        int position = 3;
+        int pending = -1;
+        for (int y = 0; y < TilemanModeRegionBitmap.REGION_SIZE; y++) {
+            long row = bitmap.getRow(y);
+            while (row != 0) {
+                int offset = y * TilemanModeRegionBitmap.REGION_SIZE + Long.numberOfTrailingZeros(row);
+                row &= row - 1;
+                if (pending < 0) {
+                    pending = offset;
+                    continue;
+                }
+                // two 12 bit offsets fit in three bytes
+                out[position++] = (byte) (pending >> 4);
+                out[position++] = (byte) ((pending << 4) | (offset >> 8));
+                out[position++] = (byte) offset;
+                pending = -1;
+            }
+        }
+        if (pending >= 0) {
+            out[position++] = (byte) (pending >> 4);
+            out[position] = (byte) (pending << 4);
+        }
+        return out;
+    }
+
+    private static TilemanModeRegionBitmap fromSparse(byte[] bytes) {
+        if (bytes.length < 3) {
+            throw new IllegalArgumentException("V3 sparse tiles are missing their count");
+        }
+        int count = ((bytes[1] & 0xFF) << 8) | (bytes[2] & 0xFF);
+        if (count > TILES_PER_REGION || bytes.length != 3 + (count * 3 + 1) / 2) {
+            throw new IllegalArgumentException("V3 sparse tiles are " + bytes.length + " bytes for " + count + " tiles");
+        }
+
+        // every offset is 12 bits, so it is always within the region
+        TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+        int position = 3;
+        for (int i = 0; i < count; i++) {
+            int offset;
+            if ((i & 1) == 0) {
+                offset = ((bytes[position] & 0xFF) << 4) | ((bytes[position + 1] & 0xFF) >> 4);
+            } else {
+                offset = ((bytes[position + 1] & 0x0F) << 8) | (bytes[position + 2] & 0xFF);
+                position += 3;
+            }
+            bitmap.set(offset % TilemanModeRegionBitmap.REGION_SIZE, offset / TilemanModeRegionBitmap.REGION_SIZE);
+        }
+        return bitmap;
+    }
+
+    private static int runsLength(TilemanModeRegionBitmap bitmap) {
+        int[] length = new int[1];
+        forEachRun(bitmap, run -> length[0] += varintLength(run));
+        return length[0];
+    }
+
+    private static byte[] toRuns(TilemanModeRegionBitmap bitmap, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write(FORMAT_RUNS);
+        forEachRun(bitmap, run -> writeVarint(out, run));
+        return out.toByteArray();
+    }
+
+    private static TilemanModeRegionBitmap fromRuns(byte[] bytes) {
+        TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+        int offset = 0;
+        boolean claimed = false;
+        int position = 1;
+        while (position < bytes.length) {
+            int run = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position == bytes.length || shift == MAX_VARINT_BYTES * 7) {
+                    throw new IllegalArgumentException("V3 tile run is truncated or too long");
+                }
+                b = bytes[position++];
+                run |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            if (run > TILES_PER_REGION - offset) {
+                throw new IllegalArgumentException("V3 tile runs go past the end of the region");
+            }
+            if (claimed) {
+                int end = offset + run;
+                for (int i = offset; i < end; i++) {
+                    bitmap.set(i % TilemanModeRegionBitmap.REGION_SIZE, i / TilemanModeRegionBitmap.REGION_SIZE);
+                }
+            }
+            offset += run;
+            claimed = !claimed;
+        }
+        return bitmap;
+    }
+
+    private interface RunVisitor {
+        void visit(int run);
+    }
+
+    /**
+     * Visits alternating unclaimed/claimed run lengths in offset order, starting with an unclaimed run
+     * (which may be zero). The trailing unclaimed run is not visited.
+     */
+    private static void forEachRun(TilemanModeRegionBitmap bitmap, RunVisitor visitor) {
+        boolean claimed = false;
+        int runStart = 0;
+        for (int offset = 0; offset < TILES_PER_REGION; offset++) {
+            long row = bitmap.getRow(offset / TilemanModeRegionBitmap.REGION_SIZE);
+            if (!claimed && row == 0 && offset % TilemanModeRegionBitmap.REGION_SIZE == 0) {
+                // skip whole empty rows while in an unclaimed run
+                offset += TilemanModeRegionBitmap.REGION_SIZE - 1;
+                continue;
+            }
+            boolean tileClaimed = (row & (1L << (offset % TilemanModeRegionBitmap.REGION_SIZE))) != 0;
+            if (tileClaimed != claimed) {
+                visitor.visit(offset - runStart);
+                runStart = offset;
+                claimed = tileClaimed;
+            }
+        }
+        if (claimed) {
+            visitor.visit(TILES_PER_REGION - runStart);
+        }
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,219 @@
+package com.tileman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compact group tile set export: "tileman2:" followed by the Base64url encoded, Deflate compressed payload
+ * <ul>
+ *     <li>the player name, as a varint byte length and its UTF-8 bytes</li>
+ *     <li>the exporter's sync history id in four bytes, then the base version and version as varints</li>
+ *     <li>the number of region planes, as a varint</li>
+ *     <li>per region plane, in (region, plane) order: the gap since the previous (regionId &lt;&lt; 2 | plane) and
+ *     the length of its V3 tile bytes as varints, then the V3 bytes from {@link TilemanModeTileCodec}</li>
+ * </ul>
+ * A base version of 0 means the export holds the whole tile set and only non-empty planes are listed. Otherwise it
+ * is a delta holding every plane changed since the base version, including planes that are now empty.
+ * Version 1 exports are the same without the sync fields, and are read as whole tile sets.
+ *
+ * The number after "tileman" is the format version. A version this plugin doesn't know is rejected rather than
+ * guessed at, so a newer export fails with a clear message.
+ */
+final class TilemanModeTileSetCodec {
+
+    static final String MAGIC = "tileman";
+    static final int VERSION = 2;
+    private static final String PREFIX = MAGIC + VERSION + ":";
+    private static final String PREFIX_V1 = MAGIC + 1 + ":";
+
+    private static final int PLANES = 4;
+    // every region of the map claimed on every plane is far less than this, anything bigger is not a real export
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+    private TilemanModeTileSetCodec() {
+    }
+
+    /**
+     * @return true if the text looks like a compact export rather than JSON
+     */
+    static boolean isCompact(String text) {
+        return text.startsWith(MAGIC);
+    }
+
+    /**
+     * @param baseVersion the version a delta follows on from, 0 to export the whole tile set
+     * @param regions region id -> the region's tiles by plane. In a delta, null for planes that didn't change.
+     */
+    static String encode(String playerName, int historyId, int baseVersion, int version,
+                         Map<Integer, TilemanModeRegionBitmap[]> regions) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        byte[] name = playerName.getBytes(StandardCharsets.UTF_8);
+        TilemanModeTileCodec.writeVarint(payload, name.length);
+        payload.write(name, 0, name.length);
+        payload.write(historyId >>> 24);
+        payload.write(historyId >>> 16);
+        payload.write(historyId >>> 8);
+        payload.write(historyId);
+        TilemanModeTileCodec.writeVarint(payload, baseVersion);
+        TilemanModeTileCodec.writeVarint(payload, version);
+
+        boolean delta = baseVersion > 0;
+        Map<Integer, TilemanModeRegionBitmap> planes = new TreeMap<>();
+        for (Map.Entry<Integer, TilemanModeRegionBitmap[]> region : regions.entrySet()) {
+            for (int plane = 0; plane < PLANES; plane++) {
+                TilemanModeRegionBitmap bitmap = region.getValue()[plane];
+                // a delta lists emptied planes too, so importers clear them
+                if (bitmap != null && (delta || !bitmap.isEmpty())) {
+                    planes.put(region.getKey() << 2 | plane, bitmap);
+                }
+            }
+        }
+
+        TilemanModeTileCodec.writeVarint(payload, planes.size());
+        int previousKey = 0;
+        for (Map.Entry<Integer, TilemanModeRegionBitmap> plane : planes.entrySet()) {
+            byte[] tiles = TilemanModeTileCodec.toV3Bytes(plane.getValue());
+            TilemanModeTileCodec.writeVarint(payload, plane.getKey() - previousKey);
+            TilemanModeTileCodec.writeVarint(payload, tiles.length);
+            payload.write(tiles, 0, tiles.length);
+            previousKey = plane.getKey();
+        }
+
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(deflate(payload.toByteArray()));
+    }
+
+    /**
+     * @throws IOException if the text isn't a compact export this version can read
+     */
+    static TilemanModeTileSetReader.TileSet decode(String text) throws IOException {
+        int separator = text.indexOf(':');
+        if (!isCompact(text) || separator < 0) {
+            throw new IOException("Not a compact tile set");
+        }
+        String prefix = text.substring(0, separator + 1);
+        if (!PREFIX.equals(prefix) && !PREFIX_V1.equals(prefix)) {
+            throw new IOException("Unsupported tile set version " + text.substring(MAGIC.length(), separator));
+        }
+
+        ByteBuffer payload;
+        try {
+            payload = ByteBuffer.wrap(inflate(Base64.getUrlDecoder().decode(text.substring(separator + 1).trim())));
+        } catch (IllegalArgumentException | DataFormatException e) {
+            throw new IOException("Malformed tile set", e);
+        }
+
+        try {
+            byte[] name = readBytes(payload);
+            int historyId = 0;
+            int baseVersion = 0;
+            int version = 0;
+            if (PREFIX.equals(prefix)) {
+                historyId = payload.getInt();
+                baseVersion = readVarint(payload);
+                version = readVarint(payload);
+            }
+            boolean delta = baseVersion > 0;
+
+            Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+            int tileCount = 0;
+            int count = readVarint(payload);
+            int key = 0;
+            for (int i = 0; i < count; i++) {
+                key += readVarint(payload);
+                byte[] tiles = readBytes(payload);
+
+                TilemanModeRegionBitmap bitmap = TilemanModeTileCodec.fromV3Bytes(tiles);
+                TilemanModeRegionBitmap[] planes = regions.get(key >>> 2);
+                if (planes == null) {
+                    // planes left out of a whole tile set are empty, those left out of a delta are unchanged
+                    planes = new TilemanModeRegionBitmap[PLANES];
+                    for (int plane = 0; plane < PLANES && !delta; plane++) {
+                        planes[plane] = new TilemanModeRegionBitmap();
+                    }
+                    regions.put(key >>> 2, planes);
+                }
+                planes[key & 3] = bitmap;
+                tileCount += bitmap.cardinality();
+            }
+            if (payload.hasRemaining()) {
+                throw new IOException("Unexpected data after tile set");
+            }
+            return new TilemanModeTileSetReader.TileSet(new String(name, StandardCharsets.UTF_8), regions, tileCount,
+                    historyId, baseVersion, version);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed tile set", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws DataFormatException, IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated tile set");
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_PAYLOAD_BYTES) {
+                    throw new IOException("Tile set is too large");
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) throws IOException {
+        int length = readVarint(buffer);
+        if (length > buffer.remaining()) {
+            throw new IOException("Malformed tile set");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Malformed tile set");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed tile set");
+    }
+}
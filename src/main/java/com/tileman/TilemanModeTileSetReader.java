@@ -0,0 +1,198 @@
+package com.tileman;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.Value;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.CancellationException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Streams a group tile set export, {"playerName": ..., "regionTiles": {"region_<id>": [tiles], ...}}, straight into
+ * one bitmap per region plane. Tiles are never built as objects, so reading a large export only holds the bitmaps
+ * it fills, a few hundred bytes per claimed region plane.
+ *
+ * The format is the one the legacy group tileman plugin exported, and these keys must not change.
+ */
+class TilemanModeTileSetReader {
+
+    private static final String PLAYER_NAME = "playerName";
+    private static final String REGION_TILES = "regionTiles";
+    private static final int PLANES = 4;
+    private static final int PROGRESS_STEP = 25;
+
+    @Value
+    static class TileSet {
+        String playerName;
+        // region id -> the region's tiles by plane. In a delta, planes that didn't change are null.
+        Map<Integer, TilemanModeRegionBitmap[]> regions;
+        int tileCount;
+        // the exporter's sync history and version, 0 when the export has none
+        int historyId;
+        // the version a delta follows on from, 0 for a whole tile set
+        int baseVersion;
+        int version;
+
+        boolean isDelta() {
+            return baseVersion > 0;
+        }
+    }
+
+    private TilemanModeTileSetReader() {
+    }
+
+    /**
+     * @param onProgress called with the percentage of the export read each time another quarter is done
+     * @return the tile set, with a null player name if the export has none
+     * @throws IOException if the export isn't well formed
+     */
+    static TileSet read(String json, IntConsumer onProgress) throws IOException {
+        ProgressReader progressReader = new ProgressReader(new StringReader(json), json.length(), onProgress);
+        String playerName = null;
+        Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+        int tileCount = 0;
+
+        try (JsonReader reader = new JsonReader(progressReader)) {
+            // Gson.fromJson read exports leniently, so anything it accepted still imports
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (PLAYER_NAME.equals(name)) {
+                    playerName = reader.nextString();
+                } else if (REGION_TILES.equals(name)) {
+                    tileCount += readRegionTiles(reader, regions);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected data after tile set");
+            }
+        } catch (CancellationException e) {
+            // the import was cancelled through the progress callback, not malformed
+            throw e;
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports the wrong token type as an IllegalStateException
+            throw new IOException("Malformed tile set", e);
+        }
+        return new TileSet(playerName, regions, tileCount, 0, 0, 0);
+    }
+
+    private static int readRegionTiles(JsonReader reader, Map<Integer, TilemanModeRegionBitmap[]> regions) throws IOException {
+        int tileCount = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            // the region comes from the key, "region_<id>", as it always has on import
+            String regionKey = reader.nextName();
+            if (!regionKey.startsWith(TilemanModePlugin.REGION_PREFIX_V1)) {
+                throw new IOException("Unexpected region key " + regionKey);
+            }
+            int regionId = Integer.parseInt(regionKey.substring(TilemanModePlugin.REGION_PREFIX_V1.length()));
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            TilemanModeRegionBitmap[] planes = regions.get(regionId);
+            if (planes == null) {
+                planes = new TilemanModeRegionBitmap[PLANES];
+                for (int plane = 0; plane < PLANES; plane++) {
+                    planes[plane] = new TilemanModeRegionBitmap();
+                }
+                regions.put(regionId, planes);
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                // a missing or null coordinate is 0, as Gson read it
+                int regionX = 0;
+                int regionY = 0;
+                int plane = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    switch (name) {
+                        case "regionX":
+                            regionX = reader.nextInt();
+                            break;
+                        case "regionY":
+                            regionY = reader.nextInt();
+                            break;
+                        case "z":
+                            plane = reader.nextInt();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (regionX >= 0 && regionX < TilemanModeRegionBitmap.REGION_SIZE
+                        && regionY >= 0 && regionY < TilemanModeRegionBitmap.REGION_SIZE
+                        && plane >= 0 && plane < PLANES && planes[plane].set(regionX, regionY)) {
+                    tileCount++;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return tileCount;
+    }
+
+    /**
+     * Counts the characters the JSON reader has pulled, to report how far through the export it is.
+     */
+    private static class ProgressReader extends FilterReader {
+        private final long length;
+        private final IntConsumer onProgress;
+        private long read = 0;
+        private int nextReport = PROGRESS_STEP;
+
+        ProgressReader(Reader in, long length, IntConsumer onProgress) {
+            super(in);
+            this.length = length;
+            this.onProgress = onProgress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0) {
+                advance(1);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(int n) {
+            read += n;
+            int percent = (int) (read * 100 / length);
+            if (percent >= nextReport && percent < 100) {
+                onProgress.accept(percent);
+                nextReport = (percent / PROGRESS_STEP + 1) * PROGRESS_STEP;
+            }
+        }
+    }
+}
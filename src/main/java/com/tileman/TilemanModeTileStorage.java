@@ -0,0 +1,56 @@
+package com.tileman;
+
+import java.util.Set;
+
+/**
+ * Where the tile store keeps region bitmaps between sessions. Keys are a config style prefix
+ * (e.g. "regionv3_" or "imported_Name_") together with a region id and plane.
+ */
+interface TilemanModeTileStorage {
+
+    /**
+     * @return the stored bitmap, or {@link TilemanModeRegionBitmap#EMPTY} if nothing is stored
+     */
+    TilemanModeRegionBitmap read(String prefix, int regionId, int plane);
+
+    /**
+     * Stores the bitmap, removing the entry instead when the bitmap is empty.
+     */
+    void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap);
+
+    /**
+     * @return every region id with data stored under the prefix, on any plane
+     */
+    Set<Integer> getRegionIds(String prefix);
+
+    /**
+     * @return every distinct tile set prefix stored that starts with the given string, e.g. all "imported_Name_"
+     * prefixes when given "imported_"
+     */
+    Set<String> getPrefixes(String startingWith);
+
+    /**
+     * @return the saved {@link TilemanModeRegionManifest} bytes for the prefix, or null if the manifest has to be
+     * rebuilt from the stored regions
+     */
+    byte[] readManifest(String prefix);
+
+    /**
+     * Saves the manifest for the prefix. Backends that can list regions and counts cheaply may ignore it.
+     */
+    void writeManifest(String prefix, byte[] manifest);
+
+    /**
+     * Removes everything stored under the prefix, including its manifest.
+     *
+     * @return the number of region planes removed
+     */
+    int deletePrefix(String prefix);
+
+    /**
+     * Makes sure everything written so far will survive a crash.
+     */
+    void sync();
+
+    void close();
+}
@@ -0,0 +1,386 @@
+package com.tileman;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resident copy of the claimed tile bitmaps, keyed by config prefix, region and plane.
+ * Each region plane is read from the storage backend the first time it is asked for and kept in memory from then on.
+ * Changes are held as dirty region planes and written back to the storage when {@link #flush()} is called, so
+ * several claims in the same region within one flush window only cost a single write.
+ */
+@Slf4j
+class TilemanModeTileStore {
+
+    private final TilemanModeTileStorage storage;
+
+    // prefix -> (regionId << 2 | plane) -> bitmap. Regions with no data are cached as EMPTY to avoid re-reading them.
+    private final Map<String, Map<Integer, TilemanModeRegionBitmap>> regionsByPrefix = new HashMap<>();
+
+    // prefix -> (regionId << 2 | plane) of region planes changed since the last flush
+    private Map<String, Set<Integer>> dirtyByPrefix = new HashMap<>();
+
+    // prefix -> every non-empty region plane and its tile count, including changes not yet flushed
+    private final Map<String, TilemanModeRegionManifest> manifests = new HashMap<>();
+    private final Set<String> dirtyManifests = new HashSet<>();
+
+    // change counters for region planes under any prefix, hashed by (regionId << 2 | plane) into a fixed table so
+    // reading a version never boxes, and a generation bumped whenever a whole prefix is dropped. Together they let
+    // caches built from the store tell when they are stale. Region planes sharing a counter only cost a rebuild.
+    private static final int REGION_VERSION_BUCKETS = 8192;
+    private final int[] regionVersions = new int[REGION_VERSION_BUCKETS];
+    private int generation = 0;
+
+    // when each of the player's region planes last changed, for exporting only what changed. Null until set.
+    private TilemanModeSyncVersions syncVersions;
+
+    // the thread writing to storage, so listeners can tell the store's own ConfigChanged events apart from those of
+    // a profile sync or another plugin landing on a different thread meanwhile
+    private volatile Thread persistingThread;
+
+    TilemanModeTileStore(TilemanModeTileStorage storage) {
+        this.storage = storage;
+    }
+
+    TilemanModeTileStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Records every change to the player's region planes in the table from now on.
+     */
+    synchronized void setSyncVersions(TilemanModeSyncVersions syncVersions) {
+        this.syncVersions = syncVersions;
+    }
+
+    /**
+     * Returns the bitmap for the region plane. The returned bitmap is owned by the store and must not be modified.
+     */
+    synchronized TilemanModeRegionBitmap getRegion(String prefix, int regionId, int plane) {
+        return load(prefix, regionId, plane);
+    }
+
+    synchronized boolean contains(String prefix, int regionId, int regionX, int regionY, int plane) {
+        return load(prefix, regionId, plane).contains(regionX, regionY);
+    }
+
+    /**
+     * @return a value that changes whenever anything stored for the region plane may have changed, under any prefix
+     */
+    synchronized long getRegionVersion(int regionId, int plane) {
+        return ((long) generation << 32) | (regionVersions[versionBucket(packKey(regionId, plane))] & 0xFFFFFFFFL);
+    }
+
+    synchronized int cardinality(String prefix, int regionId, int plane) {
+        return manifestFor(prefix).getCount(regionId, plane);
+    }
+
+    /**
+     * @return the claimed tiles across every region under the prefix, read from the manifest without decoding bitmaps
+     */
+    synchronized int totalCardinality(String prefix) {
+        return manifestFor(prefix).total();
+    }
+
+    /**
+     * @return true if the tile was newly claimed
+     */
+    synchronized boolean set(String prefix, int regionId, int regionX, int regionY, int plane) {
+        TilemanModeRegionManifest manifest = manifestFor(prefix);
+        TilemanModeRegionBitmap bitmap = loadForWrite(prefix, regionId, plane);
+        if (!bitmap.set(regionX, regionY)) {
+            return false;
+        }
+        markDirty(prefix, regionId, plane);
+        updateManifest(prefix, manifest, regionId, plane, bitmap);
+        return true;
+    }
+
+    /**
+     * @return true if the tile was previously claimed
+     */
+    synchronized boolean clear(String prefix, int regionId, int regionX, int regionY, int plane) {
+        TilemanModeRegionManifest manifest = manifestFor(prefix);
+        TilemanModeRegionBitmap bitmap = loadForWrite(prefix, regionId, plane);
+        if (!bitmap.clear(regionX, regionY)) {
+            return false;
+        }
+        markDirty(prefix, regionId, plane);
+        updateManifest(prefix, manifest, regionId, plane, bitmap);
+        return true;
+    }
+
+    /**
+     * Replaces the whole region plane, such as when importing a tile set.
+     */
+    synchronized void putRegion(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        TilemanModeRegionManifest manifest = manifestFor(prefix);
+        TilemanModeRegionBitmap stored = bitmap == null || bitmap.isEmpty() ? TilemanModeRegionBitmap.EMPTY : bitmap;
+        regionsFor(prefix).put(packKey(regionId, plane), stored);
+        markDirty(prefix, regionId, plane);
+        updateManifest(prefix, manifest, regionId, plane, stored);
+    }
+
+    /**
+     * Claims every tile in the bitmap on top of what the region plane already holds, such as when migrating old data.
+     */
+    synchronized void mergeRegion(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        if (bitmap.isEmpty()) {
+            return;
+        }
+        TilemanModeRegionManifest manifest = manifestFor(prefix);
+        TilemanModeRegionBitmap stored = loadForWrite(prefix, regionId, plane);
+        for (int y = 0; y < TilemanModeRegionBitmap.REGION_SIZE; y++) {
+            stored.setRow(y, stored.getRow(y) | bitmap.getRow(y));
+        }
+        markDirty(prefix, regionId, plane);
+        updateManifest(prefix, manifest, regionId, plane, stored);
+    }
+
+    synchronized boolean isDirty() {
+        return !dirtyByPrefix.isEmpty();
+    }
+
+    /**
+     * Writes every region plane changed since the last flush to storage.
+     *
+     * @return the number of region planes written
+     */
+    synchronized int flush() {
+        if (dirtyByPrefix.isEmpty() && dirtyManifests.isEmpty()) {
+            return 0;
+        }
+
+        // swap the dirty set out first, config writes fire events that may call back into the store
+        Map<String, Set<Integer>> toFlush = dirtyByPrefix;
+        dirtyByPrefix = new HashMap<>();
+
+        int written = 0;
+        persistingThread = Thread.currentThread();
+        try {
+            for (Map.Entry<String, Set<Integer>> entry : toFlush.entrySet()) {
+                String prefix = entry.getKey();
+                Map<Integer, TilemanModeRegionBitmap> regions = regionsFor(prefix);
+                for (int key : entry.getValue()) {
+                    TilemanModeRegionBitmap bitmap = regions.getOrDefault(key, TilemanModeRegionBitmap.EMPTY);
+                    storage.write(prefix, key >> 2, key & 3, bitmap);
+                    written++;
+                }
+            }
+
+            for (String prefix : dirtyManifests) {
+                TilemanModeRegionManifest manifest = manifests.get(prefix);
+                if (manifest != null) {
+                    storage.writeManifest(prefix, manifest.toByteArray());
+                }
+            }
+            dirtyManifests.clear();
+        } finally {
+            persistingThread = null;
+        }
+
+        log.debug("TileManMode tile store flushed {} region keys", written);
+        return written;
+    }
+
+    /**
+     * Makes everything flushed so far durable in the storage backend. This can be expensive (the config storage saves
+     * the whole profile), so it is called when compacting the claim journal rather than on every flush.
+     */
+    synchronized void sync() {
+        persistingThread = Thread.currentThread();
+        try {
+            storage.sync();
+        } finally {
+            persistingThread = null;
+        }
+    }
+
+    /**
+     * @return true if the calling thread is the one writing to storage. ConfigManager posts ConfigChanged
+     * synchronously on the writing thread, so a listener seeing this is handling one of the store's own writes.
+     */
+    boolean isPersisting() {
+        return persistingThread == Thread.currentThread();
+    }
+
+    /**
+     * Drops a single cached region plane so it is re-read from storage on next access.
+     */
+    synchronized void evictRegion(String prefix, int regionId, int plane) {
+        int key = packKey(regionId, plane);
+        Map<Integer, TilemanModeRegionBitmap> regions = regionsByPrefix.get(prefix);
+        if (regions != null) {
+            regions.remove(key);
+        }
+        Set<Integer> dirty = dirtyByPrefix.get(prefix);
+        if (dirty != null) {
+            dirty.remove(key);
+        }
+        regionVersions[versionBucket(key)]++;
+
+        // whoever changed the region may not have kept the manifest in step, so count it again
+        TilemanModeRegionManifest manifest = manifests.get(prefix);
+        if (manifest != null) {
+            updateManifest(prefix, manifest, regionId, plane, load(prefix, regionId, plane));
+        }
+    }
+
+    /**
+     * Drops every cached region under the prefix so it is re-read from storage on next access.
+     * Unflushed changes under the prefix are discarded.
+     */
+    synchronized void evict(String prefix) {
+        regionsByPrefix.remove(prefix);
+        dirtyByPrefix.remove(prefix);
+        manifests.remove(prefix);
+        dirtyManifests.remove(prefix);
+        generation++;
+    }
+
+    /**
+     * Removes everything stored under the prefix, as well as the cached copy of it.
+     *
+     * @return the number of region planes removed
+     */
+    synchronized int deletePrefix(String prefix) {
+        int removed;
+        persistingThread = Thread.currentThread();
+        try {
+            removed = storage.deletePrefix(prefix);
+        } finally {
+            persistingThread = null;
+        }
+        evict(prefix);
+        return removed;
+    }
+
+    /**
+     * @return every region id with claims under the prefix in ascending order, including unflushed claims
+     */
+    synchronized int[] getRegionIds(String prefix) {
+        return manifestFor(prefix).getRegionIds();
+    }
+
+    /**
+     * @return the names of every imported tile set held in storage
+     */
+    synchronized Set<String> getImportedTileSetNames() {
+        flush();
+        Set<String> names = new HashSet<>();
+        for (String prefix : storage.getPrefixes(TilemanModePlugin.REGION_PREFIX_IMPORTED)) {
+            // prefixes are imported_<tileSetName>_
+            names.add(prefix.substring(TilemanModePlugin.REGION_PREFIX_IMPORTED.length(), prefix.length() - 1));
+        }
+        return names;
+    }
+
+    /**
+     * Flushes outstanding changes and releases the storage backend.
+     */
+    synchronized void close() {
+        flush();
+        sync();
+        storage.close();
+    }
+
+    /**
+     * Drops every cached region, discarding any unflushed changes. Call {@link #flush()} first to keep them.
+     */
+    synchronized void evictAll() {
+        regionsByPrefix.clear();
+        dirtyByPrefix.clear();
+        manifests.clear();
+        dirtyManifests.clear();
+        generation++;
+    }
+
+    private TilemanModeRegionBitmap load(String prefix, int regionId, int plane) {
+        Map<Integer, TilemanModeRegionBitmap> regions = regionsFor(prefix);
+        int key = packKey(regionId, plane);
+        TilemanModeRegionBitmap bitmap = regions.get(key);
+        if (bitmap == null) {
+            bitmap = storage.read(prefix, regionId, plane);
+            regions.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private TilemanModeRegionBitmap loadForWrite(String prefix, int regionId, int plane) {
+        TilemanModeRegionBitmap bitmap = load(prefix, regionId, plane);
+        if (bitmap == TilemanModeRegionBitmap.EMPTY) {
+            // never mutate the shared empty instance, give the region its own bitmap instead
+            bitmap = new TilemanModeRegionBitmap();
+            regionsFor(prefix).put(packKey(regionId, plane), bitmap);
+        }
+        return bitmap;
+    }
+
+    private TilemanModeRegionManifest manifestFor(String prefix) {
+        TilemanModeRegionManifest manifest = manifests.get(prefix);
+        if (manifest != null) {
+            return manifest;
+        }
+
+        byte[] saved = storage.readManifest(prefix);
+        if (saved != null) {
+            try {
+                manifest = TilemanModeRegionManifest.fromByteArray(saved);
+            } catch (IllegalArgumentException e) {
+                log.warn("Discarding unreadable region manifest for {}", prefix, e);
+            }
+        }
+
+        if (manifest == null) {
+            // no usable manifest saved, count every region once and save the result with the next flush
+            manifest = new TilemanModeRegionManifest();
+            Set<Integer> keys = new HashSet<>(dirtyByPrefix.getOrDefault(prefix, new HashSet<>()));
+            for (int regionId : storage.getRegionIds(prefix)) {
+                for (int plane = 0; plane < 4; plane++) {
+                    keys.add(packKey(regionId, plane));
+                }
+            }
+            for (int key : keys) {
+                manifest.put(key >> 2, key & 3, load(prefix, key >> 2, key & 3).cardinality());
+            }
+            dirtyManifests.add(prefix);
+            log.debug("TileManMode rebuilt region manifest for {} with {} region planes", prefix, manifest.size());
+        }
+
+        manifests.put(prefix, manifest);
+        return manifest;
+    }
+
+    private void updateManifest(String prefix, TilemanModeRegionManifest manifest, int regionId, int plane,
+                                TilemanModeRegionBitmap bitmap) {
+        if (manifest.put(regionId, plane, bitmap.cardinality())) {
+            dirtyManifests.add(prefix);
+        }
+    }
+
+    private void markDirty(String prefix, int regionId, int plane) {
+        int key = packKey(regionId, plane);
+        dirtyByPrefix.computeIfAbsent(prefix, p -> new HashSet<>()).add(key);
+        regionVersions[versionBucket(key)]++;
+        if (syncVersions != null && TilemanModePlugin.REGION_PREFIX_V3.equals(prefix)) {
+            syncVersions.bump(regionId, plane);
+        }
+    }
+
+    private Map<Integer, TilemanModeRegionBitmap> regionsFor(String prefix) {
+        return regionsByPrefix.computeIfAbsent(prefix, p -> new HashMap<>());
+    }
+
+    private static int packKey(int regionId, int plane) {
+        return regionId << 2 | plane;
+    }
+
+    private static int versionBucket(int key) {
+        // neighbouring regions differ in the low bits of the region id, spread them before masking
+        return (key * 0x9E3779B1 >>> 16) & (REGION_VERSION_BUCKETS - 1);
+    }
+}
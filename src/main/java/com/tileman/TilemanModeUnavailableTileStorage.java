@@ -0,0 +1,55 @@
+package com.tileman;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Stands in for a profile's tile storage while its tiles can't be loaded on this computer, such as when they are in
+ * a tile database on another one. It holds nothing, and refuses writes rather than lose them, as nothing it is given
+ * would ever reach the player's real tiles.
+ */
+class TilemanModeUnavailableTileStorage implements TilemanModeTileStorage {
+
+    @Override
+    public TilemanModeRegionBitmap read(String prefix, int regionId, int plane) {
+        return TilemanModeRegionBitmap.EMPTY;
+    }
+
+    @Override
+    public void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap) {
+        throw new IllegalStateException("The profile's tiles are unavailable");
+    }
+
+    @Override
+    public Set<Integer> getRegionIds(String prefix) {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<String> getPrefixes(String startingWith) {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public byte[] readManifest(String prefix) {
+        return null;
+    }
+
+    @Override
+    public void writeManifest(String prefix, byte[] manifest) {
+        // the store counts the empty regions it reads, there are no tiles to keep a manifest for
+    }
+
+    @Override
+    public int deletePrefix(String prefix) {
+        throw new IllegalStateException("The profile's tiles are unavailable");
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,174 @@
+package com.tileman;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.runelite.api.Client;
+
+/**
+ * The claimed tiles over the loaded scene, the player's and those of the merged group tile sets, as the overlays
+ * draw them.
+ *
+ * Tiles are built on a background thread from a {@link Scene} captured on the client thread, so loading a new scene
+ * never decodes region data on the client thread. Every plane of the scene is built, so climbing stairs only changes
+ * which plane is drawn. The plugin keeps two of these and swaps the finished one in whole. Once published, only the
+ * client thread changes it, to show a claim straight away.
+ */
+class TilemanModeVisibleTiles {
+
+    private static final int CHUNK_SIZE = 8;
+    private static final int SCENE_CHUNKS = TilemanModeSceneIndex.SCENE_SIZE / CHUNK_SIZE;
+    private static final int REGION_SIZE = TilemanModeRegionBitmap.REGION_SIZE;
+    private static final int PLANES = TilemanModeSceneIndex.PLANES;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final TilemanModeSceneIndex playerIndex = new TilemanModeSceneIndex();
+
+    @Getter(AccessLevel.PACKAGE)
+    private final TilemanModeSceneIndex groupIndex = new TilemanModeSceneIndex();
+
+    /**
+     * What the client had loaded when a build was requested. Captured on the client thread, read on the builder's.
+     */
+    static final class Scene {
+        private final int baseX;
+        private final int baseY;
+        private final int[] mapRegions;
+        // template chunk of each scene chunk by plane, or null outside instances
+        private final int[][][] templateChunks;
+
+        private Scene(int baseX, int baseY, int[] mapRegions, int[][][] templateChunks) {
+            this.baseX = baseX;
+            this.baseY = baseY;
+            this.mapRegions = mapRegions;
+            this.templateChunks = templateChunks;
+        }
+
+        /**
+         * @return the loaded scene, or null if no map is loaded
+         */
+        static Scene capture(Client client) {
+            int[] mapRegions = client.getMapRegions();
+            if (mapRegions == null) {
+                return null;
+            }
+
+            int[][][] templateChunks = null;
+            if (client.isInInstancedRegion()) {
+                int[][][] chunks = client.getInstanceTemplateChunks();
+                templateChunks = new int[chunks.length][][];
+                for (int plane = 0; plane < chunks.length; plane++) {
+                    templateChunks[plane] = new int[chunks[plane].length][];
+                    for (int x = 0; x < chunks[plane].length; x++) {
+                        templateChunks[plane][x] = chunks[plane][x].clone();
+                    }
+                }
+            }
+            return new Scene(client.getBaseX(), client.getBaseY(), mapRegions.clone(), templateChunks);
+        }
+    }
+
+    /**
+     * Replaces the contents with the claims in the scene. Call only on a buffer that isn't published.
+     */
+    void build(TilemanModeTileStore store, TilemanModeGroupIndex group, Scene scene) {
+        playerIndex.reset();
+        groupIndex.reset();
+
+        for (int plane = 0; plane < PLANES; plane++) {
+            if (scene.templateChunks == null) {
+                for (int regionId : scene.mapRegions) {
+                    indexRegion(playerIndex, scene, plane, regionId, store.getRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, plane));
+                    indexRegion(groupIndex, scene, plane, regionId, group.getUnion(regionId, plane));
+                }
+            } else if (plane < scene.templateChunks.length) {
+                indexInstancePlane(store, group, scene.templateChunks[plane], plane);
+            }
+        }
+    }
+
+    private void indexInstancePlane(TilemanModeTileStore store, TilemanModeGroupIndex group, int[][] templateChunks, int plane) {
+        for (int chunkX = 0; chunkX < SCENE_CHUNKS; chunkX++) {
+            for (int chunkY = 0; chunkY < SCENE_CHUNKS; chunkY++) {
+                int chunkData = templateChunks[chunkX][chunkY];
+                if (chunkData == -1) {
+                    continue;
+                }
+
+                // claims are stored against the template the instance was copied from
+                int rotation = chunkData >> 1 & 0x3;
+                int templateY = (chunkData >> 3 & 0x7FF) * CHUNK_SIZE;
+                int templateX = (chunkData >> 14 & 0x3FF) * CHUNK_SIZE;
+                int templatePlane = chunkData >> 24 & 0x3;
+                int regionId = (templateX >> 6) << 8 | (templateY >> 6);
+
+                indexChunk(playerIndex, plane, chunkX, chunkY, templateX, templateY, rotation,
+                        store.getRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, templatePlane));
+                indexChunk(groupIndex, plane, chunkX, chunkY, templateX, templateY, rotation,
+                        group.getUnion(regionId, templatePlane));
+            }
+        }
+    }
+
+    private static void indexRegion(TilemanModeSceneIndex index, Scene scene, int plane, int regionId,
+                                    TilemanModeRegionBitmap region) {
+        if (region.isEmpty()) {
+            return;
+        }
+
+        int offsetX = ((regionId >> 8) << 6) - scene.baseX;
+        int offsetY = ((regionId & 0xFF) << 6) - scene.baseY;
+        for (int regionY = 0; regionY < REGION_SIZE; regionY++) {
+            int sceneY = offsetY + regionY;
+            long row = region.getRow(regionY);
+            if (row == 0 || sceneY < 0 || sceneY >= TilemanModeSceneIndex.SCENE_SIZE) {
+                continue;
+            }
+            while (row != 0) {
+                int sceneX = offsetX + Long.numberOfTrailingZeros(row);
+                row &= row - 1;
+                if (sceneX >= 0 && sceneX < TilemanModeSceneIndex.SCENE_SIZE) {
+                    index.set(plane, sceneX, sceneY);
+                }
+            }
+        }
+    }
+
+    private static void indexChunk(TilemanModeSceneIndex index, int plane, int chunkX, int chunkY,
+                                   int templateX, int templateY, int rotation, TilemanModeRegionBitmap region) {
+        if (region.isEmpty()) {
+            return;
+        }
+
+        int regionX = templateX & (REGION_SIZE - 1);
+        int regionY = templateY & (REGION_SIZE - 1);
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int x = 0; x < CHUNK_SIZE; x++) {
+                if (!region.contains(regionX + x, regionY + y)) {
+                    continue;
+                }
+
+                // the same rotation WorldPoint.toLocalInstance applies within a chunk
+                int localX;
+                int localY;
+                switch (rotation) {
+                    case 1:
+                        localX = y;
+                        localY = CHUNK_SIZE - 1 - x;
+                        break;
+                    case 2:
+                        localX = CHUNK_SIZE - 1 - x;
+                        localY = CHUNK_SIZE - 1 - y;
+                        break;
+                    case 3:
+                        localX = CHUNK_SIZE - 1 - y;
+                        localY = x;
+                        break;
+                    default:
+                        localX = x;
+                        localY = y;
+                }
+                index.set(plane, chunkX * CHUNK_SIZE + localX, chunkY * CHUNK_SIZE + localY);
+            }
+        }
+    }
+}
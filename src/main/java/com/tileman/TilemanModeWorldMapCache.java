@@ -0,0 +1,175 @@
+package com.tileman;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rasterized world map images, one per (region, plane, zoom bucket), with the merged group claims underneath and
+ * the player's tiles on top. A zoom bucket is the (tile spacing, tile size) pair in pixels the overlay draws at, so
+ * each zoom level the map snaps to gets its own images.
+ *
+ * An image is rebuilt only when the tile store or the group index reports a change to its region plane, so a claim or
+ * import only redraws the region planes it touched. Images are kept in least recently
+ * used order and evicted once their pixels exceed a fixed budget, so zooming around doesn't grow the cache without
+ * bound. Region planes with nothing to draw are cached too, at a small nominal cost.
+ *
+ * Each pixel is only ever clear, a group claim or a player claim, so images are 2 bits per pixel indexes into those
+ * three colours rather than ARGB, a sixteenth of the memory.
+ */
+class TilemanModeWorldMapCache {
+
+    // 16M pixels, 4MB of 2 bit images. A fully zoomed in 3x3 block of regions is about 2.4M pixels.
+    private static final long MAX_CACHED_PIXELS = 16L * 1024 * 1024;
+    // what a region plane with nothing to draw counts against the budget, so panning over unclaimed map still
+    // evicts. Caps the cache at 16K empty entries, far more than the map shows at once.
+    private static final long EMPTY_ENTRY_PIXELS = 1024;
+    private static final int REGION_SIZE = TilemanModeRegionBitmap.REGION_SIZE;
+    private static final int BITS_PER_PIXEL = 2;
+    private static final int GROUP_INDEX = 1;
+    private static final int PLAYER_INDEX = 2;
+
+    // (regionId << 34 | plane << 32 | tileSpacing << 16 | tileSize), mutable only in the lookup instance
+    private static final class Key {
+        private long value;
+
+        private Key(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(value);
+        }
+    }
+
+    private static final class Entry {
+        private final long regionVersion;
+        private final int groupRegionVersion;
+        // null when no layer has tiles in the region plane
+        private final BufferedImage image;
+
+        private Entry(long regionVersion, int groupRegionVersion, BufferedImage image) {
+            this.regionVersion = regionVersion;
+            this.groupRegionVersion = groupRegionVersion;
+            this.image = image;
+        }
+
+        private long pixels() {
+            return image == null ? EMPTY_ENTRY_PIXELS : (long) image.getWidth() * image.getHeight();
+        }
+    }
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // reused for lookups so a cache hit doesn't box a key every frame
+    private final Key lookupKey = new Key(0);
+    private long cachedPixels = 0;
+
+    // what every cached image was drawn from. Any change to these invalidates the whole cache.
+    private TilemanModeTileStore store;
+    private TilemanModeGroupIndex group;
+    private int playerRgb;
+    // clear, group and player colours by pixel index
+    private IndexColorModel colorModel;
+
+    /**
+     * Returns the image for the region plane at the zoom bucket, building it if needed. The image's top left corner
+     * is the top left of the tile at (0, 63) in the region, and tiles are {@code tileSpacing} pixels apart.
+     *
+     * @return the cached image, or null if there is nothing to draw in the region plane
+     */
+    BufferedImage getImage(TilemanModeTileStore store, TilemanModeGroupIndex group, Color playerColor,
+                           int regionId, int plane, int tileSpacing, int tileSize) {
+        if (tileSize <= 0 || tileSpacing < 0) {
+            return null;
+        }
+
+        if (this.store != store || playerColor.getRGB() != playerRgb || this.group != group) {
+            clear();
+            this.store = store;
+            this.group = group;
+            this.playerRgb = playerColor.getRGB();
+            this.colorModel = createColorModel(playerRgb);
+        }
+
+        lookupKey.value = ((long) regionId << 34) | ((long) plane << 32) | ((long) tileSpacing << 16) | tileSize;
+        long regionVersion = store.getRegionVersion(regionId, plane);
+        int groupRegionVersion = group.getRegionVersion(regionId, plane);
+        Entry entry = entries.get(lookupKey);
+        if (entry != null && entry.regionVersion == regionVersion && entry.groupRegionVersion == groupRegionVersion) {
+            return entry.image;
+        }
+
+        if (entry != null) {
+            cachedPixels -= entry.pixels();
+        }
+        entry = new Entry(regionVersion, groupRegionVersion, rasterize(store, regionId, plane, tileSpacing, tileSize));
+        entries.put(new Key(lookupKey.value), entry);
+        cachedPixels += entry.pixels();
+        evictOverBudget();
+        return entry.image;
+    }
+
+    void clear() {
+        entries.clear();
+        cachedPixels = 0;
+    }
+
+    private BufferedImage rasterize(TilemanModeTileStore store, int regionId, int plane, int tileSpacing, int tileSize) {
+        TilemanModeRegionBitmap playerRegion = store.getRegion(TilemanModePlugin.REGION_PREFIX_V3, regionId, plane);
+        TilemanModeRegionBitmap groupRegion = group.getUnion(regionId, plane);
+        if (playerRegion.isEmpty() && groupRegion.isEmpty()) {
+            return null;
+        }
+
+        int dimension = (REGION_SIZE - 1) * tileSpacing + tileSize;
+        BufferedImage image = new BufferedImage(dimension, dimension, BufferedImage.TYPE_BYTE_BINARY, colorModel);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (dimension * BITS_PER_PIXEL + 7) / 8;
+
+        // group claims first so the player's own tiles are drawn over them
+        fillTiles(pixels, stride, groupRegion, GROUP_INDEX, tileSpacing, tileSize);
+        fillTiles(pixels, stride, playerRegion, PLAYER_INDEX, tileSpacing, tileSize);
+        return image;
+    }
+
+    private static IndexColorModel createColorModel(int playerRgb) {
+        int[] colors = {0, Color.PINK.getRGB(), playerRgb};
+        return new IndexColorModel(BITS_PER_PIXEL, colors.length, colors, 0, true, 0, DataBuffer.TYPE_BYTE);
+    }
+
+    private static void fillTiles(byte[] pixels, int stride, TilemanModeRegionBitmap region, int index,
+                                  int tileSpacing, int tileSize) {
+        region.forEach((regionX, regionY) -> {
+            // region y grows north, image y grows down
+            int left = regionX * tileSpacing;
+            int top = (REGION_SIZE - 1 - regionY) * tileSpacing;
+            for (int row = top; row < top + tileSize; row++) {
+                for (int x = left; x < left + tileSize; x++) {
+                    // four pixels to a byte, the leftmost in the high bits
+                    int offset = row * stride + (x >> 2);
+                    int shift = (3 - (x & 3)) * BITS_PER_PIXEL;
+                    pixels[offset] = (byte) (pixels[offset] & ~(3 << shift) | index << shift);
+                }
+            }
+        });
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedPixels > MAX_CACHED_PIXELS && iterator.hasNext()) {
+            cachedPixels -= iterator.next().getValue().pixels();
+            iterator.remove();
+        }
+    }
+}
@@ -28,8 +28,7 @@
 package com.tileman;
 
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.image.BufferedImage;
 import javax.inject.Inject;
 
 import net.runelite.api.Client;
@@ -46,13 +45,12 @@ class TilemanModeWorldMapOverlay extends Overlay {
     private static final int REGION_TRUNCATE = ~((1 << 6) - 1);
 
     private final Client client;
-    private final TilemanModeConfig config;
     private final TilemanModePlugin plugin;
+    private final TilemanModeWorldMapCache cache = new TilemanModeWorldMapCache();
 
     @Inject
-    private TilemanModeWorldMapOverlay(Client client, TilemanModeConfig config, TilemanModePlugin plugin) {
+    private TilemanModeWorldMapOverlay(Client client, TilemanModePlugin plugin) {
         this.client = client;
-        this.config = config;
         this.plugin = plugin;
         setPosition(OverlayPosition.DYNAMIC);
         setPriority(Overlay.PRIORITY_HIGH);
@@ -61,21 +59,23 @@ class TilemanModeWorldMapOverlay extends Overlay {
 
     @Override
     public Dimension render(Graphics2D graphics) {
-        if (!config.drawTilesOnWorldMap()) {
+        TilemanModeRenderSnapshot snapshot = plugin.getRenderSnapshot();
+        if (!snapshot.isDrawOnWorldMap()) {
+            cache.clear();
             return null;
         }
 
-        drawOnWorldMap(graphics);
+        drawOnWorldMap(graphics, snapshot);
 
         return null;
     }
 
-    private void drawOnWorldMap(Graphics2D graphics) {
+    private void drawOnWorldMap(Graphics2D graphics, TilemanModeRenderSnapshot snapshot) {
         Widget map = client.getWidget(ComponentID.WORLD_MAP_MAPVIEW);
-        Float pixelsPerTile = client.getWorldMap().getWorldMapZoom();
         if (map == null) {
             return;
         }
+        float pixelsPerTile = client.getWorldMap().getWorldMapZoom();
         Rectangle worldMapRect = map.getBounds();
         graphics.setClip(worldMapRect);
 
@@ -92,48 +92,27 @@ class TilemanModeWorldMapOverlay extends Overlay {
         int yRegionMin = (yTileMin & REGION_TRUNCATE);
         int yRegionMax = ((worldMapPosition.getY() + heightInTiles / 2) & REGION_TRUNCATE) + REGION_SIZE;
         int regionPixelSize = (int) Math.ceil(REGION_SIZE * pixelsPerTile);
+        int plane = snapshot.getPlane();
+        Color playerColor = snapshot.getWorldMapTileColor();
+        TilemanModeTileStore tileStore = plugin.getTileStore();
+        TilemanModeGroupIndex groupIndex = plugin.getGroupIndex();
 
         for (int x = xRegionMin; x < xRegionMax; x += REGION_SIZE) {
             for (int y = yRegionMin; y < yRegionMax; y += REGION_SIZE) {
                 int regionId = ((x >> 6) << 8) | (y >> 6);
-                int plane = client.getPlane();
 
-                // draw imported tile sets
-                Set<TilemanModeTile> importedTiles = new HashSet<>();
-                for (String key : plugin.getGroupTilemanDataManager().getImportedDataSetKeys()) {
-                    importedTiles.addAll(plugin.readImportedTileSet(key, regionId, plane));
-                }
-                for (final TilemanModeTile tile : importedTiles) {
-                    if (tile.getZ() != plane) {
-                        continue;
-                    }
-                    int yTileOffset = -(yTileMin - y) + 2; // Added offset of 2 as tiles were misaligned
-                    int xTileOffset = x + widthInTiles / 2 - worldMapPosition.getX();
-                    int xPos = ((int) (xTileOffset * pixelsPerTile)) + (int) worldMapRect.getX();
-                    int yPos = (worldMapRect.height - (int) (yTileOffset * pixelsPerTile)) + (int) worldMapRect.getY();
-                    int size = (regionPixelSize / (64 - Math.round(48f * ((8f - pixelsPerTile) / 7f))));
-                    int tileSize = regionPixelSize / 64;
-
-                    graphics.setColor(Color.PINK);
-                    graphics.fillRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
-                    graphics.drawRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
-                }
-
-                // draw player claimed tiles
-                for (final TilemanModeTile tile : plugin.readTiles(regionId, plane)) {
-                    if(tile.getZ() != plane) {
-                        continue;
-                    }
-                    int yTileOffset = -(yTileMin - y) + 2; // Added offset of 2 as tiles were misaligned
-                    int xTileOffset = x + widthInTiles / 2 - worldMapPosition.getX();
-                    int xPos = ((int) (xTileOffset * pixelsPerTile)) + (int) worldMapRect.getX();
-                    int yPos = (worldMapRect.height - (int) (yTileOffset * pixelsPerTile)) + (int) worldMapRect.getY();
-                    int size = (regionPixelSize / (64 - Math.round(48f * ((8f - pixelsPerTile) / 7f))));
-                    int tileSize = regionPixelSize / 64;
-
-                    graphics.setColor(new Color(config.markerColor().getRGB()));
-                    graphics.fillRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
-                    graphics.drawRect(xPos + (tile.getRegionX() * tileSize), yPos - (tile.getRegionY() * tileSize) + tileSize, size - 1, size - 1);
+                int yTileOffset = -(yTileMin - y) + 2; // Added offset of 2 as tiles were misaligned
+                int xTileOffset = x + widthInTiles / 2 - worldMapPosition.getX();
+                int xPos = ((int) (xTileOffset * pixelsPerTile)) + (int) worldMapRect.getX();
+                int yPos = (worldMapRect.height - (int) (yTileOffset * pixelsPerTile)) + (int) worldMapRect.getY();
+                int size = (regionPixelSize / (64 - Math.round(48f * ((8f - pixelsPerTile) / 7f))));
+                int tileSize = regionPixelSize / 64;
+
+                // group and player tiles are pre-rasterized together, the image is only rebuilt when the region changes
+                BufferedImage regionImage = cache.getImage(tileStore, groupIndex, playerColor, regionId, plane, tileSize, size);
+                if (regionImage != null) {
+                    // the image's top row is the region's northern edge, tile y 63
+                    graphics.drawImage(regionImage, xPos, yPos + tileSize - (REGION_SIZE - 1) * tileSize, null);
                 }
             }
         }
@@ -0,0 +1,184 @@
+package com.tileman;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Two members sharing tile sets, each with their own folder standing in for a synced cloud drive. Copying a file
+ * from one folder to the other is the drive syncing it.
+ */
+public class TilemanModeFolderSyncTest
+{
+	// scheduled delays run this many times faster, so the debounces take milliseconds rather than seconds
+	private static final int TIME_SCALE = 20;
+	private static final long TIMEOUT_MS = 5000;
+	private static final String ALICE_EXPORT = "TMC1 alice's tiles";
+	private static final String BOB_EXPORT = "TMC1 bob's tiles";
+
+	private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1)
+	{
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+		{
+			return super.schedule(command, unit.toMillis(delay) / TIME_SCALE, TimeUnit.MILLISECONDS);
+		}
+	};
+
+	private final BlockingQueue<String[]> bobImports = new LinkedBlockingQueue<>();
+	private Path aliceFolder;
+	private Path bobFolder;
+	private TilemanModeFolderSync aliceSync;
+	private TilemanModeFolderSync bobSync;
+
+	@Before
+	public void before() throws IOException
+	{
+		aliceFolder = Files.createTempDirectory("tileman-alice");
+		bobFolder = Files.createTempDirectory("tileman-bob");
+		aliceSync = new TilemanModeFolderSync(aliceFolder, executor, (text, own) -> fail("Alice imported " + text));
+		bobSync = new TilemanModeFolderSync(bobFolder, executor, (text, own) -> bobImports.add(new String[]{text, own}));
+		aliceSync.start();
+		bobSync.start();
+	}
+
+	@After
+	public void after() throws IOException
+	{
+		aliceSync.close();
+		bobSync.close();
+		executor.shutdownNow();
+		delete(aliceFolder);
+		delete(bobFolder);
+	}
+
+	@Test
+	public void testTileSetIsMovedIntoPlaceWhole() throws Exception
+	{
+		Path aliceFile = aliceFolder.resolve("Alice" + TilemanModeFolderSync.FILE_EXTENSION);
+		List<WatchEvent.Kind<?>> fileEvents = new ArrayList<>();
+		List<String> otherFiles = new ArrayList<>();
+		try (WatchService watchService = FileSystems.getDefault().newWatchService())
+		{
+			aliceFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			aliceSync.tileSetChanged("Alice", 1, 1, () -> ALICE_EXPORT);
+			waitForFile(aliceFile, ALICE_EXPORT);
+
+			// written elsewhere and moved in, the file appears whole and is never written to in place
+			WatchKey key;
+			while ((key = watchService.poll(TIMEOUT_MS / 10, TimeUnit.MILLISECONDS)) != null)
+			{
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					if (aliceFile.getFileName().equals(event.context()))
+					{
+						fileEvents.add(event.kind());
+					}
+					else
+					{
+						otherFiles.add(event.context().toString());
+					}
+				}
+				key.reset();
+			}
+		}
+
+		assertEquals(1, fileEvents.size());
+		assertEquals(StandardWatchEventKinds.ENTRY_CREATE, fileEvents.get(0));
+		assertTrue(otherFiles.contains(".Alice" + TilemanModeFolderSync.FILE_EXTENSION + ".tmp"));
+		assertEquals(1, listFiles(aliceFolder).size());
+	}
+
+	@Test
+	public void testMembersChangeIsImportedOnceItSettles() throws Exception
+	{
+		bobSync.tileSetChanged("Bob", 1, 1, () -> BOB_EXPORT);
+		aliceSync.tileSetChanged("Alice", 1, 1, () -> ALICE_EXPORT);
+		Path aliceFile = aliceFolder.resolve("Alice" + TilemanModeFolderSync.FILE_EXTENSION);
+		waitForFile(aliceFile, ALICE_EXPORT);
+
+		// the drive writes the file in two steps, only the settled file is imported
+		Path syncedFile = bobFolder.resolve(aliceFile.getFileName());
+		Files.write(syncedFile, ALICE_EXPORT.substring(0, 4).getBytes(StandardCharsets.UTF_8));
+		Files.write(syncedFile, Files.readAllBytes(aliceFile));
+
+		String[] imported = bobImports.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		assertNotNull(imported);
+		assertEquals(ALICE_EXPORT, imported[0]);
+		assertEquals("Bob", imported[1]);
+		assertNull(bobImports.poll(TIMEOUT_MS / 10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testOwnFileIsNotImported() throws Exception
+	{
+		Path bobFile = bobFolder.resolve("Bob" + TilemanModeFolderSync.FILE_EXTENSION);
+		bobSync.tileSetChanged("Bob", 1, 1, () -> BOB_EXPORT);
+		waitForFile(bobFile, BOB_EXPORT);
+
+		// the drive bringing back an older copy of the player's own file
+		Files.write(bobFile, "TMC1 bob's older tiles".getBytes(StandardCharsets.UTF_8));
+
+		assertNull(bobImports.poll(TIMEOUT_MS / 10, TimeUnit.MILLISECONDS));
+		assertFalse(Files.exists(bobFolder.resolve("Alice" + TilemanModeFolderSync.FILE_EXTENSION)));
+	}
+
+	private static void waitForFile(Path file, String text) throws Exception
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (!Files.exists(file) || !text.equals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)))
+		{
+			if (System.currentTimeMillis() > deadline)
+			{
+				throw new AssertionError(file + " was not written");
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static List<Path> listFiles(Path folder) throws IOException
+	{
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder))
+		{
+			for (Path file : stream)
+			{
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private static void delete(Path folder) throws IOException
+	{
+		for (Path file : listFiles(folder))
+		{
+			Files.delete(file);
+		}
+		Files.delete(folder);
+	}
+}
@@ -0,0 +1,829 @@
+package com.tileman;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.runelite.api.Client;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.client.ui.overlay.components.LayoutableRenderableEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Steady state frames, the same snapshot drawn again, must not allocate in the plugin's own per-frame code.
+ * The overlays draw to a graphics that draws nothing, with a client holding a still camera, so anything
+ * counted is the plugin's own.
+ */
+public class TilemanModeRenderAllocationTest
+{
+	private static final int WARMUP_FRAMES = 20_000;
+	private static final int MEASURED_FRAMES = 20_000;
+	private static final int REGION_ID = 12850;
+
+	private com.sun.management.ThreadMXBean threadBean;
+	private final Client client = StubClient.create();
+	private final Graphics2D graphics = new NullGraphics2D();
+
+	@Before
+	public void before()
+	{
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@Test
+	public void testSceneWalkDoesNotAllocate()
+	{
+		TilemanModeSceneIndex playerIndex = new TilemanModeSceneIndex();
+		TilemanModeSceneIndex groupIndex = new TilemanModeSceneIndex();
+		for (int x = 20; x < 84; x++)
+		{
+			for (int y = 20; y < 84; y += 2)
+			{
+				playerIndex.set(0, x, y);
+				groupIndex.set(0, x, y + 1);
+			}
+		}
+
+		TilemanModeRenderSnapshot snapshot = new TilemanModeRenderSnapshot(
+			Color.YELLOW, Color.YELLOW, Color.WHITE, "1,000", "2,000", "300", true,
+			true, true, TilemanModeConfig.TilemanRenderMode.TILES,
+			true, 0, 52, 52, 0, TilemanModeFrameGovernor.Level.FULL);
+		CountingVisitor visitor = new CountingVisitor();
+
+		// the walk the scene and minimap overlays make each frame, driven by the snapshot
+		Runnable frame = () ->
+		{
+			visitor.color = Color.PINK;
+			groupIndex.forEachWithin(snapshot.getPlane(), snapshot.getPlayerSceneX(), snapshot.getPlayerSceneY(), 31, visitor);
+			visitor.color = snapshot.getTileColor();
+			playerIndex.forEachWithin(snapshot.getPlane(), snapshot.getPlayerSceneX(), snapshot.getPlayerSceneY(), 31, visitor);
+		};
+
+		assertEquals(0, allocatedBytesPerFrame(frame));
+		// the window is scene x/y 21 to 83, so 63 columns of 31 player rows and 32 group rows
+		assertEquals((long) 63 * 63 * (WARMUP_FRAMES + MEASURED_FRAMES), visitor.visited);
+	}
+
+	@Test
+	public void testWorldMapCacheHitDoesNotAllocate()
+	{
+		TilemanModeTileStore store = new TilemanModeTileStore(new InMemoryTileStorage());
+		for (int x = 0; x < 64; x += 3)
+		{
+			store.set(TilemanModePlugin.REGION_PREFIX_V3, REGION_ID, x, x, 0);
+		}
+
+		TilemanModeWorldMapCache cache = new TilemanModeWorldMapCache();
+		TilemanModeGroupIndex groupIndex = TilemanModeGroupIndex.load(store);
+		Color playerColor = new Color(Color.YELLOW.getRGB());
+		BufferedImage image = cache.getImage(store, groupIndex, playerColor, REGION_ID, 0, 4, 4);
+		assertNotNull(image);
+		// tile (0, 0) is the bottom left of the image, (1, 0) beside it is unclaimed
+		assertEquals(playerColor.getRGB(), image.getRGB(0, 63 * 4));
+		assertEquals(0, image.getRGB(4, 63 * 4));
+
+		Runnable frame = () ->
+		{
+			for (int regionId = REGION_ID - 1; regionId <= REGION_ID + 1; regionId++)
+			{
+				cache.getImage(store, groupIndex, playerColor, regionId, 0, 4, 4);
+			}
+		};
+
+		assertEquals(0, allocatedBytesPerFrame(frame));
+	}
+
+	@Test
+	public void testSceneOverlayTilesDoNotAllocate() throws Exception
+	{
+		TilemanModePlugin plugin = pluginWith(TilemanModeConfig.TilemanRenderMode.TILES);
+		TilemanModeOverlay overlay = create(TilemanModeOverlay.class, client, plugin);
+
+		assertEquals(0, allocatedBytesPerFrame(() -> overlay.render(graphics)));
+		assertEquals(TilemanModeFrameGovernor.Level.FULL, overlay.getGovernor().getLevel());
+	}
+
+	@Test
+	public void testSceneOverlayContoursDoNotAllocate() throws Exception
+	{
+		TilemanModePlugin plugin = pluginWith(TilemanModeConfig.TilemanRenderMode.CONTOURS);
+		TilemanModeOverlay overlay = create(TilemanModeOverlay.class, client, plugin);
+
+		assertEquals(0, allocatedBytesPerFrame(() -> overlay.render(graphics)));
+	}
+
+	@Test
+	public void testMinimapOverlayDoesNotAllocate() throws Exception
+	{
+		TilemanModePlugin plugin = pluginWith(TilemanModeConfig.TilemanRenderMode.TILES);
+		TilemanModeMinimapOverlay overlay = create(TilemanModeMinimapOverlay.class, client, plugin);
+
+		assertEquals(0, allocatedBytesPerFrame(() -> overlay.render(graphics)));
+	}
+
+	@Test
+	public void testInfoOverlayLinesDoNotAllocate() throws Exception
+	{
+		TilemanModePlugin plugin = pluginWith(TilemanModeConfig.TilemanRenderMode.TILES);
+		TileInfoOverlay overlay = create(TileInfoOverlay.class, plugin);
+		// the panel's own layout and drawing is RuneLite's, so only the lines the overlay hands it are measured
+		for (int i = 0; i < 100; i++)
+		{
+			overlay.render(graphics);
+		}
+		List<LayoutableRenderableEntity> children = new ArrayList<>();
+
+		assertEquals(0, allocatedBytesPerFrame(() ->
+		{
+			children.clear();
+			overlay.addLines(children, graphics);
+		}));
+		assertEquals(3, children.size());
+	}
+
+	/**
+	 * A plugin showing the player in the middle of the scene, with player and group tiles in stripes around them.
+	 */
+	private static TilemanModePlugin pluginWith(TilemanModeConfig.TilemanRenderMode renderMode) throws Exception
+	{
+		TilemanModeVisibleTiles visibleTiles = new TilemanModeVisibleTiles();
+		for (int x = 20; x < 84; x++)
+		{
+			for (int y = 20; y < 84; y += 2)
+			{
+				visibleTiles.getPlayerIndex().set(0, x, y);
+				visibleTiles.getGroupIndex().set(0, x, y + 1);
+			}
+		}
+
+		TilemanModeRenderSnapshot snapshot = new TilemanModeRenderSnapshot(
+			Color.YELLOW, Color.YELLOW, Color.WHITE, "1,000", "2,000", "300", true,
+			true, true, renderMode,
+			true, 0, 52, 52, 0, TilemanModeFrameGovernor.Level.FULL);
+
+		TilemanModePlugin plugin = new TilemanModePlugin();
+		setField(plugin, "visibleTiles", visibleTiles);
+		setField(plugin, "renderSnapshot", snapshot);
+		return plugin;
+	}
+
+	private static void setField(Object target, String name, Object value) throws Exception
+	{
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	private static <T> T create(Class<T> type, Object... arguments) throws Exception
+	{
+		// the overlays are only made by injection
+		Constructor<T> constructor = (Constructor<T>) type.getDeclaredConstructors()[0];
+		constructor.setAccessible(true);
+		return constructor.newInstance(arguments);
+	}
+
+	private long allocatedBytesPerFrame(Runnable frame)
+	{
+		long threadId = Thread.currentThread().getId();
+		for (int i = 0; i < WARMUP_FRAMES; i++)
+		{
+			frame.run();
+		}
+
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_FRAMES; i++)
+		{
+			frame.run();
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+		// the measurement itself may allocate a few bytes, anything real shows up once per frame
+		return allocated / MEASURED_FRAMES;
+	}
+
+	private static class CountingVisitor implements TilemanModeSceneIndex.SceneTileVisitor
+	{
+		private Color color;
+		private long visited;
+
+		@Override
+		public void visit(int sceneX, int sceneY)
+		{
+			if (color != null)
+			{
+				visited++;
+			}
+		}
+	}
+
+	/**
+	 * A client with the camera above the middle of a flat scene and the local player far from it. Return values
+	 * are made once, so asking for them doesn't allocate.
+	 */
+	private static class StubClient implements InvocationHandler
+	{
+		private static final Integer ZERO = 0;
+		private static final Double ZERO_DOUBLE = 0.0;
+		private static final Long ZERO_LONG = 0L;
+
+		private final Map<String, Object> values = new HashMap<>();
+		private final Map<Class<?>, Object> proxies = new HashMap<>();
+		private final int[][][] tileHeights = new int[4][TilemanModeSceneIndex.SCENE_SIZE + 1][TilemanModeSceneIndex.SCENE_SIZE + 1];
+		private final byte[][][] tileSettings = new byte[4][TilemanModeSceneIndex.SCENE_SIZE][TilemanModeSceneIndex.SCENE_SIZE];
+		private final LocalPoint localLocation = new LocalPoint(0, 0);
+
+		private StubClient()
+		{
+			camera("CameraX", 52 * 128 + 64);
+			camera("CameraY", 52 * 128 - 1500);
+			camera("CameraZ", -1500);
+			camera("CameraPitch", 256);
+			camera("CameraYaw", 0);
+			values.put("getScale", 512);
+			values.put("getViewportWidth", 765);
+			values.put("getViewportHeight", 503);
+			values.put("getViewportXOffset", 4);
+			values.put("getViewportYOffset", 4);
+		}
+
+		static Client create()
+		{
+			StubClient handler = new StubClient();
+			return (Client) handler.proxy(Client.class);
+		}
+
+		private void camera(String name, int value)
+		{
+			values.put("get" + name, value);
+			values.put("get" + name.replace("Camera", "CameraFp"), (double) value);
+		}
+
+		private Object proxy(Class<?> type)
+		{
+			return proxies.computeIfAbsent(type, t -> Proxy.newProxyInstance(t.getClassLoader(), new Class<?>[]{t}, this));
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			Object value = values.get(method.getName());
+			if (value != null)
+			{
+				return value;
+			}
+
+			Class<?> type = method.getReturnType();
+			if (type == int.class)
+			{
+				return ZERO;
+			}
+			if (type == double.class)
+			{
+				return ZERO_DOUBLE;
+			}
+			if (type == long.class)
+			{
+				return ZERO_LONG;
+			}
+			if (type == boolean.class)
+			{
+				return Boolean.FALSE;
+			}
+			if (type == int[][][].class)
+			{
+				return tileHeights;
+			}
+			if (type == byte[][][].class)
+			{
+				return tileSettings;
+			}
+			if (type == LocalPoint.class)
+			{
+				return localLocation;
+			}
+			if (type.isInterface())
+			{
+				return proxy(type);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Keeps what is set on it and draws nothing.
+	 */
+	private static class NullGraphics2D extends Graphics2D
+	{
+		private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+		private static final FontMetrics FONT_METRICS = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+			.createGraphics().getFontMetrics(FONT);
+
+		private final AffineTransform transform = new AffineTransform();
+		private final RenderingHints hints = new RenderingHints(null);
+		private Color color = Color.WHITE;
+		private Paint paint = Color.WHITE;
+		private Color background = Color.BLACK;
+		private Stroke stroke = new BasicStroke();
+		private Composite composite;
+		private Font font = FONT;
+		private Shape clip;
+
+		@Override
+		public void draw(Shape s)
+		{
+		}
+
+		@Override
+		public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs)
+		{
+			return true;
+		}
+
+		@Override
+		public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y)
+		{
+		}
+
+		@Override
+		public void drawRenderedImage(RenderedImage img, AffineTransform xform)
+		{
+		}
+
+		@Override
+		public void drawRenderableImage(RenderableImage img, AffineTransform xform)
+		{
+		}
+
+		@Override
+		public void drawString(String str, int x, int y)
+		{
+		}
+
+		@Override
+		public void drawString(String str, float x, float y)
+		{
+		}
+
+		@Override
+		public void drawString(AttributedCharacterIterator iterator, int x, int y)
+		{
+		}
+
+		@Override
+		public void drawString(AttributedCharacterIterator iterator, float x, float y)
+		{
+		}
+
+		@Override
+		public void drawGlyphVector(GlyphVector g, float x, float y)
+		{
+		}
+
+		@Override
+		public void fill(Shape s)
+		{
+		}
+
+		@Override
+		public boolean hit(Rectangle rect, Shape s, boolean onStroke)
+		{
+			return false;
+		}
+
+		@Override
+		public GraphicsConfiguration getDeviceConfiguration()
+		{
+			return null;
+		}
+
+		@Override
+		public void setComposite(Composite comp)
+		{
+			composite = comp;
+		}
+
+		@Override
+		public void setPaint(Paint paint)
+		{
+			this.paint = paint;
+		}
+
+		@Override
+		public void setStroke(Stroke s)
+		{
+			stroke = s;
+		}
+
+		@Override
+		public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue)
+		{
+		}
+
+		@Override
+		public Object getRenderingHint(RenderingHints.Key hintKey)
+		{
+			return null;
+		}
+
+		@Override
+		public void setRenderingHints(Map<?, ?> hints)
+		{
+		}
+
+		@Override
+		public void addRenderingHints(Map<?, ?> hints)
+		{
+		}
+
+		@Override
+		public RenderingHints getRenderingHints()
+		{
+			return hints;
+		}
+
+		@Override
+		public void translate(int x, int y)
+		{
+		}
+
+		@Override
+		public void translate(double tx, double ty)
+		{
+		}
+
+		@Override
+		public void rotate(double theta)
+		{
+		}
+
+		@Override
+		public void rotate(double theta, double x, double y)
+		{
+		}
+
+		@Override
+		public void scale(double sx, double sy)
+		{
+		}
+
+		@Override
+		public void shear(double shx, double shy)
+		{
+		}
+
+		@Override
+		public void transform(AffineTransform tx)
+		{
+		}
+
+		@Override
+		public void setTransform(AffineTransform tx)
+		{
+		}
+
+		@Override
+		public AffineTransform getTransform()
+		{
+			return new AffineTransform(transform);
+		}
+
+		@Override
+		public Paint getPaint()
+		{
+			return paint;
+		}
+
+		@Override
+		public Composite getComposite()
+		{
+			return composite;
+		}
+
+		@Override
+		public void setBackground(Color color)
+		{
+			background = color;
+		}
+
+		@Override
+		public Color getBackground()
+		{
+			return background;
+		}
+
+		@Override
+		public Stroke getStroke()
+		{
+			return stroke;
+		}
+
+		@Override
+		public void clip(Shape s)
+		{
+		}
+
+		@Override
+		public FontRenderContext getFontRenderContext()
+		{
+			return FONT_METRICS.getFontRenderContext();
+		}
+
+		@Override
+		public Graphics create()
+		{
+			return new NullGraphics2D();
+		}
+
+		@Override
+		public Color getColor()
+		{
+			return color;
+		}
+
+		@Override
+		public void setColor(Color c)
+		{
+			color = c;
+		}
+
+		@Override
+		public void setPaintMode()
+		{
+		}
+
+		@Override
+		public void setXORMode(Color c1)
+		{
+		}
+
+		@Override
+		public Font getFont()
+		{
+			return font;
+		}
+
+		@Override
+		public void setFont(Font font)
+		{
+			this.font = font;
+		}
+
+		@Override
+		public FontMetrics getFontMetrics(Font f)
+		{
+			return f == FONT ? FONT_METRICS : new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics().getFontMetrics(f);
+		}
+
+		@Override
+		public Rectangle getClipBounds()
+		{
+			return clip == null ? null : clip.getBounds();
+		}
+
+		@Override
+		public void clipRect(int x, int y, int width, int height)
+		{
+		}
+
+		@Override
+		public void setClip(int x, int y, int width, int height)
+		{
+			clip = new Rectangle(x, y, width, height);
+		}
+
+		@Override
+		public Shape getClip()
+		{
+			return clip;
+		}
+
+		@Override
+		public void setClip(Shape clip)
+		{
+			this.clip = clip;
+		}
+
+		@Override
+		public void copyArea(int x, int y, int width, int height, int dx, int dy)
+		{
+		}
+
+		@Override
+		public void drawLine(int x1, int y1, int x2, int y2)
+		{
+		}
+
+		@Override
+		public void fillRect(int x, int y, int width, int height)
+		{
+		}
+
+		@Override
+		public void clearRect(int x, int y, int width, int height)
+		{
+		}
+
+		@Override
+		public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight)
+		{
+		}
+
+		@Override
+		public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight)
+		{
+		}
+
+		@Override
+		public void drawOval(int x, int y, int width, int height)
+		{
+		}
+
+		@Override
+		public void fillOval(int x, int y, int width, int height)
+		{
+		}
+
+		@Override
+		public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle)
+		{
+		}
+
+		@Override
+		public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle)
+		{
+		}
+
+		@Override
+		public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints)
+		{
+		}
+
+		@Override
+		public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints)
+		{
+		}
+
+		@Override
+		public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints)
+		{
+		}
+
+		@Override
+		public boolean drawImage(Image img, int x, int y, ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			Color bgcolor, ImageObserver observer)
+		{
+			return true;
+		}
+
+		@Override
+		public void dispose()
+		{
+		}
+	}
+
+	private static class InMemoryTileStorage implements TilemanModeTileStorage
+	{
+		private final Map<String, TilemanModeRegionBitmap> regions = new HashMap<>();
+
+		@Override
+		public TilemanModeRegionBitmap read(String prefix, int regionId, int plane)
+		{
+			return regions.getOrDefault(TilemanModeConfigTileStorage.toConfigKey(prefix, regionId, plane), TilemanModeRegionBitmap.EMPTY);
+		}
+
+		@Override
+		public void write(String prefix, int regionId, int plane, TilemanModeRegionBitmap bitmap)
+		{
+			String key = TilemanModeConfigTileStorage.toConfigKey(prefix, regionId, plane);
+			if (bitmap.isEmpty())
+			{
+				regions.remove(key);
+			}
+			else
+			{
+				regions.put(key, bitmap);
+			}
+		}
+
+		@Override
+		public Set<Integer> getRegionIds(String prefix)
+		{
+			Set<Integer> regionIds = new HashSet<>();
+			for (String key : regions.keySet())
+			{
+				if (key.startsWith(prefix))
+				{
+					String regionKey = key.substring(prefix.length());
+					regionIds.add(Integer.parseInt(regionKey.substring(0, regionKey.lastIndexOf('_'))));
+				}
+			}
+			return regionIds;
+		}
+
+		@Override
+		public Set<String> getPrefixes(String startingWith)
+		{
+			return Collections.emptySet();
+		}
+
+		@Override
+		public byte[] readManifest(String prefix)
+		{
+			return null;
+		}
+
+		@Override
+		public void writeManifest(String prefix, byte[] manifest)
+		{
+		}
+
+		@Override
+		public int deletePrefix(String prefix)
+		{
+			int removed = getRegionIds(prefix).size();
+			regions.keySet().removeIf(key -> key.startsWith(prefix));
+			return removed;
+		}
+
+		@Override
+		public void sync()
+		{
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+}
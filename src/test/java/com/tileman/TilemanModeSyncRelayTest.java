@@ -0,0 +1,290 @@
+package com.tileman;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Live group sync against a relay on loopback, with plugin clients and with raw connections speaking the protocol.
+ */
+public class TilemanModeSyncRelayTest
+{
+	private static final String GROUP = "group";
+	private static final int REGION_ID = 12850;
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private TilemanModeSyncRelay relay;
+
+	@Before
+	public void before() throws IOException
+	{
+		relay = new TilemanModeSyncRelay(InetAddress.getLoopbackAddress(), 0);
+		relay.start();
+	}
+
+	@After
+	public void after()
+	{
+		relay.close();
+	}
+
+	@Test
+	public void testClaimsReachTheRestOfTheGroup() throws Exception
+	{
+		BlockingQueue<String> aliceReceived = new LinkedBlockingQueue<>();
+		BlockingQueue<String> bobReceived = new LinkedBlockingQueue<>();
+		TilemanModeLiveSync alice = connect("Alice", aliceReceived);
+		TilemanModeLiveSync bob = connect("Bob", bobReceived);
+		try
+		{
+			// both connected once a batch from each has gone through
+			awaitConnected(alice, bobReceived);
+			awaitConnected(bob, aliceReceived);
+
+			alice.claimChanged(REGION_ID, 1, 2, 0, true);
+			alice.claimChanged(REGION_ID, 3, 4, 0, true);
+			alice.claimChanged(REGION_ID, 3, 4, 0, false);
+			alice.endTick();
+
+			// only the latest state of each tile is sent, and never back to its sender
+			assertEquals("Alice " + claims(
+				TilemanModeSyncProtocol.packClaim(REGION_ID, 1, 2, 0, true),
+				TilemanModeSyncProtocol.packClaim(REGION_ID, 3, 4, 0, false)),
+				bobReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertNull(aliceReceived.poll(200, TimeUnit.MILLISECONDS));
+		}
+		finally
+		{
+			alice.close();
+			bob.close();
+		}
+	}
+
+	@Test
+	public void testLateMemberIsSentTheHistory() throws Exception
+	{
+		RawClient alice = new RawClient("Alice", 0);
+		alice.send(TilemanModeSyncProtocol.claims(1, new int[]{TilemanModeSyncProtocol.packClaim(REGION_ID, 1, 1, 0, true)}));
+		alice.send(TilemanModeSyncProtocol.claims(2, new int[]{TilemanModeSyncProtocol.packClaim(REGION_ID, 2, 2, 0, true)}));
+		alice.awaitAck(2);
+
+		BlockingQueue<String> bobReceived = new LinkedBlockingQueue<>();
+		TilemanModeLiveSync bob = connect("Bob", bobReceived);
+		try
+		{
+			assertEquals("Alice " + claims(TilemanModeSyncProtocol.packClaim(REGION_ID, 1, 1, 0, true)),
+				bobReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertEquals("Alice " + claims(TilemanModeSyncProtocol.packClaim(REGION_ID, 2, 2, 0, true)),
+				bobReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			bob.close();
+			alice.close();
+		}
+	}
+
+	@Test
+	public void testReconnectResumesFromSequence() throws Exception
+	{
+		RawClient alice = new RawClient("Alice", 0);
+		for (int i = 1; i <= 3; i++)
+		{
+			alice.send(TilemanModeSyncProtocol.claims(i, new int[]{TilemanModeSyncProtocol.packClaim(REGION_ID, i, i, 0, true)}));
+		}
+		alice.awaitAck(3);
+
+		// having received the first batch, only the two after it are sent again
+		RawClient bob = new RawClient("Bob", 1);
+		assertEquals(2, bob.readBatch());
+		assertEquals(3, bob.readBatch());
+
+		// a batch sent again after a reconnect is acknowledged but not forwarded twice
+		RawClient aliceAgain = new RawClient("Alice", 0);
+		assertEquals(3, aliceAgain.welcomeSequence);
+		aliceAgain.send(TilemanModeSyncProtocol.claims(3, new int[]{TilemanModeSyncProtocol.packClaim(REGION_ID, 3, 3, 0, true)}));
+		aliceAgain.send(TilemanModeSyncProtocol.claims(4, new int[]{TilemanModeSyncProtocol.packClaim(REGION_ID, 4, 4, 0, true)}));
+		aliceAgain.awaitAck(4);
+		assertEquals(4, bob.readBatch());
+
+		alice.close();
+		aliceAgain.close();
+		bob.close();
+	}
+
+	@Test
+	public void testNewSessionOfAMemberIsStillDelivered() throws Exception
+	{
+		BlockingQueue<String> bobReceived = new LinkedBlockingQueue<>();
+		TilemanModeLiveSync bob = connect("Bob", bobReceived);
+		TilemanModeLiveSync alice = connect("Alice", new LinkedBlockingQueue<>());
+		try
+		{
+			awaitConnected(alice, bobReceived);
+			for (int i = 1; i <= 3; i++)
+			{
+				alice.claimChanged(REGION_ID, i, i, 0, true);
+				alice.endTick();
+				assertEquals("Alice " + claims(TilemanModeSyncProtocol.packClaim(REGION_ID, i, i, 0, true)),
+					bobReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			}
+			alice.close();
+
+			// e.g. after a relog, numbering its batches from 1 again would have them taken for ones already received
+			BlockingQueue<String> aliceAgainReceived = new LinkedBlockingQueue<>();
+			TilemanModeLiveSync aliceAgain = connect("Alice", aliceAgainReceived, alice.getRelaySequence());
+			try
+			{
+				aliceAgain.claimChanged(REGION_ID, 9, 9, 0, true);
+				aliceAgain.endTick();
+				assertEquals("Alice " + claims(TilemanModeSyncProtocol.packClaim(REGION_ID, 9, 9, 0, true)),
+					bobReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+				// having resumed, nothing already received is sent again
+				assertNull(aliceAgainReceived.poll(200, TimeUnit.MILLISECONDS));
+			}
+			finally
+			{
+				aliceAgain.close();
+			}
+		}
+		finally
+		{
+			alice.close();
+			bob.close();
+		}
+	}
+
+	@Test
+	public void testResumingPastTheRelayIsReset() throws Exception
+	{
+		// e.g. the relay restarted and lost its history
+		RawClient bob = new RawClient("Bob", 100);
+		TilemanModeSyncProtocol.Frame frame = bob.read();
+		assertEquals(TilemanModeSyncProtocol.RESET, frame.type);
+		assertEquals(0, TilemanModeSyncProtocol.readLong(frame.body));
+		bob.close();
+	}
+
+	private TilemanModeLiveSync connect(String member, BlockingQueue<String> received)
+	{
+		return connect(member, received, 0);
+	}
+
+	private TilemanModeLiveSync connect(String member, BlockingQueue<String> received, long relaySequence)
+	{
+		TilemanModeLiveSync sync = new TilemanModeLiveSync(InetAddress.getLoopbackAddress().getHostAddress(),
+			relay.getPort(), GROUP, member, relaySequence, new TilemanModeLiveSync.Listener()
+		{
+			@Override
+			public void onClaims(String batchMember, int[] batchClaims)
+			{
+				received.add(batchMember + " " + claims(batchClaims));
+			}
+
+			@Override
+			public void onReset()
+			{
+				received.add("reset");
+			}
+		});
+		sync.start();
+		return sync;
+	}
+
+	/**
+	 * Sends a marker claim and waits for the other member to receive it, as the clients connect in the background.
+	 */
+	private static void awaitConnected(TilemanModeLiveSync from, BlockingQueue<String> toReceived)
+		throws InterruptedException
+	{
+		int marker = TilemanModeSyncProtocol.packClaim(0, 0, 0, 3, true);
+		from.claimChanged(0, 0, 0, 3, true);
+		from.endTick();
+		assertEquals(from.getMember() + " " + claims(marker), toReceived.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	private static String claims(int... claims)
+	{
+		int[] sorted = claims.clone();
+		Arrays.sort(sorted);
+		return Arrays.toString(sorted);
+	}
+
+	/**
+	 * A connection to the relay driven frame by frame.
+	 */
+	private class RawClient
+	{
+		private final Socket socket;
+		private final DataInputStream in;
+		private final OutputStream out;
+		private final long welcomeSequence;
+
+		RawClient(String member, long resumeSequence) throws IOException
+		{
+			socket = new Socket(InetAddress.getLoopbackAddress(), relay.getPort());
+			socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = socket.getOutputStream();
+			send(TilemanModeSyncProtocol.hello(GROUP, member, resumeSequence));
+
+			TilemanModeSyncProtocol.Frame welcome = read();
+			assertEquals(TilemanModeSyncProtocol.WELCOME, welcome.type);
+			welcomeSequence = TilemanModeSyncProtocol.readLong(welcome.body);
+		}
+
+		void send(byte[] frame) throws IOException
+		{
+			TilemanModeSyncProtocol.write(out, frame);
+		}
+
+		TilemanModeSyncProtocol.Frame read() throws IOException
+		{
+			TilemanModeSyncProtocol.Frame frame = TilemanModeSyncProtocol.read(in);
+			assertNotNull(frame);
+			return frame;
+		}
+
+		/**
+		 * Reads acknowledgements, which come in order, up to the sequence.
+		 */
+		void awaitAck(long sequence) throws IOException
+		{
+			long acknowledged;
+			do
+			{
+				TilemanModeSyncProtocol.Frame frame = read();
+				assertEquals(TilemanModeSyncProtocol.ACK, frame.type);
+				acknowledged = TilemanModeSyncProtocol.readLong(frame.body);
+			}
+			while (acknowledged < sequence);
+			assertEquals(sequence, acknowledged);
+		}
+
+		long readBatch() throws IOException
+		{
+			TilemanModeSyncProtocol.Frame frame = read();
+			assertEquals(TilemanModeSyncProtocol.BATCH, frame.type);
+			return TilemanModeSyncProtocol.readLong(frame.body);
+		}
+
+		void close() throws IOException
+		{
+			socket.close();
+		}
+	}
+}
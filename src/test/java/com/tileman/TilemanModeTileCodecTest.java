@@ -0,0 +1,154 @@
+package com.tileman;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * V3 tile values in each encoding, and the truncated or corrupt values a partial profile sync can leave behind.
+ */
+public class TilemanModeTileCodecTest
+{
+	private static final int SIZE = TilemanModeRegionBitmap.REGION_SIZE;
+
+	@Test
+	public void testSparseRoundTrip()
+	{
+		// an odd count leaves a half filled last group
+		TilemanModeRegionBitmap bitmap = bitmap(0, 0, 63, 0, 5, 17, 0, 63, 63, 63);
+		assertRoundTrip(bitmap, TilemanModeTileCodec.FORMAT_SPARSE);
+	}
+
+	@Test
+	public void testRunsRoundTrip()
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		for (int y = 10; y < 40; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				bitmap.set(x, y);
+			}
+		}
+		// a run ending on the last tile
+		bitmap.set(63, 63);
+		assertRoundTrip(bitmap, TilemanModeTileCodec.FORMAT_RUNS);
+	}
+
+	@Test
+	public void testBitmapRoundTrip()
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		Random random = new Random(42);
+		for (int y = 0; y < SIZE; y++)
+		{
+			for (int x = 0; x < SIZE; x++)
+			{
+				if (random.nextBoolean())
+				{
+					bitmap.set(x, y);
+				}
+			}
+		}
+		assertRoundTrip(bitmap, TilemanModeTileCodec.FORMAT_BITMAP);
+	}
+
+	@Test
+	public void testEmptyRoundTrip()
+	{
+		TilemanModeRegionBitmap decoded = TilemanModeTileCodec.decodeV3(TilemanModeTileCodec.encodeV3(new TilemanModeRegionBitmap()));
+		assertEquals(0, decoded.cardinality());
+	}
+
+	@Test
+	public void testTruncatedSparseIsRejected()
+	{
+		byte[] bytes = TilemanModeTileCodec.toV3Bytes(bitmap(0, 0, 63, 0, 5, 17, 0, 63, 63, 63));
+		assertEquals(TilemanModeTileCodec.FORMAT_SPARSE, bytes[0]);
+		assertRejected(Arrays.copyOf(bytes, bytes.length - 1));
+		assertRejected(new byte[]{TilemanModeTileCodec.FORMAT_SPARSE, 0});
+	}
+
+	@Test
+	public void testSparseCountPastTheRegionIsRejected()
+	{
+		byte[] bytes = new byte[3 + (4097 * 3 + 1) / 2];
+		bytes[0] = TilemanModeTileCodec.FORMAT_SPARSE;
+		bytes[1] = (byte) (4097 >> 8);
+		bytes[2] = (byte) 4097;
+		assertRejected(bytes);
+	}
+
+	@Test
+	public void testTruncatedRunIsRejected()
+	{
+		// a continuation bit with nothing after it
+		assertRejected(new byte[]{TilemanModeTileCodec.FORMAT_RUNS, 10, (byte) 0x80});
+	}
+
+	@Test
+	public void testOverlongRunIsRejected()
+	{
+		assertRejected(new byte[]{TilemanModeTileCodec.FORMAT_RUNS, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+	}
+
+	@Test
+	public void testRunsPastTheRegionAreRejected()
+	{
+		// 4000 unclaimed, then 200 claimed
+		assertRejected(new byte[]{TilemanModeTileCodec.FORMAT_RUNS, (byte) 0xA0, 0x1F, (byte) 0xC8, 0x01});
+	}
+
+	@Test
+	public void testOversizedBitmapIsRejected()
+	{
+		byte[] bytes = new byte[2 + SIZE * SIZE / Byte.SIZE];
+		bytes[0] = TilemanModeTileCodec.FORMAT_BITMAP;
+		assertRejected(bytes);
+	}
+
+	@Test
+	public void testUnknownFormatIsRejected()
+	{
+		assertRejected(new byte[]{9, 1, 2, 3});
+	}
+
+	private static TilemanModeRegionBitmap bitmap(int... coordinates)
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		for (int i = 0; i < coordinates.length; i += 2)
+		{
+			bitmap.set(coordinates[i], coordinates[i + 1]);
+		}
+		return bitmap;
+	}
+
+	private static void assertRoundTrip(TilemanModeRegionBitmap bitmap, byte format)
+	{
+		byte[] bytes = TilemanModeTileCodec.toV3Bytes(bitmap);
+		assertEquals(format, bytes[0]);
+
+		TilemanModeRegionBitmap decoded = TilemanModeTileCodec.decodeV3(TilemanModeTileCodec.encodeV3(bitmap));
+		assertEquals(bitmap.cardinality(), decoded.cardinality());
+		for (int y = 0; y < SIZE; y++)
+		{
+			assertEquals(bitmap.getRow(y), decoded.getRow(y));
+		}
+	}
+
+	private static void assertRejected(byte[] bytes)
+	{
+		try
+		{
+			TilemanModeTileCodec.fromV3Bytes(bytes);
+			fail("Expected " + Arrays.toString(bytes) + " to be rejected");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package com.tileman;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compact group tile set exports: whole tile sets and deltas, older exports, and the damaged or newer exports a
+ * player may paste.
+ */
+public class TilemanModeTileSetCodecTest
+{
+	private static final int PLANES = 4;
+	private static final int HISTORY_ID = 0xCAFEF00D;
+
+	@Test
+	public void testWholeTileSetRoundTrip() throws IOException
+	{
+		Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+		regions.put(12850, planes(bitmap(0, 0, 63, 63, 20, 31), null, null, bitmap(5, 5)));
+		// a region with nothing claimed is left out
+		regions.put(12851, planes(new TilemanModeRegionBitmap(), null, null, null));
+
+		String text = TilemanModeTileSetCodec.encode("Zezima", HISTORY_ID, 0, 7, regions);
+		assertTrue(TilemanModeTileSetCodec.isCompact(text));
+		TilemanModeTileSetReader.TileSet tileSet = TilemanModeTileSetCodec.decode(text);
+
+		assertEquals("Zezima", tileSet.getPlayerName());
+		assertEquals(HISTORY_ID, tileSet.getHistoryId());
+		assertEquals(0, tileSet.getBaseVersion());
+		assertEquals(7, tileSet.getVersion());
+		assertEquals(4, tileSet.getTileCount());
+		assertEquals(1, tileSet.getRegions().size());
+
+		// planes left out of a whole tile set come back empty
+		TilemanModeRegionBitmap[] planes = tileSet.getRegions().get(12850);
+		assertSameTiles(bitmap(0, 0, 63, 63, 20, 31), planes[0]);
+		assertSameTiles(new TilemanModeRegionBitmap(), planes[1]);
+		assertSameTiles(new TilemanModeRegionBitmap(), planes[2]);
+		assertSameTiles(bitmap(5, 5), planes[3]);
+	}
+
+	@Test
+	public void testDeltaRoundTrip() throws IOException
+	{
+		Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+		regions.put(12850, planes(null, bitmap(1, 2, 3, 4), null, null));
+		// the player unclaimed every tile on the plane, the delta must still carry it
+		regions.put(12851, planes(new TilemanModeRegionBitmap(), null, null, null));
+
+		TilemanModeTileSetReader.TileSet tileSet = TilemanModeTileSetCodec.decode(
+				TilemanModeTileSetCodec.encode("Zezima", HISTORY_ID, 7, 9, regions));
+
+		assertTrue(tileSet.isDelta());
+		assertEquals(HISTORY_ID, tileSet.getHistoryId());
+		assertEquals(7, tileSet.getBaseVersion());
+		assertEquals(9, tileSet.getVersion());
+		assertEquals(2, tileSet.getTileCount());
+		assertEquals(2, tileSet.getRegions().size());
+
+		// planes left out of a delta are unchanged, so stay null
+		TilemanModeRegionBitmap[] changed = tileSet.getRegions().get(12850);
+		assertNull(changed[0]);
+		assertSameTiles(bitmap(1, 2, 3, 4), changed[1]);
+		assertNull(changed[2]);
+		assertNull(changed[3]);
+
+		TilemanModeRegionBitmap[] emptied = tileSet.getRegions().get(12851);
+		assertSameTiles(new TilemanModeRegionBitmap(), emptied[0]);
+		assertNull(emptied[1]);
+	}
+
+	@Test
+	public void testVersion1IsReadAsWholeTileSet() throws IOException
+	{
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		byte[] name = "Zezima".getBytes(StandardCharsets.UTF_8);
+		TilemanModeTileCodec.writeVarint(payload, name.length);
+		payload.write(name, 0, name.length);
+		TilemanModeTileCodec.writeVarint(payload, 2);
+		writePlane(payload, 12850 << 2, bitmap(0, 0, 1, 1));
+		writePlane(payload, 1 << 2 | 2, bitmap(63, 0));
+
+		TilemanModeTileSetReader.TileSet tileSet = TilemanModeTileSetCodec.decode(
+				TilemanModeTileSetCodec.MAGIC + "1:" + base64(deflate(payload.toByteArray())));
+
+		assertEquals("Zezima", tileSet.getPlayerName());
+		assertEquals(0, tileSet.getHistoryId());
+		assertEquals(0, tileSet.getVersion());
+		assertFalse(tileSet.isDelta());
+		assertEquals(3, tileSet.getTileCount());
+		assertSameTiles(bitmap(0, 0, 1, 1), tileSet.getRegions().get(12850)[0]);
+		assertSameTiles(new TilemanModeRegionBitmap(), tileSet.getRegions().get(12850)[2]);
+		assertSameTiles(bitmap(63, 0), tileSet.getRegions().get(12851)[2]);
+	}
+
+	@Test
+	public void testTruncatedExportIsRejected()
+	{
+		Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+		regions.put(12850, planes(randomBitmap(new Random(1), 500), null, null, null));
+		String text = TilemanModeTileSetCodec.encode("Zezima", HISTORY_ID, 0, 1, regions);
+
+		// cut short, as a paste or a file sync can leave it
+		for (int length = text.length() - 1; length > text.indexOf(':'); length -= 7)
+		{
+			assertRejected(text.substring(0, length));
+		}
+	}
+
+	@Test
+	public void testTruncatedPayloadIsRejected()
+	{
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		byte[] name = "Zezima".getBytes(StandardCharsets.UTF_8);
+		TilemanModeTileCodec.writeVarint(payload, name.length);
+		payload.write(name, 0, name.length);
+		TilemanModeTileCodec.writeVarint(payload, 2);
+		writePlane(payload, 12850 << 2, bitmap(0, 0, 1, 1));
+		byte[] whole = payload.toByteArray();
+
+		// well compressed, but the payload inside stops part way through a region
+		for (int length = whole.length - 1; length > 0; length--)
+		{
+			byte[] truncated = new byte[length];
+			System.arraycopy(whole, 0, truncated, 0, length);
+			assertRejected(TilemanModeTileSetCodec.MAGIC + "1:" + base64(deflate(truncated)));
+		}
+	}
+
+	@Test
+	public void testUnknownVersionIsRejected()
+	{
+		Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+		regions.put(12850, planes(bitmap(0, 0), null, null, null));
+		String text = TilemanModeTileSetCodec.encode("Zezima", HISTORY_ID, 0, 1, regions);
+		String payload = text.substring(text.indexOf(':'));
+
+		for (String version : new String[]{"0", "3", "10", ""})
+		{
+			try
+			{
+				TilemanModeTileSetCodec.decode(TilemanModeTileSetCodec.MAGIC + version + payload);
+				fail("Version " + version + " was accepted");
+			}
+			catch (IOException e)
+			{
+				assertEquals("Unsupported tile set version " + version, e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testMoreThan20TimesSmallerThanJson()
+	{
+		// tiles scattered along the paths of an account that has walked across the map, and a few cleared areas
+		Random random = new Random(42);
+		Map<Integer, TilemanModeRegionBitmap[]> regions = new TreeMap<>();
+		for (int regionId = 10000; regionId < 10400; regionId++)
+		{
+			TilemanModeRegionBitmap bitmap = regionId % 20 == 0 ? blockBitmap(random.nextInt(1000) + 500)
+					: randomBitmap(random, 64);
+			regions.put(regionId, regionId % 8 == 7 ? planes(null, bitmap, null, null) : planes(bitmap, null, null, null));
+		}
+
+		String compact = TilemanModeTileSetCodec.encode("Zezima", HISTORY_ID, 0, 1, regions);
+		String json = toLegacyJson("Zezima", regions);
+		assertTrue("compact " + compact.length() + " chars, JSON " + json.length(), compact.length() * 20 < json.length());
+	}
+
+	private static void assertSameTiles(TilemanModeRegionBitmap expected, TilemanModeRegionBitmap actual)
+	{
+		assertTrue("expected " + expected.cardinality() + " tiles, got " + actual.cardinality(), expected.hasSameTiles(actual));
+	}
+
+	private static void assertRejected(String text)
+	{
+		try
+		{
+			TilemanModeTileSetCodec.decode(text);
+			fail("Accepted " + text);
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	/**
+	 * The JSON export, as GroupTilemanDataManager builds it.
+	 */
+	private static String toLegacyJson(String playerName, Map<Integer, TilemanModeRegionBitmap[]> regions)
+	{
+		GroupTilemanData exportData = new GroupTilemanData();
+		exportData.playerName = playerName;
+		exportData.regionTiles = new TreeMap<>();
+		for (Map.Entry<Integer, TilemanModeRegionBitmap[]> region : regions.entrySet())
+		{
+			int regionId = region.getKey();
+			List<TilemanModeTile> tiles = new ArrayList<>();
+			for (int plane = 0; plane < PLANES; plane++)
+			{
+				int z = plane;
+				TilemanModeRegionBitmap bitmap = region.getValue()[plane];
+				if (bitmap != null)
+				{
+					bitmap.forEach((regionX, regionY) -> tiles.add(new TilemanModeTile(regionId, regionX, regionY, z)));
+				}
+			}
+			exportData.regionTiles.put(TilemanModePlugin.REGION_PREFIX_V1 + regionId, tiles);
+		}
+		return new Gson().toJson(exportData);
+	}
+
+	private static void writePlane(ByteArrayOutputStream payload, int keyGap, TilemanModeRegionBitmap bitmap)
+	{
+		byte[] tiles = TilemanModeTileCodec.toV3Bytes(bitmap);
+		TilemanModeTileCodec.writeVarint(payload, keyGap);
+		TilemanModeTileCodec.writeVarint(payload, tiles.length);
+		payload.write(tiles, 0, tiles.length);
+	}
+
+	private static byte[] deflate(byte[] bytes)
+	{
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] buffer = new byte[bytes.length + 64];
+		int length = deflater.deflate(buffer);
+		deflater.end();
+		byte[] deflated = new byte[length];
+		System.arraycopy(buffer, 0, deflated, 0, length);
+		return deflated;
+	}
+
+	private static String base64(byte[] bytes)
+	{
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	private static TilemanModeRegionBitmap[] planes(TilemanModeRegionBitmap... planes)
+	{
+		return planes;
+	}
+
+	private static TilemanModeRegionBitmap bitmap(int... xys)
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		for (int i = 0; i < xys.length; i += 2)
+		{
+			bitmap.set(xys[i], xys[i + 1]);
+		}
+		return bitmap;
+	}
+
+	private static TilemanModeRegionBitmap randomBitmap(Random random, int tiles)
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		while (bitmap.cardinality() < tiles)
+		{
+			bitmap.set(random.nextInt(TilemanModeRegionBitmap.REGION_SIZE), random.nextInt(TilemanModeRegionBitmap.REGION_SIZE));
+		}
+		return bitmap;
+	}
+
+	private static TilemanModeRegionBitmap blockBitmap(int tiles)
+	{
+		TilemanModeRegionBitmap bitmap = new TilemanModeRegionBitmap();
+		for (int i = 0; i < tiles; i++)
+		{
+			bitmap.set(i % TilemanModeRegionBitmap.REGION_SIZE, i / TilemanModeRegionBitmap.REGION_SIZE);
+		}
+		return bitmap;
+	}
+}